@@ -0,0 +1,84 @@
+package edu.usc.bg.base;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Asynchronous counterpart of DB for the BG actions. Every action returns at once with a
+ * DBFuture of its Result instead of blocking and filling containers of the caller, so a
+ * session can have independent actions in flight together, e.g. a profile, its top-K
+ * resources and its friend list.
+ *
+ * BlockingAsyncDB runs the actions of any blocking DB on a pool of threads, a non-blocking
+ * driver can extend this class directly. DBFactory.newAsyncDB wraps either in an
+ * AsyncDBWrapper that measures the actions like DBWrapper does.
+ */
+public abstract class AsyncDB {
+
+	/**
+	 * What the blocking action returned: its return code and the containers it filled.
+	 */
+	public static class Result {
+		public int code;
+		public HashMap<String, ByteIterator> values = new HashMap<String, ByteIterator>();
+		public Vector<HashMap<String, ByteIterator>> rows = new Vector<HashMap<String, ByteIterator>>();
+		public Vector<Integer> ids = new Vector<Integer>();
+	}
+
+	Properties _p = new Properties();
+
+	public void setProperties(Properties p) {
+		_p = p;
+	}
+
+	public Properties getProperties() {
+		return _p;
+	}
+
+	/**
+	 * Called once per instance, before the first action.
+	 */
+	public void init() throws DBException {
+	}
+
+	/**
+	 * Called once per instance, after the last action completed.
+	 */
+	public void cleanup(boolean warmup) throws DBException {
+	}
+
+	/** See DB.viewProfile, the profile is in values. */
+	public abstract DBFuture<Result> viewProfile(int requesterID, int profileOwnerID, boolean insertImage, boolean testMode);
+
+	/** See DB.listFriends, the friends are in rows. */
+	public abstract DBFuture<Result> listFriends(int requesterID, int profileOwnerID, Set<String> fields, boolean insertImage, boolean testMode);
+
+	/** See DB.viewFriendReq, the inviters are in rows. */
+	public abstract DBFuture<Result> viewFriendReq(int profileOwnerID, boolean insertImage, boolean testMode);
+
+	/** See DB.viewTopKResources, the resources are in rows. */
+	public abstract DBFuture<Result> viewTopKResources(int requesterID, int profileOwnerID, int k);
+
+	/** See DB.viewCommentOnResource, the comments are in rows. */
+	public abstract DBFuture<Result> viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID);
+
+	public abstract DBFuture<Result> postCommentOnResource(int commentCreatorID, int resourceCreatorID, int resourceID, HashMap<String, ByteIterator> values);
+
+	public abstract DBFuture<Result> delCommentOnResource(int resourceCreatorID, int resourceID, int manipulationID);
+
+	public abstract DBFuture<Result> inviteFriend(int inviterID, int inviteeID);
+
+	public abstract DBFuture<Result> acceptFriend(int inviterID, int inviteeID);
+
+	public abstract DBFuture<Result> rejectFriend(int inviterID, int inviteeID);
+
+	public abstract DBFuture<Result> thawFriendship(int friendid1, int friendid2);
+
+	/** See DB.queryConfirmedFriendshipIds, the ids are in ids. */
+	public abstract DBFuture<Result> queryConfirmedFriendshipIds(int memberID);
+
+	/** See DB.queryPendingFriendshipIds, the ids are in ids. */
+	public abstract DBFuture<Result> queryPendingFriendshipIds(int memberID);
+}
@@ -0,0 +1,127 @@
+package edu.usc.bg.base;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+
+import edu.usc.bg.measurements.MyMeasurement;
+
+/**
+ * Wrapper around an AsyncDB that measures the latency of every action from its submission
+ * to its completion and counts the return codes, under the operation names of DBWrapper.
+ * A failed action is reported with return code -1.
+ *
+ * The actions complete on other threads, so the measurements of this wrapper are updated
+ * under its lock.
+ */
+public class AsyncDBWrapper extends AsyncDB {
+
+	AsyncDB _db;
+	MyMeasurement _measurements;
+
+	public AsyncDBWrapper(AsyncDB db) {
+		_db = db;
+		_measurements = MyMeasurement.getMeasurements(Double.parseDouble(getProperties().getProperty(Client.EXPECTED_LATENCY_PROPERTY,
+				Client.EXPECTED_LATENCY_PROPERTY_DEFAULT)));
+	}
+
+	public void setProperties(Properties p) {
+		_db.setProperties(p);
+	}
+
+	public Properties getProperties() {
+		return _db.getProperties();
+	}
+
+	public void init() throws DBException {
+		_db.init();
+	}
+
+	public void cleanup(boolean warmup) throws DBException {
+		_db.cleanup(warmup);
+	}
+
+	private DBFuture<Result> measured(final String operation, DBFuture<Result> f) {
+		f.addListener(new DBFuture.Listener<Result>() {
+			public void completed(DBFuture<Result> f) {
+				int res;
+				try {
+					res = f.getFailure() == null ? f.get().code : -1;
+				} catch (Exception e) {
+					res = -1;
+				}
+				synchronized (_measurements) {
+					_measurements.measure(operation, (int) ((f.getCompleted() - f.getSubmitted()) / 1000));
+					_measurements.reportReturnCode(operation, res);
+				}
+			}
+		});
+		return f;
+	}
+
+	@Override
+	public DBFuture<Result> viewProfile(int requesterID, int profileOwnerID, boolean insertImage, boolean testMode) {
+		return measured("PROFILE", _db.viewProfile(requesterID, profileOwnerID, insertImage, testMode));
+	}
+
+	@Override
+	public DBFuture<Result> listFriends(int requesterID, int profileOwnerID, Set<String> fields, boolean insertImage, boolean testMode) {
+		return measured("FRIENDS", _db.listFriends(requesterID, profileOwnerID, fields, insertImage, testMode));
+	}
+
+	@Override
+	public DBFuture<Result> viewFriendReq(int profileOwnerID, boolean insertImage, boolean testMode) {
+		return measured("PENDING", _db.viewFriendReq(profileOwnerID, insertImage, testMode));
+	}
+
+	@Override
+	public DBFuture<Result> viewTopKResources(int requesterID, int profileOwnerID, int k) {
+		return measured("GETTOPRES", _db.viewTopKResources(requesterID, profileOwnerID, k));
+	}
+
+	@Override
+	public DBFuture<Result> viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID) {
+		return measured("GETRESCOMMENT", _db.viewCommentOnResource(requesterID, profileOwnerID, resourceID));
+	}
+
+	@Override
+	public DBFuture<Result> postCommentOnResource(int commentCreatorID, int resourceCreatorID, int resourceID, HashMap<String, ByteIterator> values) {
+		return measured("POSTCOMMENT", _db.postCommentOnResource(commentCreatorID, resourceCreatorID, resourceID, values));
+	}
+
+	@Override
+	public DBFuture<Result> delCommentOnResource(int resourceCreatorID, int resourceID, int manipulationID) {
+		return measured("DELCOMMENT", _db.delCommentOnResource(resourceCreatorID, resourceID, manipulationID));
+	}
+
+	@Override
+	public DBFuture<Result> inviteFriend(int inviterID, int inviteeID) {
+		return measured("INV", _db.inviteFriend(inviterID, inviteeID));
+	}
+
+	@Override
+	public DBFuture<Result> acceptFriend(int inviterID, int inviteeID) {
+		return measured("ACCEPT", _db.acceptFriend(inviterID, inviteeID));
+	}
+
+	@Override
+	public DBFuture<Result> rejectFriend(int inviterID, int inviteeID) {
+		return measured("REJECT", _db.rejectFriend(inviterID, inviteeID));
+	}
+
+	@Override
+	public DBFuture<Result> thawFriendship(int friendid1, int friendid2) {
+		return measured("UNFRIEND", _db.thawFriendship(friendid1, friendid2));
+	}
+
+	//not measured by DBWrapper either
+	@Override
+	public DBFuture<Result> queryConfirmedFriendshipIds(int memberID) {
+		return _db.queryConfirmedFriendshipIds(memberID);
+	}
+
+	@Override
+	public DBFuture<Result> queryPendingFriendshipIds(int memberID) {
+		return _db.queryPendingFriendshipIds(memberID);
+	}
+}
@@ -0,0 +1,203 @@
+package edu.usc.bg.base;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the actions of blocking DB instances on a pool of threads, one thread per instance.
+ * A DB instance is not thread safe, so an action takes an idle instance for as long as it
+ * runs and as many actions run at the same time as there are instances.
+ */
+public class BlockingAsyncDB extends AsyncDB {
+
+	private Vector<DB> dbs;
+	private LinkedBlockingQueue<DB> idle = new LinkedBlockingQueue<DB>();
+	private ExecutorService executor;
+
+	public BlockingAsyncDB(Vector<DB> dbs) {
+		this.dbs = dbs;
+		idle.addAll(dbs);
+		executor = Executors.newFixedThreadPool(dbs.size(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "BG-async-db");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public void setProperties(Properties p) {
+		super.setProperties(p);
+		for (int i = 0; i < dbs.size(); i++)
+			dbs.get(i).setProperties(p);
+	}
+
+	@Override
+	public void init() throws DBException {
+		for (int i = 0; i < dbs.size(); i++)
+			if (!dbs.get(i).init())
+				throw new DBException("Could not initialize the DB instance " + i + " of the asynchronous DB");
+	}
+
+	@Override
+	public void cleanup(boolean warmup) throws DBException {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (int i = 0; i < dbs.size(); i++)
+			dbs.get(i).cleanup(warmup);
+	}
+
+	//a blocking action, fills the containers of the result and returns its code
+	interface Call {
+		int run(DB db, Result r);
+	}
+
+	private DBFuture<Result> submit(final Call call) {
+		final DBFuture<Result> f = new DBFuture<Result>();
+		executor.execute(new Runnable() {
+			public void run() {
+				DB db = idle.poll();
+				try {
+					Result r = new Result();
+					r.code = call.run(db, r);
+					f.complete(r);
+				} catch (Throwable t) {
+					f.fail(t);
+				} finally {
+					idle.add(db);
+				}
+			}
+		});
+		return f;
+	}
+
+	@Override
+	public DBFuture<Result> viewProfile(final int requesterID, final int profileOwnerID, final boolean insertImage, final boolean testMode) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.viewProfile(requesterID, profileOwnerID, r.values, insertImage, testMode);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> listFriends(final int requesterID, final int profileOwnerID, final Set<String> fields, final boolean insertImage, final boolean testMode) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.listFriends(requesterID, profileOwnerID, fields, r.rows, insertImage, testMode);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> viewFriendReq(final int profileOwnerID, final boolean insertImage, final boolean testMode) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.viewFriendReq(profileOwnerID, r.rows, insertImage, testMode);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> viewTopKResources(final int requesterID, final int profileOwnerID, final int k) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.viewTopKResources(requesterID, profileOwnerID, k, r.rows);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> viewCommentOnResource(final int requesterID, final int profileOwnerID, final int resourceID) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.viewCommentOnResource(requesterID, profileOwnerID, resourceID, r.rows);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> postCommentOnResource(final int commentCreatorID, final int resourceCreatorID, final int resourceID,
+			final HashMap<String, ByteIterator> values) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.postCommentOnResource(commentCreatorID, resourceCreatorID, resourceID, values);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> delCommentOnResource(final int resourceCreatorID, final int resourceID, final int manipulationID) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.delCommentOnResource(resourceCreatorID, resourceID, manipulationID);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> inviteFriend(final int inviterID, final int inviteeID) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.inviteFriend(inviterID, inviteeID);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> acceptFriend(final int inviterID, final int inviteeID) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.acceptFriend(inviterID, inviteeID);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> rejectFriend(final int inviterID, final int inviteeID) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.rejectFriend(inviterID, inviteeID);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> thawFriendship(final int friendid1, final int friendid2) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.thawFriendship(friendid1, friendid2);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> queryConfirmedFriendshipIds(final int memberID) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.queryConfirmedFriendshipIds(memberID, r.ids);
+			}
+		});
+	}
+
+	@Override
+	public DBFuture<Result> queryPendingFriendshipIds(final int memberID) {
+		return submit(new Call() {
+			public int run(DB db, Result r) {
+				return db.queryPendingFriendshipIds(memberID, r.ids);
+			}
+		});
+	}
+}
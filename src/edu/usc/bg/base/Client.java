@@ -190,6 +190,9 @@ public class Client {
 	public static final String OPERATION_COUNT_PROPERTY = "operationcount";
 	public static final String OPERATION_COUNT_PROPERTY_DEFAULT = "0";
 	public static final String NUM_LOAD_THREAD_PROPERTY = "numloadthreads";
+	//number of entities or friendships handed to the data store at once in the load phase
+	public static final String LOAD_BATCH_SIZE_PROPERTY = "loadbatchsize";
+	public static final String LOAD_BATCH_SIZE_PROPERTY_DEFAULT = "1";
 	public static final String USER_COUNT_PROPERTY = "usercount";
 	public static final String USER_COUNT_PROPERTY_DEFAULT = "0";
 	public static final String USER_OFFSET_PROPERTY = "useroffset";
@@ -868,10 +871,12 @@ public class Client {
 				workload = (Workload) workloadclass.newInstance();
 				//before starting the benchmark get the database statistics : member count, resource per member and avg friend per member 
 				workload.init(props, null);
-				props.setProperty(INIT_USER_COUNT_PROPERTY, workload.getDBInitialStats(db).get("usercount"));	
-				props.setProperty(INIT_RES_COUNT_PROPERTY,workload.getDBInitialStats(db).get("resourcesperuser"));
-				props.setProperty(INIT_FRND_COUNT_PROPERTY, workload.getDBInitialStats(db).get("avgfriendsperuser"));	
-				props.setProperty(INIT_PEND_COUNT_PROPERTY, workload.getDBInitialStats(db).get("avgpendingperuser"));
+				//queried once, a data store may have to scan all of its members
+				HashMap<String, String> initStats = workload.getDBInitialStats(db);
+				props.setProperty(INIT_USER_COUNT_PROPERTY, initStats.get("usercount"));	
+				props.setProperty(INIT_RES_COUNT_PROPERTY, initStats.get("resourcesperuser"));
+				props.setProperty(INIT_FRND_COUNT_PROPERTY, initStats.get("avgfriendsperuser"));	
+				props.setProperty(INIT_PEND_COUNT_PROPERTY, initStats.get("avgpendingperuser"));
 				db.cleanup(true);
 				MyMeasurement.resetMeasurement();
 				
@@ -1370,6 +1375,11 @@ public class Client {
 					System.out.println("Done loading resources");
 		
 					System.out.println("Done loading manipulation");
+					db = DBFactory.newDB(dbname, props);
+					db.init();
+					db.finalizeLoad(props);
+					db.cleanup(true);
+					System.out.println("Done finalizing the load");
 					if(doIndex){
 						db = DBFactory.newDB(dbname, props);
 						db.init();
@@ -1398,10 +1408,11 @@ public class Client {
 							.getProperty(USER_WORKLOAD_PROPERTY));
 					userWorkload = (Workload) userWorkloadclass.newInstance();
 					userWorkload.init(props, null);
-					text+= "\t MemberCount=" + userWorkload.getDBInitialStats(db).get("usercount")+"\n";	
-					text+= "\t ResourceCountPerUser=" + userWorkload.getDBInitialStats(db).get("resourcesperuser")+"\n";
-					text+= "\t FriendCountPerUser=" + userWorkload.getDBInitialStats(db).get("avgfriendsperuser")+"\n";
-					text+= "\t PendingCountPerUser=" + userWorkload.getDBInitialStats(db).get("avgpendingperuser")+"\n";
+					HashMap<String, String> loadStats = userWorkload.getDBInitialStats(db);
+					text+= "\t MemberCount=" + loadStats.get("usercount")+"\n";	
+					text+= "\t ResourceCountPerUser=" + loadStats.get("resourcesperuser")+"\n";
+					text+= "\t FriendCountPerUser=" + loadStats.get("avgfriendsperuser")+"\n";
+					text+= "\t PendingCountPerUser=" + loadStats.get("avgpendingperuser")+"\n";
 					db.cleanup(false);
 					System.out.println("Done doing load sanity check");
 
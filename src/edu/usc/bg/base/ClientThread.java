@@ -198,10 +198,16 @@ public class ClientThread extends Thread {
 					updateTestLog.delete(0, updateTestLog.length());
 					readTestLog.delete(0, readTestLog.length());
 					int actsDone = 0;
-					if ((actsDone = _workload.doTransaction(_db, _workloadstate,
-							_threadid, updateTestLog,readTestLog, seqID, resUpdateOperations,
-							friendshipInfo, pendingInfo, thinkTime,
-							insertImage, _warmup)) < 0) { //=0 when only perfomring actions like accept friendship and no pending frnd are there
+					_db.startSession();
+					try {
+						actsDone = _workload.doTransaction(_db, _workloadstate,
+								_threadid, updateTestLog,readTestLog, seqID, resUpdateOperations,
+								friendshipInfo, pendingInfo, thinkTime,
+								insertImage, _warmup);
+					} finally {
+						_db.endSession();
+					}
+					if (actsDone < 0) { //=0 when only perfomring actions like accept friendship and no pending frnd are there
 						break;
 					}
 					
@@ -239,16 +245,32 @@ public class ClientThread extends Thread {
 			} else {
 				long st = System.currentTimeMillis();
 
+				int batchSize = Integer.parseInt(_props.getProperty(Client.LOAD_BATCH_SIZE_PROPERTY, Client.LOAD_BATCH_SIZE_PROPERTY_DEFAULT));
 				while (((_opcount == 0) || (_opsdone < _opcount))
 						&& !_workload.isStopRequested()) {
 
-					if (!_workload.doInsert(_db, _workloadstate)) {
-						//break;
-						System.out.println("Insertion failed. Make sure the appropriate data store schema" +
-								" was created.");
-						System.exit(-1);
+					if (batchSize > 1) {
+						int n = batchSize;
+						if (_opcount != 0 && _opcount - _opsdone < n)
+							n = _opcount - _opsdone;
+						int done = _workload.doInsertBatch(_db, _workloadstate, n);
+						if (done < 0) {
+							System.out.println("Insertion failed. Make sure the appropriate data store schema" +
+									" was created.");
+							System.exit(-1);
+						}
+						if (done == 0)
+							break;
+						_opsdone += done;
+					} else {
+						if (!_workload.doInsert(_db, _workloadstate)) {
+							//break;
+							System.out.println("Insertion failed. Make sure the appropriate data store schema" +
+									" was created.");
+							System.exit(-1);
+						}
+						_opsdone++;
 					}
-					_opsdone++;
 
 					// throttle the operations
 					if (_target > 0) {
@@ -294,8 +316,11 @@ public class ClientThread extends Thread {
 	
 	public void cleanup(){
 		try {
+			_workload.cleanupThread(_workloadstate, _warmup);
 			_db.cleanup(_warmup);
 			this.interrupt();
+		} catch (WorkloadException e) {
+			e.printStackTrace();
 		} catch (DBException e) {
 			e.printStackTrace();
 		}
@@ -86,6 +86,21 @@ public abstract class DB
 	public void cleanup(boolean warmup) throws DBException
 	{
 	}
+
+	/**
+	 * Called before the actions of a session/sequence of the workload are issued.
+	 * A data store may keep state, e.g. an ORM session, for the length of the sequence.
+	 */
+	public void startSession()
+	{
+	}
+
+	/**
+	 * Called after the actions of a session/sequence of the workload, whether they succeeded or not.
+	 */
+	public void endSession()
+	{
+	}
 	/**
 	 * This function is called in the load phase which is executed using the -load or -loadindex argument.
 	 * It is used for inserting users and resources.
@@ -248,6 +263,21 @@ public abstract class DB
 	 */
 	
 	public abstract int viewTopKResources(int requesterID, int profileOwnerID, int k, Vector<HashMap<String,ByteIterator>> result);
+
+	/**
+	 * Gets up to k resources posted on a member's wall whose rid is smaller than beforeRid, newest first.
+	 * A wall is paged through by passing the smallest rid of the previous page, a negative beforeRid
+	 * returns the first page, the same resources as viewTopKResources.
+	 * @param beforeRid The cursor, only resources with a smaller rid are returned.
+	 * @return Zero on success, a non-zero error code on error.
+	 * 
+	 * The default implementation only supports the first page.
+	 */
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid, Vector<HashMap<String,ByteIterator>> result){
+		if(beforeRid < 0)
+			return viewTopKResources(requesterID, profileOwnerID, k, result);
+		return -1;
+	}
 	
 	/**
 	 * This function is called in the benchmarking phase which is executed with the -t argument.
@@ -279,6 +309,22 @@ public abstract class DB
 	 * and their details. This information should be put into the results Vector.
 	 */
 	public abstract int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, Vector<HashMap<String,ByteIterator>> result);
+
+	/**
+	 * Gets up to pageSize comments on a resource whose mid is larger than afterMid, in mid order.
+	 * The comments are paged through by passing the largest mid of the previous page, a negative
+	 * afterMid returns the first page, a pageSize of zero or less all the remaining comments.
+	 * @param pageSize The maximum number of comments returned.
+	 * @param afterMid The cursor, only comments with a larger mid are returned.
+	 * @return Zero on success, a non-zero error code on error.
+	 * 
+	 * The default implementation only supports all the comments at once.
+	 */
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, int pageSize, int afterMid, Vector<HashMap<String,ByteIterator>> result){
+		if(pageSize <= 0 && afterMid < 0)
+			return viewCommentOnResource(requesterID, profileOwnerID, resourceID, result);
+		return -1;
+	}
 	
 	
 	/**
@@ -398,5 +444,101 @@ public abstract class DB
 	 */
 	public void buildIndexes(Properties props){
 	}
+
+	/**
+	 * This function is called in the load phase when the loadbatchsize property is larger than one.
+	 * Inserts a batch of entities of the same entity set, see insertEntity for the parameters.
+	 * @param entityPKs The primary keys of the entities, entityPKs.get(i) is the key of values.get(i).
+	 * @return Zero on success, a non-zero error code on error.
+	 * 
+	 * The default implementation calls insertEntity for each entity. Data stores with a bulk load
+	 * interface may override it. The implementation does not have to maintain the resource count of the
+	 * creators, finalizeLoad is called once all entities are loaded.
+	 */
+	public int insertEntities(String entitySet, Vector<String> entityPKs, Vector<HashMap<String,ByteIterator>> values, boolean insertImage){
+		for(int i=0; i<entityPKs.size(); i++){
+			int res = insertEntity(entitySet, entityPKs.get(i), values.get(i), insertImage);
+			if(res < 0)
+				return res;
+		}
+		return 0;
+	}
+
+	/**
+	 * This function is called in the load phase when the loadbatchsize property is larger than one.
+	 * Creates a batch of friendships, the i-th friendship is between inviterIDs.get(i) and inviteeIDs.get(i)
+	 * and is confirmed if confirmed.get(i) is true and pending otherwise.
+	 * @return Zero on success, a non-zero error code on error.
+	 * 
+	 * The default implementation calls CreateFriendship or inviteFriend for each friendship. As with insertEntities
+	 * the friend and pending counts of the members may be left to finalizeLoad.
+	 */
+	public int insertFriendships(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed){
+		for(int i=0; i<inviterIDs.size(); i++){
+			int res;
+			if(confirmed.get(i))
+				res = CreateFriendship(inviterIDs.get(i), inviteeIDs.get(i));
+			else
+				res = inviteFriend(inviterIDs.get(i), inviteeIDs.get(i));
+			if(res < 0)
+				return res;
+		}
+		return 0;
+	}
+
+	/**
+	 * This function is called once in the load phase after all the load threads are done and before the indexes are built.
+	 * 
+	 * May be used to compute derived data, e.g. the friend, pending and resource counts of the members, in one pass.
+	 * It is called for every load, with the loadbatchsize property of one the entities and friendships were inserted
+	 * one at a time with insertEntity, CreateFriendship and inviteFriend and there may be nothing to derive.
+	 * @param props The properties of BG.
+	 */
+	public void finalizeLoad(Properties props){
+	}
+
+	/**
+	 * Receives the rows of the bulk exports, each export only calls its own method.
+	 */
+	public interface ExportSink {
+		/** A friendship, confirmed or pending, a confirmed one is exported once for both members. */
+		void friendship(int inviterID, int inviteeID, boolean confirmed);
+		/** A resource, with its creator and the member whose wall it was posted on. */
+		void resource(int rid, int creatorID, int wallUserID);
+		/** A comment on a resource. */
+		void comment(int mid, int rid);
+	}
+
+	/**
+	 * This function is called in the benchmarking phase when the initial state of the data store is queried
+	 * (initapproach=querydata), before any action is issued. Streams every friendship to the sink, in one scan.
+	 * @return Zero on success, a non-zero error code on error.
+	 * 
+	 * The default implementation is not supported and returns -1, BG then queries the friendships of every
+	 * member with queryPendingFriendshipIds and queryConfirmedFriendshipIds.
+	 */
+	public int exportFriendships(ExportSink sink){
+		return -1;
+	}
+
+	/**
+	 * Streams every resource to the sink in one scan, see exportFriendships.
+	 * @return Zero on success, a non-zero error code on error.
+	 * 
+	 * The default implementation is not supported and returns -1.
+	 */
+	public int exportResources(ExportSink sink){
+		return -1;
+	}
+
+	/**
+	 * Streams every comment to the sink in one scan, see exportFriendships.
+	 * @return Zero on success, a non-zero error code on error.
+	 * 
+	 * The default implementation is not supported and returns -1.
+	 */
+	public int exportComments(ExportSink sink){
+		return -1;
+	}
 	
 }
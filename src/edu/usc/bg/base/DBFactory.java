@@ -18,6 +18,9 @@
 package edu.usc.bg.base;
 
 import java.util.Properties;
+import java.util.Vector;
+
+import edu.usc.bg.measurements.RoundTripCounter;
 
 /**
  * Creates a DB layer by dynamically classloading the specified DB class.
@@ -25,6 +28,62 @@ import java.util.Properties;
 public class DBFactory
 {
 	public static DB newDB(String dbname, Properties properties) throws UnknownDBException
+      {
+	 DB ret=create(dbname, properties);
+	 if (ret == null)
+	    return null;
+	 return new DBWrapper(ret);
+      }
+
+	/**
+	 * An AsyncDB that runs the actions on parallelism instances of the DB class,
+	 * measured like the DB of newDB.
+	 */
+	public static AsyncDB newAsyncDB(String dbname, Properties properties, int parallelism) throws UnknownDBException
+      {
+	 Vector<DB> dbs=new Vector<DB>();
+	 for (int i = 0; i < parallelism; i++)
+	 {
+	    DB db=create(dbname, properties);
+	    if (db == null)
+	       return null;
+	    dbs.add(db);
+	 }
+	 BlockingAsyncDB async=new BlockingAsyncDB(dbs);
+	 async.setProperties(properties);
+	 return new AsyncDBWrapper(async);
+      }
+
+	private static DB create(String dbname, Properties properties)
+      {
+	 DB ret=load(dbname);
+	 if (ret == null)
+	    return null;
+
+	 ret.setProperties(properties);
+	 RoundTripCounter.configure(properties);
+	 if (ReplicaRoutingDB.isEnabled(properties))
+	 {
+	    //one DB of the same class per replica, reads are routed among them
+	    Vector<String> urls=ReplicaRoutingDB.replicaUrls(properties);
+	    Vector<DB> replicas=new Vector<DB>();
+	    for (String url : urls)
+	    {
+	       DB replica=load(dbname);
+	       if (replica == null)
+	          return null;
+	       replica.setProperties(ReplicaRoutingDB.replicaProperties(properties, url));
+	       replicas.add(replica);
+	    }
+	    ret.setProperties(ReplicaRoutingDB.primaryProperties(properties));
+	    ret = new ReplicaRoutingDB(ret, replicas, urls);
+	 }
+	 if (ResultCacheDB.isEnabled(properties))
+	    ret = new ResultCacheDB(ret);
+	 return ret;
+      }
+
+	private static DB load(String dbname)
       {
 	 ClassLoader classLoader = DBFactory.class.getClassLoader();
 
@@ -42,10 +101,7 @@ public class DBFactory
 	    e.printStackTrace(System.out);
 	    return null;
 	 }
-	 
-	 ret.setProperties(properties);
-
-	 return new DBWrapper(ret);
+	 return ret;
       }
       
 }
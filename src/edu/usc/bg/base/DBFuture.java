@@ -0,0 +1,122 @@
+package edu.usc.bg.base;
+
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an AsyncDB action. It is completed once, by whoever runs the action,
+ * and calls its listeners when it is, so the latency can be measured and dependent work can
+ * start without a thread blocking in get(). A submitted action cannot be cancelled.
+ */
+public class DBFuture<T> implements Future<T> {
+
+	public interface Listener<T> {
+		void completed(DBFuture<T> future);
+	}
+
+	private final CountDownLatch done = new CountDownLatch(1);
+	private final long submitted = System.nanoTime();
+	private long completed;
+	private T value;
+	private Throwable failure;
+	//null once completed
+	private Vector<Listener<T>> listeners = new Vector<Listener<T>>();
+
+	public boolean complete(T value) {
+		return finish(value, null);
+	}
+
+	public boolean fail(Throwable failure) {
+		return finish(null, failure);
+	}
+
+	private boolean finish(T value, Throwable failure) {
+		Vector<Listener<T>> ls;
+		synchronized (this) {
+			if (listeners == null)
+				return false;
+			this.value = value;
+			this.failure = failure;
+			completed = System.nanoTime();
+			ls = listeners;
+			listeners = null;
+		}
+		done.countDown();
+		for (int i = 0; i < ls.size(); i++)
+			ls.get(i).completed(this);
+		return true;
+	}
+
+	/**
+	 * Calls the listener on completion, on the completing thread, or right away if the
+	 * future is already completed.
+	 */
+	public void addListener(Listener<T> listener) {
+		synchronized (this) {
+			if (listeners != null) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.completed(this);
+	}
+
+	/**
+	 * System.nanoTime() when the action was submitted.
+	 */
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * System.nanoTime() when the action completed, 0 before.
+	 */
+	public synchronized long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * The failure of the action, null if it completed normally or is still running.
+	 */
+	public synchronized Throwable getFailure() {
+		return failure;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		done.await();
+		return result();
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit))
+			throw new TimeoutException();
+		return result();
+	}
+
+	private synchronized T result() throws ExecutionException {
+		if (failure != null)
+			throw new ExecutionException(failure);
+		return value;
+	}
+}
@@ -22,6 +22,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
 import edu.usc.bg.measurements.MyMeasurement;
+import edu.usc.bg.measurements.RoundTripCounter;
 
 /**
  * Wrapper around a "real" DB that measures latencies and counts return codes.
@@ -71,6 +72,16 @@ public class DBWrapper extends DB
 		_db.cleanup(warmup);
 	}
 
+	public void startSession()
+	{
+		_db.startSession();
+	}
+
+	public void endSession()
+	{
+		_db.endSession();
+	}
+
 	/**
 	 * Insert an entity in the database. Any field/value pairs in the specified values HashMap will 
 	 * be written into the entity with the specified
@@ -85,11 +96,13 @@ public class DBWrapper extends DB
 	@Override
 	public int insertEntity(String entitySet, String entityPK, HashMap<String,ByteIterator> values, boolean insertImage)
 	{
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.insertEntity(entitySet,entityPK,values, insertImage);
 		long en=System.nanoTime();
 		_measurements.measure("INSERT",(int)((en-st)/1000));
 		_measurements.reportReturnCode("INSERT",res);
+		RoundTripCounter.record("INSERT");
 		return res;
 	}
 
@@ -97,11 +110,13 @@ public class DBWrapper extends DB
 	public int viewProfile(int requesterID, int profileOwnerID,
 			HashMap<String, ByteIterator> result, boolean insertImage, boolean testMode) {
 		//int res = 0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.viewProfile(requesterID, profileOwnerID, result, insertImage, testMode);
 		long en=System.nanoTime();
 		_measurements.measure("PROFILE",(int)((en-st)/1000));
 		_measurements.reportReturnCode("PROFILE",res);
+		RoundTripCounter.record("PROFILE");
 		return res;
 	}
 
@@ -109,11 +124,13 @@ public class DBWrapper extends DB
 	public int listFriends(int requesterID, int profileOwnerID,
 			Set<String> fields, Vector<HashMap<String, ByteIterator>> result,  boolean insertImage, boolean testMode) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.listFriends(requesterID, profileOwnerID, fields, result, insertImage, testMode);
 		long en=System.nanoTime();
 		_measurements.measure("FRIENDS",(int)((en-st)/1000));
 		_measurements.reportReturnCode("FRIENDS",res);
+		RoundTripCounter.record("FRIENDS");
 		return res;
 	}
 
@@ -121,55 +138,65 @@ public class DBWrapper extends DB
 	public int viewFriendReq(int profileOwnerID,
 			Vector<HashMap<String, ByteIterator>> values,  boolean insertImage, boolean testMode) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.viewFriendReq(profileOwnerID, values,  insertImage, testMode);
 		long en=System.nanoTime();
 		_measurements.measure("PENDING",(int)((en-st)/1000));
 		_measurements.reportReturnCode("PENDING",res);
+		RoundTripCounter.record("PENDING");
 		return res;
 	}
 
 	@Override
 	public int acceptFriend(int invitorID, int inviteeID) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.acceptFriend(invitorID, inviteeID);
 		long en=System.nanoTime();
 		_measurements.measure("ACCEPT",(int)((en-st)/1000));
 		_measurements.reportReturnCode("ACCEPT",res);
+		RoundTripCounter.record("ACCEPT");
 		return res;
 	}
 
 	@Override
 	public int rejectFriend(int invitorID, int inviteeID) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.rejectFriend(invitorID, inviteeID);
 		long en=System.nanoTime();
 		_measurements.measure("REJECT",(int)((en-st)/1000));
 		_measurements.reportReturnCode("REJECT",res);
+		RoundTripCounter.record("REJECT");
 		return res;
 	}
 
 	@Override
 	public int inviteFriend(int invitorID, int inviteeID) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.inviteFriend(invitorID, inviteeID);
 		long en=System.nanoTime();
 		_measurements.measure("INV",(int)((en-st)/1000));
 		_measurements.reportReturnCode("INV",res);
+		RoundTripCounter.record("INV");
 		return res;
 	}
 
 	@Override
 	public int thawFriendship(int friendid1, int friendid2) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.thawFriendship(friendid1, friendid2);
 		long en=System.nanoTime();
 		_measurements.measure("UNFRIEND",(int)((en-st)/1000));
 		_measurements.reportReturnCode("UNFRIEND",res);
+		RoundTripCounter.record("UNFRIEND");
 		return res;
 	}
 
@@ -177,33 +204,65 @@ public class DBWrapper extends DB
 	public int viewTopKResources(int requesterID, int profileOwnerID, int k,
 			Vector<HashMap<String, ByteIterator>> result) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.viewTopKResources(requesterID, profileOwnerID, k, result);
 		long en=System.nanoTime();
 		_measurements.measure("GETTOPRES",(int)((en-st)/1000));
 		_measurements.reportReturnCode("GETTOPRES",res);
+		RoundTripCounter.record("GETTOPRES");
 		return res;	}
 
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid,
+			Vector<HashMap<String, ByteIterator>> result) {
+		RoundTripCounter.start();
+		long st=System.nanoTime();
+		int res=_db.viewTopKResources(requesterID, profileOwnerID, k, beforeRid, result);
+		long en=System.nanoTime();
+		_measurements.measure("GETTOPRESPAGE",(int)((en-st)/1000));
+		_measurements.reportReturnCode("GETTOPRESPAGE",res);
+		RoundTripCounter.record("GETTOPRESPAGE");
+		return res;
+	}
+
 	@Override
 	public int viewCommentOnResource(int requesterID, int profileOwnerID,
 			int resourceID, Vector<HashMap<String, ByteIterator>> result) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.viewCommentOnResource(requesterID, profileOwnerID, resourceID, result);
 		long en=System.nanoTime();
 		_measurements.measure("GETRESCOMMENT",(int)((en-st)/1000));
 		_measurements.reportReturnCode("GETRESCOMMENT",res);
+		RoundTripCounter.record("GETRESCOMMENT");
 		return res;	}
 
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, int pageSize, int afterMid,
+			Vector<HashMap<String, ByteIterator>> result) {
+		RoundTripCounter.start();
+		long st=System.nanoTime();
+		int res=_db.viewCommentOnResource(requesterID, profileOwnerID, resourceID, pageSize, afterMid, result);
+		long en=System.nanoTime();
+		_measurements.measure("GETRESCOMMENTPAGE",(int)((en-st)/1000));
+		_measurements.reportReturnCode("GETRESCOMMENTPAGE",res);
+		RoundTripCounter.record("GETRESCOMMENTPAGE");
+		return res;
+	}
+
 	@Override
 	public int postCommentOnResource(int commentCreatorID, int profileOwnerID,
 			int resourceID, HashMap<String,ByteIterator> values) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.postCommentOnResource(commentCreatorID, profileOwnerID, resourceID, values);
 		long en=System.nanoTime();
 		_measurements.measure("POSTCOMMENT",(int)((en-st)/1000));
 		_measurements.reportReturnCode("POSTCOMMENT",res);
+		RoundTripCounter.record("POSTCOMMENT");
 		return res;
 	}
 	
@@ -211,11 +270,13 @@ public class DBWrapper extends DB
 	public int delCommentOnResource(int resourceCreatorID, int resourceID,
 			int manipulationID) {
 		//int res=0;
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.delCommentOnResource(resourceCreatorID, resourceID, manipulationID);
 		long en=System.nanoTime();
 		_measurements.measure("DELCOMMENT",(int)((en-st)/1000));
 		_measurements.reportReturnCode("DELCOMMENT",res);
+		RoundTripCounter.record("DELCOMMENT");
 		return res;
 	}
 
@@ -227,11 +288,13 @@ public class DBWrapper extends DB
 	}
 
 	public int CreateFriendship(int memberA, int memberB){
+		RoundTripCounter.start();
 		long st=System.nanoTime();
 		int res=_db.CreateFriendship(memberA, memberB);
 		long en=System.nanoTime();
 		_measurements.measure("CREATEFRIENDSHIP",(int)((en-st)/1000));
 		_measurements.reportReturnCode("CREATEFRIENDSHIP",res);
+		RoundTripCounter.record("CREATEFRIENDSHIP");
 		return res;
 	}
 
@@ -265,5 +328,50 @@ public class DBWrapper extends DB
 		_db.buildIndexes(props);
 	}
 
+	@Override
+	public int insertEntities(String entitySet, Vector<String> entityPKs, Vector<HashMap<String,ByteIterator>> values, boolean insertImage)
+	{
+		RoundTripCounter.start();
+		long st=System.nanoTime();
+		int res=_db.insertEntities(entitySet, entityPKs, values, insertImage);
+		long en=System.nanoTime();
+		_measurements.measure("INSERTBATCH",(int)((en-st)/1000));
+		_measurements.reportReturnCode("INSERTBATCH",res);
+		RoundTripCounter.record("INSERTBATCH");
+		return res;
+	}
+
+	@Override
+	public int insertFriendships(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed){
+		RoundTripCounter.start();
+		long st=System.nanoTime();
+		int res=_db.insertFriendships(inviterIDs, inviteeIDs, confirmed);
+		long en=System.nanoTime();
+		_measurements.measure("CREATEFRIENDSHIPBATCH",(int)((en-st)/1000));
+		_measurements.reportReturnCode("CREATEFRIENDSHIPBATCH",res);
+		RoundTripCounter.record("CREATEFRIENDSHIPBATCH");
+		return res;
+	}
+
+	@Override
+	public void finalizeLoad(Properties props){
+		_db.finalizeLoad(props);
+	}
+
+	@Override
+	public int exportFriendships(ExportSink sink){
+		return _db.exportFriendships(sink);
+	}
+
+	@Override
+	public int exportResources(ExportSink sink){
+		return _db.exportResources(sink);
+	}
+
+	@Override
+	public int exportComments(ExportSink sink){
+		return _db.exportComments(sink);
+	}
+
 	
 }
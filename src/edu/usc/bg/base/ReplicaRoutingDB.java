@@ -0,0 +1,386 @@
+package edu.usc.bg.base;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.usc.bg.measurements.MyMeasurement;
+
+/**
+ * Sends the read actions of a DB to read replicas and everything else to the primary,
+ * enabled by listing the replicas with replicas=<url>,<url>,...
+ * DBFactory creates one DB of the same class per replica, with the replica url in place of
+ * the property named by replicaurlproperty (hibernate.connection.url, the url of the postgres
+ * clients). primaryurl replaces the url of the primary, by default the configured one is used.
+ *
+ * The reads are viewProfile, listFriends, viewFriendReq, viewTopKResources and
+ * viewCommentOnResource. replicarouting=roundrobin (default) takes the replicas in turn,
+ * replicarouting=leastloaded the one with the fewest reads in progress across all threads.
+ *
+ * readyourwrites=<msec> pins the reads of a member to the primary for that long after a write
+ * of the member, so a member sees its own writes even when the replicas lag. 0 (default) sends
+ * all reads to the replicas. The members of a write are the members it changes, the member of
+ * a read is the requester. Whatever the replicas still return stale shows up in the staleness
+ * reported by the validator.
+ *
+ * The REPLICA counters count the reads served by the primary and by each replica and the
+ * reads that were pinned.
+ */
+public class ReplicaRoutingDB extends DB {
+
+	public static final String REPLICAS_PROPERTY = "replicas";
+	public static final String PRIMARY_URL_PROPERTY = "primaryurl";
+	public static final String URL_PROPERTY_PROPERTY = "replicaurlproperty";
+	public static final String URL_PROPERTY_PROPERTY_DEFAULT = "hibernate.connection.url";
+	public static final String ROUTING_PROPERTY = "replicarouting";
+	public static final String ROUTING_PROPERTY_DEFAULT = "roundrobin";
+	//in msec
+	public static final String READ_YOUR_WRITES_PROPERTY = "readyourwrites";
+	public static final String READ_YOUR_WRITES_PROPERTY_DEFAULT = "0";
+
+	//reads in progress per replica url, shared by the threads
+	private static ConcurrentHashMap<String, AtomicInteger> inProgress = new ConcurrentHashMap<String, AtomicInteger>();
+	//nanoTime of the last write per member, shared by the threads since any thread may act for a member
+	private static ConcurrentHashMap<Integer, Long> lastWrites = new ConcurrentHashMap<Integer, Long>();
+
+	DB _primary;
+	Vector<DB> _replicas;
+	Vector<String> _urls;
+	Vector<AtomicInteger> _loads = new Vector<AtomicInteger>();
+	boolean _leastLoaded;
+	long _window;
+	int _next = 0;
+
+	public ReplicaRoutingDB(DB primary, Vector<DB> replicas, Vector<String> urls) {
+		_primary = primary;
+		_replicas = replicas;
+		_urls = urls;
+		for (int i = 0; i < urls.size(); i++) {
+			inProgress.putIfAbsent(urls.get(i), new AtomicInteger());
+			_loads.add(inProgress.get(urls.get(i)));
+		}
+		Properties p = primary.getProperties();
+		String routing = p.getProperty(ROUTING_PROPERTY, ROUTING_PROPERTY_DEFAULT);
+		if (!routing.equalsIgnoreCase("roundrobin") && !routing.equalsIgnoreCase("leastloaded"))
+			throw new IllegalArgumentException("Unknown " + ROUTING_PROPERTY + ": " + routing);
+		_leastLoaded = routing.equalsIgnoreCase("leastloaded");
+		_window = Long.parseLong(p.getProperty(READ_YOUR_WRITES_PROPERTY, READ_YOUR_WRITES_PROPERTY_DEFAULT)) * 1000000L;
+	}
+
+	public static boolean isEnabled(Properties props) {
+		return replicaUrls(props).size() > 0;
+	}
+
+	public static Vector<String> replicaUrls(Properties props) {
+		Vector<String> urls = new Vector<String>();
+		String[] list = props.getProperty(REPLICAS_PROPERTY, "").split(",");
+		for (int i = 0; i < list.length; i++) {
+			if (list[i].trim().length() > 0)
+				urls.add(list[i].trim());
+		}
+		return urls;
+	}
+
+	/**
+	 * The properties of the primary DB, the given ones with primaryurl applied.
+	 */
+	public static Properties primaryProperties(Properties props) {
+		String url = props.getProperty(PRIMARY_URL_PROPERTY);
+		return url == null ? props : withUrl(props, url);
+	}
+
+	/**
+	 * The properties of the DB of a replica.
+	 */
+	public static Properties replicaProperties(Properties props, String url) {
+		Properties p = withUrl(props, url);
+		//a standby is read only, the schema comes from the primary
+		if (p.getProperty(URL_PROPERTY_PROPERTY, URL_PROPERTY_PROPERTY_DEFAULT).startsWith("hibernate."))
+			p.setProperty("hibernate.hbm2ddl.auto", "none");
+		return p;
+	}
+
+	private static Properties withUrl(Properties props, String url) {
+		Properties p = new Properties();
+		p.putAll(props);
+		p.setProperty(props.getProperty(URL_PROPERTY_PROPERTY, URL_PROPERTY_PROPERTY_DEFAULT), url);
+		return p;
+	}
+
+	public void setProperties(Properties p) {
+		_primary.setProperties(primaryProperties(p));
+		for (int i = 0; i < _replicas.size(); i++)
+			_replicas.get(i).setProperties(replicaProperties(p, _urls.get(i)));
+	}
+
+	public Properties getProperties() {
+		return _primary.getProperties();
+	}
+
+	public boolean init() throws DBException {
+		boolean ok = _primary.init();
+		for (int i = 0; i < _replicas.size(); i++)
+			ok = _replicas.get(i).init() && ok;
+		return ok;
+	}
+
+	public void cleanup(boolean warmup) throws DBException {
+		_primary.cleanup(warmup);
+		for (int i = 0; i < _replicas.size(); i++)
+			_replicas.get(i).cleanup(warmup);
+	}
+
+	public void startSession() {
+		_primary.startSession();
+		for (int i = 0; i < _replicas.size(); i++)
+			_replicas.get(i).startSession();
+	}
+
+	public void endSession() {
+		_primary.endSession();
+		for (int i = 0; i < _replicas.size(); i++)
+			_replicas.get(i).endSession();
+	}
+
+	//the index of the replica for the next read of the member, -1 for the primary
+	private int route(int memberID) {
+		if (_window > 0) {
+			Long written = lastWrites.get(memberID);
+			if (written != null) {
+				if (System.nanoTime() - written < _window) {
+					MyMeasurement.incrementCounter("REPLICA.pinned", 1);
+					MyMeasurement.incrementCounter("REPLICA.reads.primary", 1);
+					return -1;
+				}
+				lastWrites.remove(memberID, written);
+			}
+		}
+		int r;
+		if (_leastLoaded) {
+			//ties go round robin so an idle system still spreads the reads
+			r = -1;
+			for (int i = 0; i < _replicas.size(); i++) {
+				int c = (_next + i) % _replicas.size();
+				if (r < 0 || _loads.get(c).get() < _loads.get(r).get())
+					r = c;
+			}
+		} else {
+			r = _next;
+		}
+		_next = (_next + 1) % _replicas.size();
+		MyMeasurement.incrementCounter("REPLICA.reads." + _urls.get(r), 1);
+		return r;
+	}
+
+	private void wrote(int memberID) {
+		if (_window > 0)
+			lastWrites.put(memberID, System.nanoTime());
+	}
+
+	//the DB call of a read
+	interface Read {
+		int read(DB db);
+	}
+
+	private int read(int memberID, Read read) {
+		int r = route(memberID);
+		if (r < 0)
+			return read.read(_primary);
+		AtomicInteger load = _loads.get(r);
+		load.incrementAndGet();
+		try {
+			return read.read(_replicas.get(r));
+		} finally {
+			load.decrementAndGet();
+		}
+	}
+
+	@Override
+	public int insertEntity(String entitySet, String entityPK, HashMap<String, ByteIterator> values, boolean insertImage) {
+		return _primary.insertEntity(entitySet, entityPK, values, insertImage);
+	}
+
+	@Override
+	public int insertEntities(String entitySet, Vector<String> entityPKs, Vector<HashMap<String, ByteIterator>> values, boolean insertImage) {
+		return _primary.insertEntities(entitySet, entityPKs, values, insertImage);
+	}
+
+	@Override
+	public int insertFriendships(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed) {
+		return _primary.insertFriendships(inviterIDs, inviteeIDs, confirmed);
+	}
+
+	@Override
+	public void finalizeLoad(Properties props) {
+		_primary.finalizeLoad(props);
+	}
+
+	//the initial state is read before any write, from the primary
+	@Override
+	public int exportFriendships(ExportSink sink) {
+		return _primary.exportFriendships(sink);
+	}
+
+	@Override
+	public int exportResources(ExportSink sink) {
+		return _primary.exportResources(sink);
+	}
+
+	@Override
+	public int exportComments(ExportSink sink) {
+		return _primary.exportComments(sink);
+	}
+
+	@Override
+	public int viewProfile(final int requesterID, final int profileOwnerID, final HashMap<String, ByteIterator> result, final boolean insertImage,
+			final boolean testMode) {
+		return read(requesterID, new Read() {
+			public int read(DB db) {
+				return db.viewProfile(requesterID, profileOwnerID, result, insertImage, testMode);
+			}
+		});
+	}
+
+	@Override
+	public int listFriends(final int requesterID, final int profileOwnerID, final Set<String> fields, final Vector<HashMap<String, ByteIterator>> result,
+			final boolean insertImage, final boolean testMode) {
+		return read(requesterID, new Read() {
+			public int read(DB db) {
+				return db.listFriends(requesterID, profileOwnerID, fields, result, insertImage, testMode);
+			}
+		});
+	}
+
+	@Override
+	public int viewFriendReq(final int profileOwnerID, final Vector<HashMap<String, ByteIterator>> results, final boolean insertImage,
+			final boolean testMode) {
+		return read(profileOwnerID, new Read() {
+			public int read(DB db) {
+				return db.viewFriendReq(profileOwnerID, results, insertImage, testMode);
+			}
+		});
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, Vector<HashMap<String, ByteIterator>> result) {
+		return viewTopKResources(requesterID, profileOwnerID, k, -1, result);
+	}
+
+	@Override
+	public int viewTopKResources(final int requesterID, final int profileOwnerID, final int k, final int beforeRid,
+			final Vector<HashMap<String, ByteIterator>> result) {
+		return read(requesterID, new Read() {
+			public int read(DB db) {
+				if (beforeRid < 0)
+					return db.viewTopKResources(requesterID, profileOwnerID, k, result);
+				return db.viewTopKResources(requesterID, profileOwnerID, k, beforeRid, result);
+			}
+		});
+	}
+
+	@Override
+	public int getCreatedResources(int creatorID, Vector<HashMap<String, ByteIterator>> result) {
+		return _primary.getCreatedResources(creatorID, result);
+	}
+
+	@Override
+	public int viewCommentOnResource(final int requesterID, final int profileOwnerID, final int resourceID,
+			final Vector<HashMap<String, ByteIterator>> result) {
+		return read(requesterID, new Read() {
+			public int read(DB db) {
+				return db.viewCommentOnResource(requesterID, profileOwnerID, resourceID, result);
+			}
+		});
+	}
+
+	@Override
+	public int viewCommentOnResource(final int requesterID, final int profileOwnerID, final int resourceID, final int pageSize,
+			final int afterMid, final Vector<HashMap<String, ByteIterator>> result) {
+		return read(requesterID, new Read() {
+			public int read(DB db) {
+				return db.viewCommentOnResource(requesterID, profileOwnerID, resourceID, pageSize, afterMid, result);
+			}
+		});
+	}
+
+	@Override
+	public int postCommentOnResource(int commentCreatorID, int resourceCreatorID, int resourceID, HashMap<String, ByteIterator> values) {
+		int res = _primary.postCommentOnResource(commentCreatorID, resourceCreatorID, resourceID, values);
+		wrote(commentCreatorID);
+		wrote(resourceCreatorID);
+		return res;
+	}
+
+	@Override
+	public int delCommentOnResource(int resourceCreatorID, int resourceID, int manipulationID) {
+		int res = _primary.delCommentOnResource(resourceCreatorID, resourceID, manipulationID);
+		wrote(resourceCreatorID);
+		return res;
+	}
+
+	@Override
+	public int acceptFriend(int inviterID, int inviteeID) {
+		int res = _primary.acceptFriend(inviterID, inviteeID);
+		wrote(inviterID);
+		wrote(inviteeID);
+		return res;
+	}
+
+	@Override
+	public int rejectFriend(int inviterID, int inviteeID) {
+		int res = _primary.rejectFriend(inviterID, inviteeID);
+		wrote(inviterID);
+		wrote(inviteeID);
+		return res;
+	}
+
+	@Override
+	public int inviteFriend(int inviterID, int inviteeID) {
+		int res = _primary.inviteFriend(inviterID, inviteeID);
+		wrote(inviterID);
+		wrote(inviteeID);
+		return res;
+	}
+
+	@Override
+	public int thawFriendship(int friendid1, int friendid2) {
+		int res = _primary.thawFriendship(friendid1, friendid2);
+		wrote(friendid1);
+		wrote(friendid2);
+		return res;
+	}
+
+	@Override
+	public int CreateFriendship(int friendid1, int friendid2) {
+		return _primary.CreateFriendship(friendid1, friendid2);
+	}
+
+	@Override
+	public HashMap<String, String> getInitialStats() {
+		return _primary.getInitialStats();
+	}
+
+	@Override
+	public void createSchema(Properties props) {
+		_primary.createSchema(props);
+	}
+
+	@Override
+	public void buildIndexes(Properties props) {
+		_primary.buildIndexes(props);
+	}
+
+	//the workload builds its initial state from these, they go to the primary
+	@Override
+	public int queryPendingFriendshipIds(int memberID, Vector<Integer> pendingIds) {
+		return _primary.queryPendingFriendshipIds(memberID, pendingIds);
+	}
+
+	@Override
+	public int queryConfirmedFriendshipIds(int memberID, Vector<Integer> confirmedIds) {
+		return _primary.queryConfirmedFriendshipIds(memberID, confirmedIds);
+	}
+}
@@ -0,0 +1,230 @@
+package edu.usc.bg.base;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.usc.bg.measurements.MyMeasurement;
+
+/**
+ * Byte bounded LRU cache of finished action results, shared by all the ResultCacheDB
+ * instances of a BG client. The keys are split over segments with their own lock and
+ * an equal share of resultcachesize bytes, each segment evicts its least recently used
+ * results until the new one fits.
+ *
+ * A key holds one variant of a result, e.g. the profile of a member with or without the
+ * images. Reading another variant is a miss and its put replaces the cached one.
+ *
+ * A read that misses takes a ticket before it queries the data store and can only put its
+ * result with that ticket if the key was not invalidated in between, otherwise a write
+ * that completed during the read would be hidden by the value read before it. The
+ * invalidation leaves a marker behind for that purpose, the markers are evicted like
+ * results.
+ */
+public class ResultCache {
+
+	public static final String RESULT_CACHE_SIZE_PROPERTY = "resultcachesize";
+	public static final String RESULT_CACHE_SIZE_PROPERTY_DEFAULT = "67108864";
+
+	private static final int SEGMENTS = 16;
+	//rough cost of a map entry and its key, added to the bytes of every result
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private static ResultCache cache;
+
+	static class Entry {
+		String variant;
+		Object value;
+		long bytes;
+		//ticket of the last invalidation of the key
+		long invalidated;
+	}
+
+	static class Segment {
+		LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+		long bytes;
+		long capacity;
+		long clock;
+		//largest invalidation ticket evicted, a put without a marker must be newer
+		long evictedInvalidation;
+	}
+
+	private Segment[] segments = new Segment[SEGMENTS];
+	//of all segments, a gauge since the entries outlive a reset of the measurements
+	private AtomicLong totalBytes = new AtomicLong();
+
+	/**
+	 * Returns the cache of this BG client, created on first use with resultcachesize bytes.
+	 */
+	public static synchronized ResultCache get(Properties props) {
+		if (cache == null)
+			cache = new ResultCache(Long.parseLong(props.getProperty(RESULT_CACHE_SIZE_PROPERTY, RESULT_CACHE_SIZE_PROPERTY_DEFAULT)));
+		return cache;
+	}
+
+	public ResultCache(long capacity) {
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment();
+			segments[i].capacity = capacity / SEGMENTS;
+		}
+	}
+
+	private Segment segment(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * Returns the cached variant of the result of key, null if it is not cached.
+	 */
+	public Object get(String key, String variant) {
+		Segment s = segment(key);
+		synchronized (s) {
+			Entry e = s.entries.get(key);
+			if (e != null && e.value != null && e.variant.equals(variant)) {
+				MyMeasurement.incrementCounter("RESULTCACHE.hits", 1);
+				return e.value;
+			}
+		}
+		MyMeasurement.incrementCounter("RESULTCACHE.misses", 1);
+		return null;
+	}
+
+	/**
+	 * Ticket to pass to put for a result read from the data store after this call.
+	 */
+	public long ticket(String key) {
+		Segment s = segment(key);
+		synchronized (s) {
+			return ++s.clock;
+		}
+	}
+
+	/**
+	 * Caches a result read with the given ticket unless the key was invalidated since.
+	 */
+	public void put(String key, String variant, Object value, long bytes, long ticket) {
+		bytes += ENTRY_OVERHEAD + 2 * key.length();
+		Segment s = segment(key);
+		synchronized (s) {
+			if (bytes > s.capacity)
+				return;
+			Entry e = s.entries.get(key);
+			long invalidated = e != null ? e.invalidated : s.evictedInvalidation;
+			if (invalidated > ticket) {
+				MyMeasurement.incrementCounter("RESULTCACHE.rejectedputs", 1);
+				return;
+			}
+			if (e == null) {
+				e = new Entry();
+				e.invalidated = invalidated;
+				s.entries.put(key, e);
+			}
+			resize(s, e, bytes);
+			e.variant = variant;
+			e.value = value;
+			evict(s, key);
+		}
+		MyMeasurement.incrementCounter("RESULTCACHE.puts", 1);
+	}
+
+	/**
+	 * Drops the result of key, a read that started before it can no longer put its result.
+	 */
+	public void invalidate(String key) {
+		Segment s = segment(key);
+		synchronized (s) {
+			Entry e = s.entries.get(key);
+			if (e == null) {
+				e = new Entry();
+				s.entries.put(key, e);
+			}
+			e.invalidated = ++s.clock;
+			e.variant = null;
+			e.value = null;
+			resize(s, e, ENTRY_OVERHEAD + 2 * key.length());
+			evict(s, key);
+		}
+		MyMeasurement.incrementCounter("RESULTCACHE.invalidations", 1);
+	}
+
+	private void resize(Segment s, Entry e, long bytes) {
+		MyMeasurement.setGauge("RESULTCACHE.bytes", totalBytes.addAndGet(bytes - e.bytes));
+		s.bytes += bytes - e.bytes;
+		e.bytes = bytes;
+	}
+
+	//least recently used first, the key just written is kept
+	private void evict(Segment s, String keep) {
+		Iterator<Map.Entry<String, Entry>> it = s.entries.entrySet().iterator();
+		while (s.bytes > s.capacity && it.hasNext()) {
+			Map.Entry<String, Entry> victim = it.next();
+			if (victim.getKey().equals(keep))
+				continue;
+			Entry e = victim.getValue();
+			it.remove();
+			s.bytes -= e.bytes;
+			MyMeasurement.setGauge("RESULTCACHE.bytes", totalBytes.addAndGet(-e.bytes));
+			if (e.value != null)
+				MyMeasurement.incrementCounter("RESULTCACHE.evictions", 1);
+			if (e.invalidated > s.evictedInvalidation)
+				s.evictedInvalidation = e.invalidated;
+		}
+	}
+
+	/**
+	 * Copies a result map into a cacheable one. Reading a ByteIterator consumes it, so the
+	 * values of the map are replaced with fresh iterators over the copied bytes.
+	 */
+	public static HashMap<String, byte[]> copy(HashMap<String, ByteIterator> result) {
+		HashMap<String, byte[]> copy = new HashMap<String, byte[]>(result.size() * 2);
+		for (Map.Entry<String, ByteIterator> e : result.entrySet()) {
+			byte[] b = e.getValue().toArray();
+			copy.put(e.getKey(), b);
+			e.setValue(new ObjectByteIterator(b));
+		}
+		return copy;
+	}
+
+	public static Vector<HashMap<String, byte[]>> copy(Vector<HashMap<String, ByteIterator>> result) {
+		Vector<HashMap<String, byte[]>> copy = new Vector<HashMap<String, byte[]>>(result.size());
+		for (int i = 0; i < result.size(); i++)
+			copy.add(copy(result.get(i)));
+		return copy;
+	}
+
+	/**
+	 * Adds a cached result to the result map of the caller.
+	 */
+	public static void restore(HashMap<String, byte[]> cached, HashMap<String, ByteIterator> result) {
+		for (Map.Entry<String, byte[]> e : cached.entrySet())
+			result.put(e.getKey(), new ObjectByteIterator(e.getValue()));
+	}
+
+	public static void restore(Vector<HashMap<String, byte[]>> cached, Vector<HashMap<String, ByteIterator>> result) {
+		for (int i = 0; i < cached.size(); i++) {
+			HashMap<String, ByteIterator> r = new HashMap<String, ByteIterator>();
+			restore(cached.get(i), r);
+			result.add(r);
+		}
+	}
+
+	public static long bytes(HashMap<String, byte[]> cached) {
+		long bytes = 0;
+		for (Map.Entry<String, byte[]> e : cached.entrySet())
+			bytes += ENTRY_OVERHEAD + 2 * e.getKey().length() + e.getValue().length;
+		return bytes;
+	}
+
+	public static long bytes(Vector<HashMap<String, byte[]>> cached) {
+		long bytes = 0;
+		for (int i = 0; i < cached.size(); i++)
+			bytes += bytes(cached.get(i));
+		return bytes;
+	}
+}
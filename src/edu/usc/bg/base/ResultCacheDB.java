@@ -0,0 +1,318 @@
+package edu.usc.bg.base;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Read-through cache of action results in front of a DB, enabled with resultcache=true.
+ * DBFactory places it between DBWrapper and the DB, so the measured latencies include the
+ * cache hits.
+ *
+ * The cached results and the writes that invalidate them:
+ *   profile of a member          P<member>   friendships of the member, its resources
+ *   friends of a member          F<member>   confirmed friendships of the member
+ *   pending requests of a member R<member>   invitations to the member
+ *   top-K resources of a wall    T<member>   resources posted on the wall
+ *   comments on a resource       C<resource> comments posted or deleted on it
+ * A write invalidates the keys after it returned. Other actions, and listFriends with
+ * a subset of the profile fields, go to the DB.
+ *
+ * Results served from the cache reach the workload like any other, so its read and update
+ * logs let the validator count the stale reads the cache introduces.
+ */
+public class ResultCacheDB extends DB {
+
+	public static final String RESULT_CACHE_PROPERTY = "resultcache";
+	public static final String RESULT_CACHE_PROPERTY_DEFAULT = "false";
+
+	DB _db;
+	ResultCache _cache;
+
+	public ResultCacheDB(DB db) {
+		_db = db;
+		_cache = ResultCache.get(db.getProperties());
+	}
+
+	public static boolean isEnabled(Properties props) {
+		return Boolean.parseBoolean(props.getProperty(RESULT_CACHE_PROPERTY, RESULT_CACHE_PROPERTY_DEFAULT));
+	}
+
+	public void setProperties(Properties p) {
+		_db.setProperties(p);
+	}
+
+	public Properties getProperties() {
+		return _db.getProperties();
+	}
+
+	public boolean init() throws DBException {
+		return _db.init();
+	}
+
+	public void cleanup(boolean warmup) throws DBException {
+		_db.cleanup(warmup);
+	}
+
+	public void startSession() {
+		_db.startSession();
+	}
+
+	public void endSession() {
+		_db.endSession();
+	}
+
+	@Override
+	public int insertEntity(String entitySet, String entityPK, HashMap<String, ByteIterator> values, boolean insertImage) {
+		String creator = null, wall = null;
+		if (entitySet.equalsIgnoreCase("resources")) {
+			creator = peek(values, "creatorid");
+			wall = peek(values, "walluserid");
+		}
+		int res = _db.insertEntity(entitySet, entityPK, values, insertImage);
+		if (entitySet.equalsIgnoreCase("users"))
+			_cache.invalidate("P" + entityPK);
+		if (creator != null)
+			_cache.invalidate("P" + creator);
+		if (wall != null)
+			_cache.invalidate("T" + wall);
+		return res;
+	}
+
+	@Override
+	public int insertEntities(String entitySet, Vector<String> entityPKs, Vector<HashMap<String, ByteIterator>> values, boolean insertImage) {
+		//bulk loads run before the benchmark, there is nothing cached to invalidate
+		return _db.insertEntities(entitySet, entityPKs, values, insertImage);
+	}
+
+	@Override
+	public int insertFriendships(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed) {
+		return _db.insertFriendships(inviterIDs, inviteeIDs, confirmed);
+	}
+
+	@Override
+	public void finalizeLoad(Properties props) {
+		_db.finalizeLoad(props);
+	}
+
+	@Override
+	public int exportFriendships(ExportSink sink) {
+		return _db.exportFriendships(sink);
+	}
+
+	@Override
+	public int exportResources(ExportSink sink) {
+		return _db.exportResources(sink);
+	}
+
+	@Override
+	public int exportComments(ExportSink sink) {
+		return _db.exportComments(sink);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public int viewProfile(int requesterID, int profileOwnerID, HashMap<String, ByteIterator> result, boolean insertImage, boolean testMode) {
+		//the pending count is only returned to the owner
+		String key = "P" + profileOwnerID;
+		String variant = (requesterID == profileOwnerID ? "owner" : "visitor") + (insertImage ? "+images" : "");
+		HashMap<String, byte[]> cached = (HashMap<String, byte[]>) _cache.get(key, variant);
+		if (cached != null) {
+			ResultCache.restore(cached, result);
+			return 0;
+		}
+		long ticket = _cache.ticket(key);
+		int res = _db.viewProfile(requesterID, profileOwnerID, result, insertImage, testMode);
+		if (res == 0) {
+			cached = ResultCache.copy(result);
+			_cache.put(key, variant, cached, ResultCache.bytes(cached), ticket);
+		}
+		return res;
+	}
+
+	@Override
+	public int listFriends(int requesterID, int profileOwnerID, Set<String> fields, Vector<HashMap<String, ByteIterator>> result, boolean insertImage, boolean testMode) {
+		if (fields != null)
+			return _db.listFriends(requesterID, profileOwnerID, fields, result, insertImage, testMode);
+		String key = "F" + profileOwnerID;
+		return cachedList(key, insertImage ? "images" : "", result, new Read() {
+			public int read(int requesterID, int profileOwnerID, Vector<HashMap<String, ByteIterator>> result, boolean insertImage, boolean testMode) {
+				return _db.listFriends(requesterID, profileOwnerID, null, result, insertImage, testMode);
+			}
+		}, requesterID, profileOwnerID, insertImage, testMode);
+	}
+
+	@Override
+	public int viewFriendReq(int profileOwnerID, Vector<HashMap<String, ByteIterator>> results, boolean insertImage, boolean testMode) {
+		String key = "R" + profileOwnerID;
+		return cachedList(key, insertImage ? "images" : "", results, new Read() {
+			public int read(int requesterID, int profileOwnerID, Vector<HashMap<String, ByteIterator>> result, boolean insertImage, boolean testMode) {
+				return _db.viewFriendReq(profileOwnerID, result, insertImage, testMode);
+			}
+		}, profileOwnerID, profileOwnerID, insertImage, testMode);
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, final int k, Vector<HashMap<String, ByteIterator>> result) {
+		String key = "T" + profileOwnerID;
+		return cachedList(key, Integer.toString(k), result, new Read() {
+			public int read(int requesterID, int profileOwnerID, Vector<HashMap<String, ByteIterator>> result, boolean insertImage, boolean testMode) {
+				return _db.viewTopKResources(requesterID, profileOwnerID, k, result);
+			}
+		}, requesterID, profileOwnerID, false, false);
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid, Vector<HashMap<String, ByteIterator>> result) {
+		//only the first page is cached
+		if (beforeRid < 0)
+			return viewTopKResources(requesterID, profileOwnerID, k, result);
+		return _db.viewTopKResources(requesterID, profileOwnerID, k, beforeRid, result);
+	}
+
+	@Override
+	public int getCreatedResources(int creatorID, Vector<HashMap<String, ByteIterator>> result) {
+		return _db.getCreatedResources(creatorID, result);
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, final int resourceID, Vector<HashMap<String, ByteIterator>> result) {
+		String key = "C" + resourceID;
+		return cachedList(key, "", result, new Read() {
+			public int read(int requesterID, int profileOwnerID, Vector<HashMap<String, ByteIterator>> result, boolean insertImage, boolean testMode) {
+				return _db.viewCommentOnResource(requesterID, profileOwnerID, resourceID, result);
+			}
+		}, requesterID, profileOwnerID, false, false);
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, int pageSize, int afterMid,
+			Vector<HashMap<String, ByteIterator>> result) {
+		//only the whole list is cached
+		if (pageSize <= 0 && afterMid < 0)
+			return viewCommentOnResource(requesterID, profileOwnerID, resourceID, result);
+		return _db.viewCommentOnResource(requesterID, profileOwnerID, resourceID, pageSize, afterMid, result);
+	}
+
+	@Override
+	public int postCommentOnResource(int commentCreatorID, int resourceCreatorID, int resourceID, HashMap<String, ByteIterator> values) {
+		int res = _db.postCommentOnResource(commentCreatorID, resourceCreatorID, resourceID, values);
+		_cache.invalidate("C" + resourceID);
+		return res;
+	}
+
+	@Override
+	public int delCommentOnResource(int resourceCreatorID, int resourceID, int manipulationID) {
+		int res = _db.delCommentOnResource(resourceCreatorID, resourceID, manipulationID);
+		_cache.invalidate("C" + resourceID);
+		return res;
+	}
+
+	@Override
+	public int acceptFriend(int inviterID, int inviteeID) {
+		int res = _db.acceptFriend(inviterID, inviteeID);
+		_cache.invalidate("P" + inviterID);
+		_cache.invalidate("F" + inviterID);
+		_cache.invalidate("P" + inviteeID);
+		_cache.invalidate("F" + inviteeID);
+		_cache.invalidate("R" + inviteeID);
+		return res;
+	}
+
+	@Override
+	public int rejectFriend(int inviterID, int inviteeID) {
+		int res = _db.rejectFriend(inviterID, inviteeID);
+		_cache.invalidate("P" + inviteeID);
+		_cache.invalidate("R" + inviteeID);
+		return res;
+	}
+
+	@Override
+	public int inviteFriend(int inviterID, int inviteeID) {
+		int res = _db.inviteFriend(inviterID, inviteeID);
+		_cache.invalidate("P" + inviteeID);
+		_cache.invalidate("R" + inviteeID);
+		return res;
+	}
+
+	@Override
+	public int thawFriendship(int friendid1, int friendid2) {
+		int res = _db.thawFriendship(friendid1, friendid2);
+		_cache.invalidate("P" + friendid1);
+		_cache.invalidate("F" + friendid1);
+		_cache.invalidate("P" + friendid2);
+		_cache.invalidate("F" + friendid2);
+		return res;
+	}
+
+	@Override
+	public int CreateFriendship(int friendid1, int friendid2) {
+		int res = _db.CreateFriendship(friendid1, friendid2);
+		_cache.invalidate("P" + friendid1);
+		_cache.invalidate("F" + friendid1);
+		_cache.invalidate("P" + friendid2);
+		_cache.invalidate("F" + friendid2);
+		return res;
+	}
+
+	@Override
+	public HashMap<String, String> getInitialStats() {
+		return _db.getInitialStats();
+	}
+
+	@Override
+	public void createSchema(Properties props) {
+		_db.createSchema(props);
+	}
+
+	@Override
+	public void buildIndexes(Properties props) {
+		_db.buildIndexes(props);
+	}
+
+	@Override
+	public int queryPendingFriendshipIds(int memberID, Vector<Integer> pendingIds) {
+		return _db.queryPendingFriendshipIds(memberID, pendingIds);
+	}
+
+	@Override
+	public int queryConfirmedFriendshipIds(int memberID, Vector<Integer> confirmedIds) {
+		return _db.queryConfirmedFriendshipIds(memberID, confirmedIds);
+	}
+
+	//reads a value without consuming it for the insert
+	private static String peek(HashMap<String, ByteIterator> values, String name) {
+		ByteIterator v = values.get(name);
+		if (v == null)
+			return null;
+		String s = v.toString();
+		if (v instanceof ObjectByteIterator)
+			((ObjectByteIterator) v).resetOffset();
+		else
+			values.put(name, new ObjectByteIterator(s.getBytes()));
+		return s;
+	}
+
+	//the DB call behind a cached list
+	interface Read {
+		int read(int requesterID, int profileOwnerID, Vector<HashMap<String, ByteIterator>> result, boolean insertImage, boolean testMode);
+	}
+
+	@SuppressWarnings("unchecked")
+	private int cachedList(String key, String variant, Vector<HashMap<String, ByteIterator>> result, Read read,
+			int requesterID, int profileOwnerID, boolean insertImage, boolean testMode) {
+		Vector<HashMap<String, byte[]>> cached = (Vector<HashMap<String, byte[]>>) _cache.get(key, variant);
+		if (cached != null) {
+			ResultCache.restore(cached, result);
+			return 0;
+		}
+		long ticket = _cache.ticket(key);
+		int res = read.read(requesterID, profileOwnerID, result, insertImage, testMode);
+		if (res == 0) {
+			cached = ResultCache.copy(result);
+			_cache.put(key, variant, cached, ResultCache.bytes(cached), ticket);
+		}
+		return res;
+	}
+}
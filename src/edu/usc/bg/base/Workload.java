@@ -66,6 +66,14 @@ public abstract class Workload
 		return null;
 	}
 
+	/**
+	 * Cleanup the state returned by initThread() for a client thread. Called by the thread when its phase ends,
+	 * warmup is true when the thread ran the warmup phase.
+	 */
+	public void cleanupThread(Object threadstate, boolean warmup) throws WorkloadException
+	{
+	}
+
 	/**
 	 * Cleanup the scenario. Called once, in the main client thread, after all operations have completed.
 	 */
@@ -82,6 +90,21 @@ public abstract class Workload
 	 */
 	public abstract boolean doInsert(DB db, Object threadstate);
 
+	/**
+	 * Do up to count insert operations as one batch, used when the loadbatchsize property is larger than one.
+	 * The same thread safety rules as doInsert apply.
+	 * @return The number of insert operations done, 0 if the workload is done, a negative value on error.
+	 * The default implementation calls doInsert count times.
+	 */
+	public int doInsertBatch(DB db, Object threadstate, int count)
+	{
+		for(int i=0; i<count; i++){
+			if(!doInsert(db, threadstate))
+				return -1;
+		}
+		return count;
+	}
+
 	/**
 	 * Do one transaction operation. Because it will be called concurrently from multiple client threads, this 
 	 * function must be thread safe. However, avoid synchronized, or the threads will block waiting for each 
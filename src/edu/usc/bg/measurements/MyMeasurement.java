@@ -26,8 +26,12 @@ import java.text.DecimalFormat;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Collects latency and rerurn code measurements, and reports them when requested.
@@ -41,6 +45,15 @@ public class MyMeasurement
 	static Vector<MyMeasurement> allMeasurements=new Vector<MyMeasurement>();
 	static String fileNameToken = "latency";
 	static double expectedLatency;
+
+	/**
+	 * Counters and gauges reported by the components that sit below the DB interface
+	 * and are shared by all threads, e.g. connection pools.
+	 * The names are of the form COMPONENT.metric, e.g. POOL.acquires.
+	 * Counters are cumulative and reset with the measurements, gauges hold the last value reported.
+	 */
+	static ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	static ConcurrentHashMap<String, AtomicLong> gauges = new ConcurrentHashMap<String, AtomicLong>();
 		
 	/**
 	 * creates a measurement tracker for each thread 
@@ -116,6 +129,84 @@ public class MyMeasurement
 	}
 	
 	
+	private static AtomicLong getOrCreate(ConcurrentHashMap<String, AtomicLong> m, String name)
+	{
+		AtomicLong v = m.get(name);
+		if (v == null)
+		{
+			AtomicLong nv = new AtomicLong(0);
+			v = m.putIfAbsent(name, nv);
+			if (v == null)
+				v = nv;
+		}
+		return v;
+	}
+
+	/**
+	 * Adds delta to a shared counter.
+	 */
+	public static void incrementCounter(String name, long delta)
+	{
+		getOrCreate(counters, name).addAndGet(delta);
+	}
+
+	/**
+	 * Raises a shared counter to value if value is larger than what it holds, used for maximums.
+	 */
+	public static void maxCounter(String name, long value)
+	{
+		AtomicLong v = getOrCreate(counters, name);
+		long cur;
+		while ((cur = v.get()) < value && !v.compareAndSet(cur, value));
+	}
+
+	/**
+	 * Sets the current value of a shared gauge.
+	 */
+	public static void setGauge(String name, long value)
+	{
+		getOrCreate(gauges, name).set(value);
+	}
+
+	public static long getCounter(String name)
+	{
+		AtomicLong v = counters.get(name);
+		return v == null ? 0 : v.get();
+	}
+
+	/**
+	 * Return the counters and gauges grouped by component, one line per component
+	 */
+	public static String getCounterSummary()
+	{
+		TreeMap<String, String> all = new TreeMap<String, String>();
+		for (Map.Entry<String, AtomicLong> e : counters.entrySet())
+			all.put(e.getKey(), Long.toString(e.getValue().get()));
+		for (Map.Entry<String, AtomicLong> e : gauges.entrySet())
+			all.put(e.getKey(), Long.toString(e.getValue().get()));
+		String ret = "";
+		String component = null;
+		for (Map.Entry<String, String> e : all.entrySet())
+		{
+			int dot = e.getKey().indexOf('.');
+			String c = dot < 0 ? e.getKey() : e.getKey().substring(0, dot);
+			String metric = dot < 0 ? e.getKey() : e.getKey().substring(dot + 1);
+			if (!c.equals(component))
+			{
+				if (component != null)
+					ret += "\n";
+				ret += "[" + c + "]";
+				component = c;
+			}
+			else
+				ret += ",";
+			ret += " " + metric + "=" + e.getValue();
+		}
+		if (component != null)
+			ret += "\n";
+		return ret;
+	}
+
   /**
    * Return a one line summary of measurements of all the threads
    */
@@ -216,6 +307,8 @@ public class MyMeasurement
 				ret +="NumOperations="+totalOps+", AverageResponseTime(us)="+d.format(report)+", MinResponseTime(us)="+min+", MaxResponseTime(us)="+max+"\n";
 				ret += rets+"\n";
 			}
+			ret += getCounterSummary();
+			ret += RoundTripCounter.getTable();
 			return ret;
 		}
 		
@@ -274,6 +367,7 @@ public class MyMeasurement
 
 	public static void resetMeasurement(){
 		allMeasurements = new Vector<MyMeasurement>();
+		counters.clear();
 		//delete the files created so far
 		for(int i=0; i<allMeasurements.size(); i++){
 			File f1 = new File(fileNameToken+i+".txt");
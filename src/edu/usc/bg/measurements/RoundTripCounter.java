@@ -0,0 +1,226 @@
+package edu.usc.bg.measurements;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the database round trips of every BG action, enabled with roundtrips=true.
+ *
+ * The clients pass their JDBC connections through wrap(), which counts the statement
+ * executions, commits, rollbacks and validations on them for the current thread, and
+ * DBWrapper adds the count of the thread to the action it just measured. Fetching the rows
+ * of a result set is not counted, the PostgreSQL driver reads them with the execution.
+ *
+ * The final stats end with a table of the round trips per action. With roundtripfile=<path>
+ * the averages of the run are also saved in that file under the -db class and the table
+ * has a column for every client saved in it, so running the same workload with two clients
+ * and the same file compares them.
+ */
+public class RoundTripCounter {
+
+	public static final String ROUND_TRIPS_PROPERTY = "roundtrips";
+	public static final String ROUND_TRIPS_PROPERTY_DEFAULT = "false";
+	public static final String ROUND_TRIPS_FILE_PROPERTY = "roundtripfile";
+
+	private static volatile boolean enabled;
+	private static String client;
+	private static String file;
+
+	private static ThreadLocal<long[]> trips = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	public static synchronized void configure(Properties props) {
+		enabled = Boolean.parseBoolean(props.getProperty(ROUND_TRIPS_PROPERTY, ROUND_TRIPS_PROPERTY_DEFAULT));
+		client = props.getProperty("db", "client");
+		client = client.substring(client.lastIndexOf('.') + 1);
+		file = props.getProperty(ROUND_TRIPS_FILE_PROPERTY);
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns a connection that counts its round trips, the connection itself if counting is off.
+	 */
+	public static Connection wrap(Connection c) {
+		if (!enabled)
+			return c;
+		return (Connection) Proxy.newProxyInstance(RoundTripCounter.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, new Counting(c));
+	}
+
+	/**
+	 * Drops the round trips counted so far on this thread, called before an action.
+	 */
+	public static void start() {
+		if (enabled)
+			trips.get()[0] = 0;
+	}
+
+	/**
+	 * Adds the round trips since start() to the action.
+	 */
+	public static void record(String action) {
+		if (!enabled)
+			return;
+		long[] t = trips.get();
+		MyMeasurement.incrementCounter("ROUNDTRIPS." + action + ".trips", t[0]);
+		MyMeasurement.incrementCounter("ROUNDTRIPS." + action + ".actions", 1);
+		t[0] = 0;
+	}
+
+	static class Counting implements InvocationHandler {
+		Object target;
+
+		Counting(Object target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			//Hibernate keeps the statements in hash maps
+			if (name.equals("equals") && args.length == 1)
+				return proxy == args[0];
+			if (name.equals("hashCode") && args == null)
+				return System.identityHashCode(proxy);
+			if (name.startsWith("execute") || name.equals("commit") || name.equals("rollback") || name.equals("isValid"))
+				trips.get()[0]++;
+			Object r;
+			try {
+				r = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+			//the statements are counted too
+			if (r instanceof CallableStatement)
+				return wrap(r, CallableStatement.class);
+			if (r instanceof PreparedStatement)
+				return wrap(r, PreparedStatement.class);
+			if (r instanceof Statement)
+				return wrap(r, Statement.class);
+			return r;
+		}
+
+		private static Object wrap(Object statement, Class<?> type) {
+			return Proxy.newProxyInstance(RoundTripCounter.class.getClassLoader(), new Class<?>[] {type}, new Counting(statement));
+		}
+	}
+
+	/**
+	 * The round trips per action of this run and of the runs saved in roundtripfile, one
+	 * column per client. Empty if counting is off.
+	 */
+	public static synchronized String getTable() {
+		if (!enabled)
+			return "";
+		//client -> action -> round trips per action
+		TreeMap<String, TreeMap<String, String>> columns = new TreeMap<String, TreeMap<String, String>>();
+		Properties saved = load();
+		for (String key : saved.stringPropertyNames()) {
+			int dot = key.lastIndexOf('.');
+			column(columns, key.substring(0, dot)).put(key.substring(dot + 1), saved.getProperty(key));
+		}
+		DecimalFormat d = new DecimalFormat("0.00");
+		TreeMap<String, String> current = column(columns, client);
+		current.clear();
+		for (String name : countedActions()) {
+			long actions = MyMeasurement.getCounter("ROUNDTRIPS." + name + ".actions");
+			if (actions > 0) {
+				current.put(name, d.format((double) MyMeasurement.getCounter("ROUNDTRIPS." + name + ".trips") / actions));
+				saved.setProperty(client + "." + name, current.get(name));
+			}
+		}
+		save(saved);
+
+		TreeSet<String> actions = new TreeSet<String>();
+		for (TreeMap<String, String> c : columns.values())
+			actions.addAll(c.keySet());
+		StringBuilder sb = new StringBuilder("[ROUNDTRIPS PER ACTION]\n");
+		sb.append(String.format("%-16s", "action"));
+		for (String c : columns.keySet())
+			sb.append(String.format("%20s", c));
+		sb.append('\n');
+		for (String a : actions) {
+			sb.append(String.format("%-16s", a));
+			for (TreeMap<String, String> c : columns.values())
+				sb.append(String.format("%20s", c.containsKey(a) ? c.get(a) : "-"));
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static TreeMap<String, String> column(TreeMap<String, TreeMap<String, String>> columns, String client) {
+		TreeMap<String, String> c = columns.get(client);
+		if (c == null) {
+			c = new TreeMap<String, String>();
+			columns.put(client, c);
+		}
+		return c;
+	}
+
+	private static TreeSet<String> countedActions() {
+		TreeSet<String> names = new TreeSet<String>();
+		for (Map.Entry<String, AtomicLong> e : MyMeasurement.counters.entrySet()) {
+			String key = e.getKey();
+			if (key.startsWith("ROUNDTRIPS.") && key.endsWith(".actions"))
+				names.add(key.substring("ROUNDTRIPS.".length(), key.length() - ".actions".length()));
+		}
+		return names;
+	}
+
+	private static Properties load() {
+		Properties p = new Properties();
+		if (file == null || !new File(file).exists())
+			return p;
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				p.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read " + file + ": " + e.getMessage());
+		}
+		return p;
+	}
+
+	private static void save(Properties p) {
+		if (file == null)
+			return;
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				p.store(out, "BG round trips per action");
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Could not write " + file + ": " + e.getMessage());
+		}
+	}
+}
@@ -201,6 +201,58 @@ class initQueryThread extends Thread{
 	}
 }
 
+/**
+ * Streams one table of the data store to a sink with the bulk exports of DB, one scan instead of the
+ * per member queries of initQueryThread. Used if the data store supports the exports.
+ */
+class initExportThread extends Thread{
+	static final int FRIENDSHIPS = 0;
+	static final int RESOURCES = 1;
+	static final int COMMENTS = 2;
+
+	DB _db;
+	int _table;
+	DB.ExportSink _sink;
+	int _res = -1;
+
+	initExportThread(int table, DB.ExportSink sink, Properties props){
+		_table = table;
+		_sink = sink;
+		String dbname = props.getProperty(Client.DB_CLIENT_PROPERTY, Client.DB_CLIENT_PROPERTY_DEFAULT);
+		try {
+			_db = DBFactory.newDB(dbname, props);
+			_db.init();
+		} catch (UnknownDBException e) {
+			System.out.println("Unknown DB, initExportThread " + dbname);
+			System.exit(0);
+		} catch (DBException e) {
+			e.printStackTrace(System.out);
+			System.exit(0);
+		}
+	}
+
+	/**
+	 * The return code of the export, non-zero if it failed or is not supported
+	 */
+	public int getResult(){
+		return _res;
+	}
+
+	public void run(){
+		if(_table == FRIENDSHIPS)
+			_res = _db.exportFriendships(_sink);
+		else if(_table == RESOURCES)
+			_res = _db.exportResources(_sink);
+		else
+			_res = _db.exportComments(_sink);
+		try {
+			_db.cleanup(true);
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+		}
+	}
+}
+
 /**
  * responsible for creating the benchmarking workload for issuing the queries based on the workload file specified
  * @author barahman
@@ -367,6 +419,15 @@ public class CoreWorkload extends Workload
 	 * Percentage users that do the gettopresources action
 	 */
 	public static final String GETTOPRESOURCEACTION_PROPORTION_PROPERTY="ViewTopKResourcesAction";
+	/**
+	 * With initapproach=querydata, whether the initial state is built from the bulk exports of the data store
+	 * when it supports them, instead of querying every member
+	 */
+	public static final String INIT_EXPORT_PROPERTY="initexport";
+	/**
+	 * The initial state is built from the exports by default
+	 */
+	public static final String INIT_EXPORT_PROPERTY_DEFAULT="true";
 	/**
 	 * The default proportion of gettopresources action
 	 */
@@ -396,6 +457,17 @@ public class CoreWorkload extends Workload
 	 */
 	public static final String DELCOMMENTONRESOURCEACTION_PROPORTION_PROPERTY_DEFAULT="0.0";
 
+	/**
+	 * Issue the independent reads of the OWNPROFILE and FRIENDPROFILE sessions together through an AsyncDB
+	 */
+	public static final String ASYNC_READS_PROPERTY="asyncreads";
+	public static final String ASYNC_READS_PROPERTY_DEFAULT="false";
+	/**
+	 * DB instances per thread that run the asynchronous reads, the reads in flight at once
+	 */
+	public static final String ASYNC_READ_PARALLELISM_PROPERTY="asyncreadparallelism";
+	public static final String ASYNC_READ_PARALLELISM_PROPERTY_DEFAULT="3";
+
 	/**
 	 * keeps a track of the existence of reads in the workload
 	 * if no reads have occurred or no read log files created the validation check need not happen-shared for all threads
@@ -410,6 +482,9 @@ public class CoreWorkload extends Workload
 
 	public static HashMap<String, Integer> initStats = new HashMap<String, Integer>();
 
+	//the AsyncDBs of the threads still running, each is cleaned up when its thread ends
+	private static Vector<AsyncDB> asyncDBs = new Vector<AsyncDB>();
+
 	private static int numShards = 101;
 	private static char[][] userStatusShards;
 	private static Semaphore[] uStatSemaphores;
@@ -696,7 +771,11 @@ public class CoreWorkload extends Workload
 			}
 		}
 
-		if(p.getProperty(Client.INIT_STATS_REQ_APPROACH_PROPERTY) != null && p.getProperty(Client.INIT_STATS_REQ_APPROACH_PROPERTY).equalsIgnoreCase("QUERYDATA")){
+		boolean exported = p.getProperty(Client.INIT_STATS_REQ_APPROACH_PROPERTY) != null
+				&& p.getProperty(Client.INIT_STATS_REQ_APPROACH_PROPERTY).equalsIgnoreCase("QUERYDATA")
+				&& Boolean.parseBoolean(p.getProperty(INIT_EXPORT_PROPERTY, INIT_EXPORT_PROPERTY_DEFAULT))
+				&& initFromExports(p);
+		if(!exported && p.getProperty(Client.INIT_STATS_REQ_APPROACH_PROPERTY) != null && p.getProperty(Client.INIT_STATS_REQ_APPROACH_PROPERTY).equalsIgnoreCase("QUERYDATA")){
 			int numQThreads = 5;
 			Vector<initQueryThread> qThreads = new Vector<initQueryThread>();
 			int tUserCount = myMemberObjs.length / numQThreads;
@@ -993,11 +1072,17 @@ public class CoreWorkload extends Workload
 
 		if (op.compareTo("OWNPROFILE")==0)
 		{
-			opsDone = doTransactionOwnProfile(db, threadid, updateLog, readLog ,seqID, thinkTime, insertImage,  warmup);
+			if (threadstate instanceof AsyncDB)
+				opsDone = doTransactionOwnProfileAsync((AsyncDB) threadstate, threadid, updateLog, readLog ,seqID, thinkTime, insertImage,  warmup);
+			else
+				opsDone = doTransactionOwnProfile(db, threadid, updateLog, readLog ,seqID, thinkTime, insertImage,  warmup);
 		}
 		else if (op.compareTo("FRIENDPROFILE")==0)
 		{
-			opsDone = doTransactionFriendProfile(db, threadid, updateLog, readLog,seqID, thinkTime,  insertImage, warmup);
+			if (threadstate instanceof AsyncDB)
+				opsDone = doTransactionFriendProfileAsync((AsyncDB) threadstate, threadid, updateLog, readLog,seqID, thinkTime,  insertImage, warmup);
+			else
+				opsDone = doTransactionFriendProfile(db, threadid, updateLog, readLog,seqID, thinkTime,  insertImage, warmup);
 		}
 		else if (op.compareTo("POSTCOMMENT")==0)
 		{
@@ -1233,6 +1318,142 @@ public class CoreWorkload extends Workload
 		return numOpsDone;
 	}
 
+	/**
+	 * With asyncreads=true the thread state is an AsyncDB over asyncreadparallelism instances of the DB class.
+	 */
+	@Override
+	public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException
+	{
+		if (!Boolean.parseBoolean(p.getProperty(ASYNC_READS_PROPERTY, ASYNC_READS_PROPERTY_DEFAULT)))
+			return null;
+		try {
+			AsyncDB async = DBFactory.newAsyncDB(p.getProperty(Client.DB_CLIENT_PROPERTY, Client.DB_CLIENT_PROPERTY_DEFAULT), p,
+					Integer.parseInt(p.getProperty(ASYNC_READ_PARALLELISM_PROPERTY, ASYNC_READ_PARALLELISM_PROPERTY_DEFAULT)));
+			if (async == null)
+				throw new WorkloadException("Could not create the asynchronous DB");
+			async.init();
+			asyncDBs.add(async);
+			return async;
+		} catch (UnknownDBException e) {
+			throw new WorkloadException(e);
+		} catch (DBException e) {
+			throw new WorkloadException(e);
+		}
+	}
+
+	/**
+	 * Closes the thread's AsyncDB when its phase ends.
+	 */
+	@Override
+	public void cleanupThread(Object threadstate, boolean warmup) throws WorkloadException
+	{
+		if (!(threadstate instanceof AsyncDB) || !asyncDBs.remove(threadstate))
+			return;
+		try {
+			((AsyncDB) threadstate).cleanup(warmup);
+		} catch (DBException e) {
+			throw new WorkloadException(e);
+		}
+	}
+
+	@Override
+	public void cleanup() throws WorkloadException
+	{
+		try {
+			for (int i = 0; i < asyncDBs.size(); i++)
+				asyncDBs.get(i).cleanup(false);
+			asyncDBs.clear();
+		} catch (DBException e) {
+			throw new WorkloadException(e);
+		}
+	}
+
+	//waits for an asynchronous action, a failed action ends the run like a failed blocking one
+	private static AsyncDB.Result await(DBFuture<AsyncDB.Result> f, String action)
+	{
+		AsyncDB.Result r = null;
+		try {
+			r = f.get();
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+		}
+		if (r == null || r.code < 0) {
+			System.out.println("There is an exception in " + action + ".");
+			System.exit(0);
+		}
+		return r;
+	}
+
+	/**
+	 * doTransactionOwnProfile with the profile and the top-K resources read at the same time.
+	 * The read log has the interval from the submission to the completion of the read.
+	 */
+	public int doTransactionOwnProfileAsync(AsyncDB db, int threadid, StringBuilder updateLog, StringBuilder readLog,int seqID, int thinkTime, boolean insertImage,  boolean warmup)
+	{
+		int keyname = buildKeyName(usercount);
+		keyname = activateUser(keyname);
+		if(keyname == -1)
+			return 0;
+		incrUserRef(keyname);
+		DBFuture<AsyncDB.Result> profile = db.viewProfile(keyname, keyname, insertImage, false);
+		DBFuture<AsyncDB.Result> resources = db.viewTopKResources(keyname, keyname, 5);
+		HashMap<String,ByteIterator> pResult = await(profile, "getProfile").values;
+		await(resources, "getTopResource");
+		if(!warmup && enableLogging){
+			readLog.append("READ,ACCEPTFRND,"+seqID+","+threadid+","+keyname+","+profile.getSubmitted()+","+profile.getCompleted()+","+pResult.get("friendcount")+"\n");
+			readLog.append("READ,PENDFRND,"+seqID+","+threadid+","+keyname+","+profile.getSubmitted()+","+profile.getCompleted()+","+pResult.get("pendingcount")+"\n");
+			readsExist = true;
+		}
+		deactivateUser(keyname);
+		return 2;
+	}
+
+	/**
+	 * doTransactionFriendProfile with the profile, top-K resources and friends of the member read
+	 * at the same time, then the profile and top-K resources of a random friend.
+	 */
+	public int doTransactionFriendProfileAsync(AsyncDB db, int threadid, StringBuilder updateLog,StringBuilder readLog, int seqID, int thinkTime,  boolean insertImage, boolean warmup)
+	{
+		int numOpsDone=0;
+		int keyname = buildKeyName(usercount);
+		keyname = activateUser(keyname);
+		if(keyname == -1)
+			return 0;
+		incrUserRef(keyname);
+		DBFuture<AsyncDB.Result> profile = db.viewProfile(keyname, keyname, insertImage, false);
+		DBFuture<AsyncDB.Result> resources = db.viewTopKResources(keyname, keyname, 5);
+		DBFuture<AsyncDB.Result> friends = db.listFriends(keyname, keyname, null, insertImage, false);
+		HashMap<String,ByteIterator> pResult = await(profile, "getProfile").values;
+		await(resources, "getTopResource");
+		Vector<HashMap<String,ByteIterator>> fResult = await(friends, "listFriends").rows;
+		numOpsDone += 3;
+		if(!warmup && enableLogging){
+			readLog.append("READ,ACCEPTFRND,"+seqID+","+threadid+","+keyname+","+profile.getSubmitted()+","+profile.getCompleted()+","+pResult.get("friendcount")+"\n");
+			readLog.append("READ,PENDFRND,"+seqID+","+threadid+","+keyname+","+profile.getSubmitted()+","+profile.getCompleted()+","+pResult.get("pendingcount")+"\n");
+			readLog.append("READ,ACCEPTFRND,"+seqID+","+threadid+","+keyname+","+friends.getSubmitted()+","+friends.getCompleted()+","+fResult.size()+"\n");
+			readsExist = true;
+		}
+		try {
+			Thread.sleep(thinkTime);
+		} catch (InterruptedException e) {
+			e.printStackTrace(System.out);
+		}
+		if(fResult.size() > 0){
+			int friendId = Integer.parseInt(fResult.get(random.nextInt(fResult.size())).get("userid").toString());
+			DBFuture<AsyncDB.Result> friendProfile = db.viewProfile(keyname, friendId, insertImage, false);
+			DBFuture<AsyncDB.Result> friendResources = db.viewTopKResources(keyname, friendId, 5);
+			HashMap<String,ByteIterator> fpResult = await(friendProfile, "getProfile").values;
+			await(friendResources, "getTopResource");
+			numOpsDone += 2;
+			if(!warmup && enableLogging){
+				readLog.append("READ,ACCEPTFRND,"+seqID+","+threadid+","+friendId+","+friendProfile.getSubmitted()+","+friendProfile.getCompleted()+","+fpResult.get("friendcount")+"\n");
+				readsExist = true;
+			}
+		}
+		deactivateUser(keyname);
+		return numOpsDone;
+	}
+
 	public int doTransactionPostCommentOnResource(DB db,int threadid, StringBuilder updateLog, StringBuilder readLog,int seqID, HashMap<String, Integer> resUpdateOperations, int thinkTime, boolean insertImage,  boolean warmup)
 	{	
 		int numOpsDone=0;
@@ -2868,6 +3089,116 @@ public class CoreWorkload extends Workload
 	}
 
 
+	/**
+	 * The initial state of the members of this BG client built from the bulk exports. Every export thread
+	 * only calls its own method, so the threads fill disjoint structures, apply copies them into the
+	 * workload once all of the exports are done.
+	 */
+	class InitStateSink implements DB.ExportSink{
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Vector<Integer>[] pending = new Vector[usercount];
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		HashMap<Integer, String>[] accepted = new HashMap[usercount];
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Vector<Integer>[] resources = new Vector[usercount];
+		//the resources created by the members of this client
+		Vector<Integer> rids = new Vector<Integer>();
+		HashMap<Integer, Integer> comments = new HashMap<Integer, Integer>();
+
+		InitStateSink(){
+			for(int i=0; i<usercount; i++){
+				pending[i] = new Vector<Integer>();
+				accepted[i] = new HashMap<Integer, String>();
+				resources[i] = new Vector<Integer>();
+			}
+		}
+
+		public void friendship(int inviterID, int inviteeID, boolean confirmed){
+			Integer invitee = memberIdxs.get(inviteeID);
+			if(!confirmed){
+				if(invitee != null)
+					pending[invitee].add(inviterID);
+				return;
+			}
+			Integer inviter = memberIdxs.get(inviterID);
+			if(inviter != null)
+				accepted[inviter].put(inviteeID, null);
+			if(invitee != null)
+				accepted[invitee].put(inviterID, null);
+		}
+
+		public void resource(int rid, int creatorID, int wallUserID){
+			Integer creator = memberIdxs.get(creatorID);
+			if(creator != null){
+				resources[creator].add(rid);
+				rids.add(rid);
+			}
+		}
+
+		public void comment(int mid, int rid){
+			Integer n = comments.get(rid);
+			comments.put(rid, n == null ? 1 : n+1);
+		}
+
+		void apply(){
+			for(Integer uid : memberIdxs.keySet()){
+				int idx = memberIdxs.get(uid);
+				pendingFrnds[idx] = pending[idx];
+				acceptedFrnds[idx] = accepted[idx];
+				createdResources[idx] = resources[idx];
+				initStats.put("PENDFRND-"+uid, pending[idx].size());
+				initStats.put("ACCEPTFRND-"+uid, accepted[idx].size());
+				for(int d=0; d<pending[idx].size(); d++){
+					if(memberIdxs.containsKey(pending[idx].get(d)))
+						relateUsers(uid, pending[idx].get(d));
+				}
+				for(Integer friend : accepted[idx].keySet()){
+					if(memberIdxs.containsKey(friend))
+						relateUsers(uid, friend);
+				}
+			}
+			for(int i=0; i<rids.size(); i++){
+				Integer n = comments.get(rids.get(i));
+				initStats.put("POSTCOMMENT-"+rids.get(i), n == null ? 0 : n);
+			}
+		}
+	}
+
+	/**
+	 * Builds the initial state of the members of this BG client from the bulk exports of the data store,
+	 * the Friendship, resource and comment tables are scanned in parallel, one thread each, instead of
+	 * querying every member. Returns false and leaves the state untouched if an export failed or is not
+	 * supported by the data store.
+	 */
+	private boolean initFromExports(Properties p){
+		long st = System.currentTimeMillis();
+		InitStateSink sink = new InitStateSink();
+		int[] tables = {initExportThread.FRIENDSHIPS, initExportThread.RESOURCES, initExportThread.COMMENTS};
+		Vector<initExportThread> eThreads = new Vector<initExportThread>();
+		for(int i=0; i<tables.length; i++){
+			initExportThread t = new initExportThread(tables[i], sink, p);
+			eThreads.add(t);
+			t.start();
+		}
+		boolean done = true;
+		for(initExportThread t : eThreads){
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace(System.out);
+			}
+			if(t.getResult() != 0)
+				done = false;
+		}
+		if(!done){
+			System.out.println("The data store does not export its tables, querying the initial state of every member");
+			return false;
+		}
+		sink.apply();
+		System.out.println("Built the initial state of "+memberIdxs.size()+" members from the exports in "+(System.currentTimeMillis()-st)+" msec");
+		return true;
+	}
+
 	public void relateUsers(int uid1, int uid2){
 		try {
 
@@ -57,6 +57,7 @@ public class FriendshipWorkload extends Workload {
 	public int recordCount = userCount * avgFriendCount; // Friendship number.
 		
 	int flags[];
+	int nextIdx = 0;
 	Vector<Integer> _members;
 	Random random = new Random();
 
@@ -82,7 +83,7 @@ public class FriendshipWorkload extends Workload {
 	private void addFriends(DB db, int dbKey, int keyNum) {
 		int res = 0;
 		// Generate the fields using StringByteIterator and RandomByteIterator.
-		if(friendPercentage*(random.nextInt(userCount)+1) >= 1.0f){		
+		if(isPending()){		
 			res = db.inviteFriend(dbKey, keyNum); //data = new StringByteIterator("1"); // Pending.
 		}else {					
 			res = db.CreateFriendship(dbKey, keyNum); //data = new StringByteIterator("2"); // Already.
@@ -97,6 +98,11 @@ public class FriendshipWorkload extends Workload {
 
 	}
 
+	// Decide if the next friendship is pending or confirmed.
+	private boolean isPending() {
+		return friendPercentage*(random.nextInt(userCount)+1) >= 1.0f;
+	}
+
 	// Prepare the primary key.
 	public String buildKeyName(long keyNum) {
 		String keyNumStr = "" + keyNum;
@@ -130,6 +136,37 @@ public class FriendshipWorkload extends Workload {
 		return true;
 	}
 
+	@Override
+	public int doInsertBatch(DB db, Object threadState, int count) {
+		Vector<Integer> inviters = new Vector<Integer>();
+		Vector<Integer> invitees = new Vector<Integer>();
+		Vector<Boolean> confirmed = new Vector<Boolean>();
+		int done = 0;
+		//members before nextIdx have all their friendships
+		while(done < count && nextIdx < userCount){
+			if(flags[nextIdx] >= avgFriendCount/2){
+				nextIdx++;
+				continue;
+			}
+			int dbKey = _members.get(nextIdx);
+			for(int i=0; i<(avgFriendCount/2); i++){
+				int friendIdx = (nextIdx+i+1) % userCount;
+				inviters.add(dbKey);
+				invitees.add(_members.get(friendIdx));
+				confirmed.add(!isPending());
+				flags[nextIdx] = flags[nextIdx]+1;
+			}
+			done++;
+		}
+		if(inviters.size() > 0 && db.insertFriendships(inviters, invitees, confirmed) < 0){
+			System.out.println("The creation of the friendship relationship failes. " +
+					"Please make sure the appropriate schema has been created " + 
+					" and the users have been inserted.");
+			return -1;
+		}
+		return done;
+	}
+
 	@Override
 	public HashMap<String, String> getDBInitialStats(DB db) {
 		HashMap<String, String> stats = new HashMap<String, String>();
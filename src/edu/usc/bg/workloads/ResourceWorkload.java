@@ -128,16 +128,21 @@ public class ResourceWorkload extends Workload {
 	}
 
 
-	@Override
-	public boolean doInsert(DB db, Object threadState) {
-
+	// Move to the next resource and return its key, creatorNum is set to its creator.
+	private String nextResourceKey() {
 		creatorNum = _members.get(keyIdx); // Creator ID.
 		if(++keyCounter == avgResourceCount){
 			keyIdx = creatorSequence.nextInt();
 			creatorNum = _members.get(keyIdx); // Creator ID.
 			keyCounter = 0;
 		}
-		String dbKey = buildKeyName(creatorNum*avgResourceCount+keyCounter);
+		return buildKeyName(creatorNum*avgResourceCount+keyCounter);
+	}
+
+	@Override
+	public boolean doInsert(DB db, Object threadState) {
+
+		String dbKey = nextResourceKey();
 		LinkedHashMap<String, ByteIterator> values = buildValues(dbKey, creatorNum);
 		//resources dont have images so insertImage = false
 		if (db.insertEntity(table, dbKey, values, false) >= 0)
@@ -147,6 +152,21 @@ public class ResourceWorkload extends Workload {
 		}
 	}
 
+	@Override
+	public int doInsertBatch(DB db, Object threadState, int count) {
+		Vector<String> dbKeys = new Vector<String>(count);
+		Vector<HashMap<String, ByteIterator>> values = new Vector<HashMap<String, ByteIterator>>(count);
+		for(int i=0; i<count; i++){
+			String dbKey = nextResourceKey();
+			dbKeys.add(dbKey);
+			values.add(buildValues(dbKey, creatorNum));
+		}
+		//resources dont have images so insertImage = false
+		if (db.insertEntities(table, dbKeys, values, false) < 0)
+			return -1;
+		return count;
+	}
+
 
 
 	@Override
@@ -145,6 +145,20 @@ public class UserWorkload extends Workload {
 		}
 	}
 
+	@Override
+	public int doInsertBatch(DB db, Object threadState, int count) {
+		Vector<String> dbKeys = new Vector<String>(count);
+		Vector<HashMap<String, ByteIterator>> values = new Vector<HashMap<String, ByteIterator>>(count);
+		for(int i=0; i<count; i++){
+			int keyIdx = keySequence.nextInt();
+			dbKeys.add(buildKeyName(_members.get(keyIdx)));
+			values.add(buildValues());
+		}
+		if (db.insertEntities(table, dbKeys, values, insertImage) < 0)
+			return -1;
+		return count;
+	}
+
 
 
 	@Override
@@ -0,0 +1,249 @@
+package postgreHibernateClient;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.HibernateException;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import edu.usc.bg.measurements.MyMeasurement;
+import edu.usc.bg.measurements.RoundTripCounter;
+
+/**
+ * A bounded, fair JDBC connection pool used as the Hibernate connection provider.
+ * It replaces the built-in pool which is not meant for benchmarking.
+ *
+ * At most max_size connections are open at any time, threads asking for a connection
+ * when all of them are in use wait in FIFO order for at most acquire_timeout msec.
+ * Connections that have been idle for longer than validate_idle_after msec are validated
+ * before they are handed out.
+ *
+ * The wait time, active and idle connection counts are exported to MyMeasurement under POOL.
+ */
+public class BoundedConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String MIN_SIZE_PROPERTY = "hibernate.bgpool.min_size";
+	public static final String MIN_SIZE_PROPERTY_DEFAULT = "1";
+	public static final String MAX_SIZE_PROPERTY = "hibernate.bgpool.max_size";
+	public static final String MAX_SIZE_PROPERTY_DEFAULT = "20";
+	//in msec
+	public static final String ACQUIRE_TIMEOUT_PROPERTY = "hibernate.bgpool.acquire_timeout";
+	public static final String ACQUIRE_TIMEOUT_PROPERTY_DEFAULT = "30000";
+	//in sec, passed to Connection.isValid
+	public static final String VALIDATION_TIMEOUT_PROPERTY = "hibernate.bgpool.validation_timeout";
+	public static final String VALIDATION_TIMEOUT_PROPERTY_DEFAULT = "2";
+	//in msec, 0 validates on every checkout
+	public static final String VALIDATE_IDLE_AFTER_PROPERTY = "hibernate.bgpool.validate_idle_after";
+	public static final String VALIDATE_IDLE_AFTER_PROPERTY_DEFAULT = "5000";
+
+	/**
+	 * A connection sitting in the pool and the time it was returned
+	 */
+	static class IdleConnection {
+		Connection connection;
+		long since;
+
+		IdleConnection(Connection c) {
+			connection = c;
+			since = System.currentTimeMillis();
+		}
+	}
+
+	private String url;
+	private Properties connectionProps;
+	private boolean autocommit;
+	private Integer isolation;
+	private int minSize;
+	private int maxSize;
+	private long acquireTimeout;
+	private int validationTimeout;
+	private long validateIdleAfter;
+
+	private Semaphore permits;
+	//most recently returned first so a small working set of connections stays warm
+	private LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<IdleConnection>();
+	private AtomicInteger active = new AtomicInteger(0);
+	private volatile boolean stopped = false;
+
+	//Configurable declares the raw Map
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void configure(Map configurationValues) {
+		String driver = (String) configurationValues.get("hibernate.connection.driver_class");
+		url = (String) configurationValues.get("hibernate.connection.url");
+		if (url == null)
+			throw new HibernateException("hibernate.connection.url is not set");
+		try {
+			if (driver != null)
+				Class.forName(driver);
+		} catch (ClassNotFoundException e) {
+			throw new HibernateException("JDBC driver class not found: " + driver, e);
+		}
+
+		connectionProps = new Properties();
+		if (configurationValues.get("hibernate.connection.username") != null)
+			connectionProps.setProperty("user", (String) configurationValues.get("hibernate.connection.username"));
+		if (configurationValues.get("hibernate.connection.password") != null)
+			connectionProps.setProperty("password", (String) configurationValues.get("hibernate.connection.password"));
+		autocommit = Boolean.parseBoolean(getSetting(configurationValues, "hibernate.connection.autocommit", "false"));
+		if (configurationValues.get("hibernate.connection.isolation") != null)
+			isolation = Integer.valueOf(getSetting(configurationValues, "hibernate.connection.isolation", null));
+
+		minSize = Integer.parseInt(getSetting(configurationValues, MIN_SIZE_PROPERTY, MIN_SIZE_PROPERTY_DEFAULT));
+		maxSize = Integer.parseInt(getSetting(configurationValues, MAX_SIZE_PROPERTY, MAX_SIZE_PROPERTY_DEFAULT));
+		acquireTimeout = Long.parseLong(getSetting(configurationValues, ACQUIRE_TIMEOUT_PROPERTY, ACQUIRE_TIMEOUT_PROPERTY_DEFAULT));
+		validationTimeout = Integer.parseInt(getSetting(configurationValues, VALIDATION_TIMEOUT_PROPERTY, VALIDATION_TIMEOUT_PROPERTY_DEFAULT));
+		validateIdleAfter = Long.parseLong(getSetting(configurationValues, VALIDATE_IDLE_AFTER_PROPERTY, VALIDATE_IDLE_AFTER_PROPERTY_DEFAULT));
+		if (maxSize < 1)
+			maxSize = 1;
+		if (minSize > maxSize)
+			minSize = maxSize;
+		permits = new Semaphore(maxSize, true);
+
+		System.out.println("Connection pool: min=" + minSize + " max=" + maxSize + " acquireTimeout(ms)=" + acquireTimeout + " url=" + url);
+		//open the minimum number of connections up front
+		try {
+			for (int i = 0; i < minSize; i++)
+				idle.offerLast(new IdleConnection(open()));
+		} catch (SQLException e) {
+			System.out.println("Connection pool: could not open the initial connections: " + e.getMessage());
+		}
+		reportGauges();
+	}
+
+	private static String getSetting(Map<?, ?> configurationValues, String key, String def) {
+		Object v = configurationValues.get(key);
+		return v == null ? def : v.toString().trim();
+	}
+
+	private Connection open() throws SQLException {
+		Connection c = RoundTripCounter.wrap(DriverManager.getConnection(url, connectionProps));
+		c.setAutoCommit(autocommit);
+		if (isolation != null)
+			c.setTransactionIsolation(isolation);
+		MyMeasurement.incrementCounter("POOL.opened", 1);
+		return c;
+	}
+
+	private void discard(Connection c) {
+		MyMeasurement.incrementCounter("POOL.discarded", 1);
+		try {
+			c.close();
+		} catch (SQLException e) {
+			//it is being thrown away anyway
+		}
+	}
+
+	private boolean isUsable(IdleConnection ic) {
+		if (System.currentTimeMillis() - ic.since < validateIdleAfter)
+			return true;
+		try {
+			return ic.connection.isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void reportGauges() {
+		int a = active.get();
+		MyMeasurement.setGauge("POOL.active", a);
+		MyMeasurement.setGauge("POOL.idle", idle.size());
+		MyMeasurement.maxCounter("POOL.peakactive", a);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (stopped)
+			throw new SQLException("Connection pool has been stopped");
+		long st = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection");
+		}
+		long waited = (System.nanoTime() - st) / 1000;
+		MyMeasurement.incrementCounter("POOL.waittime(us)", waited);
+		MyMeasurement.maxCounter("POOL.maxwait(us)", waited);
+		if (!acquired) {
+			MyMeasurement.incrementCounter("POOL.timeouts", 1);
+			throw new SQLException("Timed out after " + acquireTimeout + " msec waiting for one of the " + maxSize + " pooled connections");
+		}
+		MyMeasurement.incrementCounter("POOL.acquires", 1);
+
+		try {
+			Connection c = null;
+			IdleConnection ic;
+			while (c == null && (ic = idle.pollFirst()) != null) {
+				if (isUsable(ic))
+					c = ic.connection;
+				else
+					discard(ic.connection);
+			}
+			if (c == null)
+				c = open();
+			active.incrementAndGet();
+			reportGauges();
+			return c;
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void closeConnection(Connection conn) throws SQLException {
+		try {
+			if (stopped || conn.isClosed())
+				discard(conn);
+			else
+				idle.offerFirst(new IdleConnection(conn));
+		} finally {
+			active.decrementAndGet();
+			permits.release();
+			reportGauges();
+		}
+	}
+
+	@Override
+	public boolean supportsAggressiveRelease() {
+		return false;
+	}
+
+	@Override
+	public void stop() {
+		stopped = true;
+		IdleConnection ic;
+		while ((ic = idle.pollFirst()) != null)
+			discard(ic.connection);
+		reportGauges();
+	}
+
+	//Wrapped declares the raw Class
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean isUnwrappableAs(Class unwrapType) {
+		return ConnectionProvider.class.equals(unwrapType) || BoundedConnectionProvider.class.isAssignableFrom(unwrapType);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> unwrapType) {
+		if (isUnwrappableAs(unwrapType))
+			return (T) this;
+		throw new UnknownUnwrapTypeException(unwrapType);
+	}
+}
@@ -0,0 +1,216 @@
+package postgreHibernateClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.postgresql.PGConnection;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.Client;
+import edu.usc.bg.base.ObjectByteIterator;
+
+/**
+ * Load path that streams batches of rows to PostgreSQL with COPY instead of saving one
+ * entity per transaction. The rows bypass the Hibernate session, so the derived counters
+ * of USERS (resCnt, confFriendCnt, pendFriendCnt) are not maintained per row and are
+ * computed once by updateCounters when the load is done.
+ */
+public class BulkLoader {
+
+	private static final String[] USERS_COLUMNS = {"userid", "username", "pw", "fname", "lname", "gender",
+		"dob", "jdate", "ldate", "address", "email", "tel", "pic", "tpic"};
+	private static final String[] RESOURCES_COLUMNS = {"rid", "creatorid", "walluserid", "type", "body", "doc"};
+	//the counters of a new member start at zero
+	private static final String USERS_COUNTERS = "confFriendCnt, pendFriendCnt, resCnt";
+
+	private static final String FRIENDSHIP_COPY = "COPY Friendship (value, inviterid, inviteeid) FROM STDIN";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	//one statement for all three counters, only the rows whose counters changed are written
+	private static final String UPDATE_COUNTERS = "UPDATE USERS SET resCnt = c.res, confFriendCnt = c.conf, pendFriendCnt = c.pend"
+			+ " FROM (SELECT u.userid, coalesce(r.cnt, 0) AS res, coalesce(f.cnt, 0) AS conf, coalesce(p.cnt, 0) AS pend FROM USERS u"
+			+ " LEFT JOIN (SELECT creatorid AS id, count(*) AS cnt FROM RESOURCES GROUP BY creatorid) r ON r.id = u.userid"
+			+ " LEFT JOIN (SELECT id, count(*) AS cnt FROM (SELECT inviterid AS id FROM Friendship WHERE value = '2'"
+			+ " UNION ALL SELECT inviteeid FROM Friendship WHERE value = '2') e GROUP BY id) f ON f.id = u.userid"
+			+ " LEFT JOIN (SELECT inviteeid AS id, count(*) AS cnt FROM Friendship WHERE value = '1' GROUP BY inviteeid) p ON p.id = u.userid) c"
+			+ " WHERE USERS.userid = c.userid"
+			+ " AND (USERS.resCnt <> c.res OR USERS.confFriendCnt <> c.conf OR USERS.pendFriendCnt <> c.pend)";
+
+	/**
+	 * Copies a batch of users or resources, returns the number of rows copied.
+	 */
+	public static long copyEntities(Session session, String entitySet, Vector<String> entityPKs,
+			Vector<HashMap<String, ByteIterator>> values, boolean insertImage) {
+		return copy(session, entitiesCopy(entitySet), entityRows(entitySet, entityPKs, values, insertImage));
+	}
+
+	public static long copyEntities(Connection connection, String entitySet, Vector<String> entityPKs,
+			Vector<HashMap<String, ByteIterator>> values, boolean insertImage) throws SQLException {
+		return copy(connection, entitiesCopy(entitySet), entityRows(entitySet, entityPKs, values, insertImage));
+	}
+
+	private static String[] columns(String entitySet) {
+		if (entitySet.equalsIgnoreCase("users"))
+			return USERS_COLUMNS;
+		if (entitySet.equalsIgnoreCase("resources"))
+			return RESOURCES_COLUMNS;
+		throw new IllegalArgumentException("No bulk load for entity set " + entitySet);
+	}
+
+	private static String entitiesCopy(String entitySet) {
+		String[] columns = columns(entitySet);
+		StringBuilder sql = new StringBuilder("COPY ").append(entitySet.toUpperCase()).append(" (");
+		for (int i = 0; i < columns.length; i++)
+			sql.append(i == 0 ? "" : ", ").append(columns[i]);
+		if (columns == USERS_COLUMNS)
+			sql.append(", ").append(USERS_COUNTERS);
+		return sql.append(") FROM STDIN").toString();
+	}
+
+	private static StringBuilder entityRows(String entitySet, Vector<String> entityPKs,
+			Vector<HashMap<String, ByteIterator>> values, boolean insertImage) {
+		String[] columns = columns(entitySet);
+		boolean counters = columns == USERS_COLUMNS;
+
+		StringBuilder rows = new StringBuilder();
+		for (int r = 0; r < entityPKs.size(); r++) {
+			HashMap<String, ByteIterator> row = values.get(r);
+			//the key is the first column
+			appendText(rows, entityPKs.get(r));
+			for (int i = 1; i < columns.length; i++) {
+				rows.append('\t');
+				ByteIterator v = row.get(columns[i]);
+				if (v == null || (!insertImage && (columns[i].equals("pic") || columns[i].equals("tpic"))))
+					rows.append("\\N");
+				else if (columns[i].equals("pic") || columns[i].equals("tpic"))
+					appendBytea(rows, toBytes(v));
+				else
+					appendText(rows, v.toString());
+			}
+			if (counters)
+				rows.append("\t0\t0\t0");
+			rows.append('\n');
+		}
+		return rows;
+	}
+
+	/**
+	 * Copies a batch of friendships, returns the number of rows copied.
+	 */
+	public static long copyFriendships(Session session, Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed) {
+		return copy(session, FRIENDSHIP_COPY, friendshipRows(inviterIDs, inviteeIDs, confirmed));
+	}
+
+	public static long copyFriendships(Connection connection, Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs,
+			Vector<Boolean> confirmed) throws SQLException {
+		return copy(connection, FRIENDSHIP_COPY, friendshipRows(inviterIDs, inviteeIDs, confirmed));
+	}
+
+	private static StringBuilder friendshipRows(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed) {
+		StringBuilder rows = new StringBuilder();
+		for (int i = 0; i < inviterIDs.size(); i++) {
+			rows.append(confirmed.get(i) ? '2' : '1').append('\t')
+				.append(inviterIDs.get(i)).append('\t')
+				.append(inviteeIDs.get(i)).append('\n');
+		}
+		return rows;
+	}
+
+	/**
+	 * Whether the load went through insertEntities and insertFriendships, loadbatchsize larger than one, and
+	 * the counters need updateCounters. A load of single rows runs the actions, which keep the counters.
+	 */
+	public static boolean isBatched(Properties props) {
+		return Integer.parseInt(props.getProperty(Client.LOAD_BATCH_SIZE_PROPERTY, Client.LOAD_BATCH_SIZE_PROPERTY_DEFAULT)) > 1;
+	}
+
+	/**
+	 * Recomputes the resource, friend and pending counts of all members, returns the number of members changed.
+	 */
+	public static int updateCounters(Session session) {
+		return session.createSQLQuery(UPDATE_COUNTERS).executeUpdate();
+	}
+
+	public static int updateCounters(Connection connection) throws SQLException {
+		Statement st = connection.createStatement();
+		try {
+			return st.executeUpdate(UPDATE_COUNTERS);
+		} finally {
+			st.close();
+		}
+	}
+
+	private static long copy(Session session, final String sql, final StringBuilder rows) {
+		return session.doReturningWork(new ReturningWork<Long>() {
+			@Override
+			public Long execute(Connection connection) throws SQLException {
+				return copy(connection, sql, rows);
+			}
+		});
+	}
+
+	private static long copy(Connection connection, String sql, StringBuilder rows) throws SQLException {
+		byte[] data;
+		try {
+			data = rows.toString().getBytes("UTF-8");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		PGConnection pg;
+		if (connection.isWrapperFor(PGConnection.class))
+			pg = connection.unwrap(PGConnection.class);
+		else
+			pg = (PGConnection) connection;
+		try {
+			return pg.getCopyAPI().copyIn(sql, new ByteArrayInputStream(data));
+		} catch (IOException e) {
+			throw new SQLException("COPY failed: " + e.getMessage(), e);
+		}
+	}
+
+	private static byte[] toBytes(ByteIterator v) {
+		if (v instanceof ObjectByteIterator)
+			((ObjectByteIterator) v).resetOffset();
+		return v.toArray();
+	}
+
+	//escapes a value for the COPY text format
+	private static void appendText(StringBuilder sb, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+	}
+
+	//bytea in hex format, the backslash itself is escaped for COPY
+	private static void appendBytea(StringBuilder sb, byte[] b) {
+		sb.append("\\\\x");
+		for (int i = 0; i < b.length; i++) {
+			sb.append(HEX[(b[i] >> 4) & 0xf]).append(HEX[b[i] & 0xf]);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package postgreHibernateClient;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SharedSessionContract;
+
+import edu.usc.bg.base.ByteIterator;
+
+/**
+ * The comments of a resource in mid order, optionally starting after a cursor mid and
+ * limited to a page, to page through the comments of a hot resource.
+ *
+ * The comments used to be read into a List of entities, all of them kept in the persistence
+ * context until the session was cleared, before they were copied to the result. Here they are
+ * scrolled forward only with a fetch size of commentfetchsize rows, each row is copied to the
+ * result and evicted right away, so besides the result the memory of a call is bounded by the
+ * fetch size. The driver only fetches in batches inside a transaction, TransactionPolicy keeps
+ * GETRESCOMMENT in one unless commentfetchsize=0, which reads the whole result at once.
+ * The tuned schema indexes (rid, mid), with varchar keys on cast(mid as int4).
+ */
+public class CommentPages {
+
+	public static final String COMMENT_FETCH_SIZE_PROPERTY = "commentfetchsize";
+	public static final String COMMENT_FETCH_SIZE_PROPERTY_DEFAULT = "100";
+
+	private static final String INT_COMMENTS = "from MANIPULATIONS m where m.rid = :rid order by m.mid";
+	private static final String INT_COMMENTS_AFTER = "from MANIPULATIONS m where m.rid = :rid"
+			+ " and m.mid > :after order by m.mid";
+	private static final String STRING_COMMENTS = "from MANIPULATIONS m where m.rid = :rid"
+			+ " order by cast(m.mid as integer)";
+	private static final String STRING_COMMENTS_AFTER = "from MANIPULATIONS m where m.rid = :rid"
+			+ " and cast(m.mid as integer) > :after order by cast(m.mid as integer)";
+
+	public static int fetchSize(Properties props) {
+		return Integer.parseInt(props.getProperty(COMMENT_FETCH_SIZE_PROPERTY, COMMENT_FETCH_SIZE_PROPERTY_DEFAULT));
+	}
+
+	/**
+	 * Adds the comments on resourceID with a mid above afterMid to the result, all of them if
+	 * afterMid is negative, at most pageSize of them if pageSize is positive.
+	 * A cacheable query is listed instead of scrolled, the query cache only caches lists.
+	 */
+	public static void fetch(SharedSessionContract session, EntityMapping mapping, int resourceID, int pageSize, int afterMid,
+			int fetchSize, boolean cacheable, Vector<HashMap<String, ByteIterator>> result) {
+		String hql;
+		if (mapping.intKeyed)
+			hql = afterMid < 0 ? INT_COMMENTS : INT_COMMENTS_AFTER;
+		else
+			hql = afterMid < 0 ? STRING_COMMENTS : STRING_COMMENTS_AFTER;
+		Query q = session.createQuery(hql)
+				.setParameter("rid", mapping.key(resourceID))
+				.setCacheable(cacheable);
+		if (afterMid >= 0)
+			q.setInteger("after", afterMid);
+		if (pageSize > 0)
+			q.setMaxResults(pageSize);
+		if (cacheable) {
+			List<?> rows = q.list();
+			for (int i = 0; i < rows.size(); i++)
+				add(mapping, rows.get(i), result);
+			return;
+		}
+		if (fetchSize > 0)
+			q.setFetchSize(fetchSize);
+		ScrollableResults rows = q.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (rows.next()) {
+				Object row = rows.get(0);
+				add(mapping, row, result);
+				if (session instanceof Session)
+					((Session) session).evict(row);
+			}
+		} finally {
+			rows.close();
+		}
+	}
+
+	private static void add(EntityMapping mapping, Object row, Vector<HashMap<String, ByteIterator>> result) {
+		HashMap<String, ByteIterator> values = new HashMap<String, ByteIterator>();
+		mapping.manipulationsAccessor.toResult(row, mapping.manipulationFields, true, values);
+		result.add(values);
+	}
+}
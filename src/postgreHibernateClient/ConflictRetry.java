@@ -0,0 +1,140 @@
+package postgreHibernateClient;
+
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.persistence.OptimisticLockException;
+
+import org.hibernate.JDBCException;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.LockAcquisitionException;
+
+import edu.usc.bg.measurements.MyMeasurement;
+
+/**
+ * Retries a write action that lost a conflict with a concurrent one instead of failing it:
+ * a deadlock (SQLSTATE 40P01, LockAcquisitionException), a serialization failure (40001)
+ * or a failed version check of countermode=versioned (StaleStateException). Other failures
+ * are not retried.
+ *
+ * Before the n-th retry the thread sleeps a random time between 0 and
+ * min(conflictmaxbackoff, conflictbackoff * 2^(n-1)) msec, so the threads that collided do
+ * not collide again in lock step. After conflictretries retries the action fails.
+ *
+ * Per action the CONFLICTS counters count the conflicts, the retries, the actions that failed
+ * after the last retry and the time from the first conflict to the end of the action.
+ *
+ * A writer starts one attempt sequence per action:
+ *
+ *   ConflictRetry.Attempts attempts = retry.start("ACCEPT");
+ *   while (true) {
+ *     try { ...; attempts.succeeded(); return 0; }
+ *     catch (Exception e) { rollback; if (attempts.retry(e)) continue; return -1; }
+ *   }
+ */
+public class ConflictRetry {
+
+	public static final String RETRIES_PROPERTY = "conflictretries";
+	public static final String RETRIES_PROPERTY_DEFAULT = "5";
+	//in msec
+	public static final String BACKOFF_PROPERTY = "conflictbackoff";
+	public static final String BACKOFF_PROPERTY_DEFAULT = "2";
+	public static final String MAX_BACKOFF_PROPERTY = "conflictmaxbackoff";
+	public static final String MAX_BACKOFF_PROPERTY_DEFAULT = "100";
+
+	private static final String SERIALIZATION_FAILURE = "40001";
+	private static final String DEADLOCK_DETECTED = "40P01";
+
+	private int retries;
+	private long backoff;
+	private long maxBackoff;
+	private Random random = new Random();
+
+	public ConflictRetry(Properties props) {
+		retries = Integer.parseInt(props.getProperty(RETRIES_PROPERTY, RETRIES_PROPERTY_DEFAULT));
+		backoff = Long.parseLong(props.getProperty(BACKOFF_PROPERTY, BACKOFF_PROPERTY_DEFAULT));
+		maxBackoff = Long.parseLong(props.getProperty(MAX_BACKOFF_PROPERTY, MAX_BACKOFF_PROPERTY_DEFAULT));
+	}
+
+	public Attempts start(String action) {
+		return new Attempts(action);
+	}
+
+	/**
+	 * The attempts of one action.
+	 */
+	public class Attempts {
+		private String action;
+		private int retried = 0;
+		//nanoTime of the first conflict, 0 without one
+		private long firstConflict = 0;
+
+		Attempts(String action) {
+			this.action = action;
+		}
+
+		/**
+		 * Returns true after the backoff if the failed attempt is to be repeated.
+		 */
+		public boolean retry(Exception e) {
+			if (!isConflict(e))
+				return false;
+			if (firstConflict == 0)
+				firstConflict = System.nanoTime();
+			MyMeasurement.incrementCounter("CONFLICTS." + action + ".conflicts", 1);
+			if (retried >= retries) {
+				MyMeasurement.incrementCounter("CONFLICTS." + action + ".exhausted", 1);
+				finished();
+				return false;
+			}
+			long cap = Math.min(maxBackoff, backoff << Math.min(retried, 30));
+			retried++;
+			MyMeasurement.incrementCounter("CONFLICTS." + action + ".retries", 1);
+			if (cap > 0) {
+				try {
+					Thread.sleep((long) (random.nextDouble() * cap));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					finished();
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public void succeeded() {
+			finished();
+		}
+
+		private void finished() {
+			if (firstConflict != 0) {
+				MyMeasurement.incrementCounter("CONFLICTS." + action + ".retrytime(us)", (System.nanoTime() - firstConflict) / 1000);
+				firstConflict = 0;
+			}
+		}
+	}
+
+	/**
+	 * True if the exception or one of its causes is a lost conflict.
+	 */
+	public static boolean isConflict(Throwable t) {
+		for (; t != null; t = t.getCause()) {
+			if (t instanceof LockAcquisitionException || t instanceof StaleStateException || t instanceof OptimisticLockException)
+				return true;
+			if (t instanceof JDBCException && isConflict(((JDBCException) t).getSQLState()))
+				return true;
+			if (t instanceof SQLException) {
+				//the state of a failed batch is on the next exception
+				for (SQLException s = (SQLException) t; s != null; s = s.getNextException())
+					if (isConflict(s.getSQLState()))
+						return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isConflict(String sqlState) {
+		return SERIALIZATION_FAILURE.equals(sqlState) || DEADLOCK_DETECTED.equals(sqlState);
+	}
+}
@@ -0,0 +1,242 @@
+package postgreHibernateClient;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.ObjectByteIterator;
+
+/**
+ * Precompiled getters and setters of an entity class.
+ *
+ * FactoryInsert builds a map of reflective Methods every time it is called, this class
+ * does the lookup once per class and keeps a MethodHandle per property, addressed by
+ * the ordinal of the property. Collection valued properties (the mapped associations)
+ * are left out so that copying an entity never initializes a lazy collection.
+ */
+public class EntityAccessor {
+
+	private static ConcurrentHashMap<Class<?>, EntityAccessor> accessors = new ConcurrentHashMap<Class<?>, EntityAccessor>();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final Class<?> entityClass;
+	private final String[] names;
+	private final Class<?>[] types;
+	private final MethodHandle[] getters;
+	private final MethodHandle[] setters;
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+
+	/**
+	 * Returns the accessor of the class, it is built on first use.
+	 */
+	public static EntityAccessor forClass(Class<?> entityClass) {
+		EntityAccessor a = accessors.get(entityClass);
+		if (a == null) {
+			a = new EntityAccessor(entityClass);
+			EntityAccessor prev = accessors.putIfAbsent(entityClass, a);
+			if (prev != null)
+				a = prev;
+		}
+		return a;
+	}
+
+	private EntityAccessor(Class<?> entityClass) {
+		this.entityClass = entityClass;
+		Map<String, Method> get = FactoryInsert.getGetterMethods(entityClass);
+		Map<String, Method> set = FactoryInsert.getSetterMethods(entityClass);
+		ArrayList<String> props = new ArrayList<String>();
+		for (String p : get.keySet()) {
+			if (set.containsKey(p) && !Collection.class.isAssignableFrom(get.get(p).getReturnType()))
+				props.add(p);
+		}
+		names = props.toArray(new String[props.size()]);
+		Arrays.sort(names);
+		types = new Class<?>[names.length];
+		getters = new MethodHandle[names.length];
+		setters = new MethodHandle[names.length];
+
+		//the lookup has package access which is what the protected accessors of the entities need
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			for (int i = 0; i < names.length; i++) {
+				Method g = get.get(names[i]);
+				Method s = set.get(names[i]);
+				types[i] = g.getReturnType();
+				getters[i] = lookup.unreflect(g).asType(GETTER_TYPE);
+				setters[i] = lookup.unreflect(s).asType(SETTER_TYPE);
+				ids.put(names[i], i);
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot access the properties of " + entityClass.getName(), e);
+		}
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String name(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Returns the ordinal of the property or -1 if the entity does not have it.
+	 */
+	public int id(String property) {
+		Integer i = ids.get(property);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Ordinals of all the properties except the given ones.
+	 */
+	public int[] idsExcept(String... excluded) {
+		int[] r = new int[names.length];
+		int n = 0;
+		for (int i = 0; i < names.length; i++) {
+			boolean skip = false;
+			for (String e : excluded)
+				if (e.equals(names[i]))
+					skip = true;
+			if (!skip)
+				r[n++] = i;
+		}
+		return Arrays.copyOf(r, n);
+	}
+
+	/**
+	 * Ordinals of the named properties, names the entity does not have are ignored.
+	 */
+	public int[] ids(Set<String> properties) {
+		int[] r = new int[properties.size()];
+		int n = 0;
+		for (String p : properties) {
+			int i = id(p);
+			if (i >= 0)
+				r[n++] = i;
+		}
+		return n == r.length ? r : Arrays.copyOf(r, n);
+	}
+
+	public Object get(Object entity, int id) {
+		try {
+			return (Object) getters[id].invokeExact(entity);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Cannot read " + names[id] + " of " + entityClass.getName(), t);
+		}
+	}
+
+	/**
+	 * Sets the property, Strings, numbers and ByteIterators are converted to the
+	 * type of the property.
+	 */
+	public void set(Object entity, int id, Object value) {
+		try {
+			setters[id].invokeExact(entity, convert(value, types[id]));
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Cannot write " + names[id] + " of " + entityClass.getName(), t);
+		}
+	}
+
+	public void set(Object entity, String property, Object value) {
+		int i = id(property);
+		if (i < 0)
+			throw new IllegalArgumentException(entityClass.getSimpleName() + " has no property " + property);
+		set(entity, i, value);
+	}
+
+	private static Object convert(Object value, Class<?> type) {
+		if (value == null)
+			return null;
+		if (type == byte[].class) {
+			if (value instanceof ByteIterator)
+				return ((ByteIterator) value).toArray();
+			if (value instanceof String)
+				return ((String) value).getBytes();
+			return value;
+		}
+		if (type == String.class)
+			return value instanceof String ? value : value.toString();
+		if (type == short.class || type == Short.class) {
+			if (value instanceof Short)
+				return value;
+			if (value instanceof Number)
+				return ((Number) value).shortValue();
+			return Short.parseShort(value.toString().trim());
+		}
+		if (type == int.class || type == Integer.class) {
+			if (value instanceof Integer)
+				return value;
+			if (value instanceof Number)
+				return ((Number) value).intValue();
+			return Integer.parseInt(value.toString().trim());
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the value of the property as the bytes BG expects, byte arrays are returned as is.
+	 */
+	public static byte[] toBytes(Object value) {
+		if (value instanceof byte[])
+			return (byte[]) value;
+		if (value instanceof String)
+			return ((String) value).getBytes();
+		return value.toString().getBytes();
+	}
+
+	/**
+	 * Copies the given properties of the entity into a BG result map, null properties are skipped
+	 * and so are pic and tpic unless insertImage is set.
+	 */
+	public void toResult(Object entity, int[] properties, boolean insertImage, Map<String, ByteIterator> result) {
+		for (int i = 0; i < properties.length; i++) {
+			int id = properties[i];
+			if (!insertImage && types[id] == byte[].class)
+				continue;
+			Object v = get(entity, id);
+			if (v != null)
+				result.put(names[id], new ObjectByteIterator(toBytes(v)));
+		}
+	}
+
+	public Object newInstance() {
+		try {
+			return entityClass.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot create " + entityClass.getName(), e);
+		}
+	}
+
+	/**
+	 * Creates an entity from a BG value map, keys that are not properties of the entity are ignored.
+	 */
+	public Object fromValues(Map<String, ByteIterator> values) {
+		Object entity = newInstance();
+		for (Map.Entry<String, ByteIterator> e : values.entrySet()) {
+			int id = id(e.getKey());
+			if (id >= 0)
+				set(entity, id, e.getValue());
+		}
+		return entity;
+	}
+}
@@ -0,0 +1,126 @@
+package postgreHibernateClient;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.ObjectByteIterator;
+
+/**
+ * Compares the reflective FactoryInsert path the clients used to take with EntityAccessor,
+ * for copying a USERS entity into a profile result and for building one from load values.
+ * It does not need a database.
+ *
+ * usage: EntityAccessorBenchmark [iterations]
+ */
+public class EntityAccessorBenchmark {
+
+	static USERS sampleUser() {
+		USERS u = new USERS();
+		u.setUserid("12");
+		u.setUsername("username12");
+		u.setPw("pwd12");
+		u.setFname("fname12");
+		u.setLname("lname12");
+		u.setGender("female");
+		u.setDob("12/12/1980");
+		u.setJdate("1/1/2013");
+		u.setLdate("2/2/2013");
+		u.setAddress("3651 Trousdale Pkwy, Los Angeles");
+		u.setEmail("user12@usc.edu");
+		u.setTel("213-740-0000");
+		return u;
+	}
+
+	static HashMap<String, ByteIterator> sampleValues() {
+		HashMap<String, ByteIterator> values = new HashMap<String, ByteIterator>();
+		String[] fields = {"userid", "username", "pw", "fname", "lname", "gender", "dob", "jdate", "ldate", "address", "email", "tel"};
+		for (String f : fields)
+			values.put(f, new ObjectByteIterator((f + "12").getBytes()));
+		return values;
+	}
+
+	//what viewProfile did before
+	static int reflectiveProfile(USERS u) throws Exception {
+		HashMap<String, ByteIterator> result = new HashMap<String, ByteIterator>();
+		Map<String, Method> methods = FactoryInsert.getGetterMethods(USERS.class);
+		Set<String> keys = methods.keySet();
+		keys.remove("confFriendCnt");
+		keys.remove("pendFriendCnt");
+		keys.remove("resCnt");
+		keys.remove("friend1");
+		Iterator<String> it = keys.iterator();
+		while (it.hasNext()) {
+			String key = it.next();
+			if (key.equalsIgnoreCase("pic") || key.equalsIgnoreCase("tpic"))
+				continue;
+			Object r = methods.get(key).invoke(u);
+			if (r != null)
+				result.put(key, new ObjectByteIterator(r.toString().getBytes()));
+		}
+		return result.size();
+	}
+
+	static int accessorProfile(USERS u, EntityAccessor a, int[] fields) {
+		HashMap<String, ByteIterator> result = new HashMap<String, ByteIterator>();
+		a.toResult(u, fields, false, result);
+		return result.size();
+	}
+
+	//what insertEntity did before
+	static Object reflectiveInsert(HashMap<String, ByteIterator> values) throws Exception {
+		Map<String, Method> methods = FactoryInsert.getSetterMethods(USERS.class);
+		Object u = USERS.class.getConstructor().newInstance();
+		for (Map.Entry<String, ByteIterator> e : values.entrySet()) {
+			((ObjectByteIterator) e.getValue()).resetOffset();
+			methods.get(e.getKey()).invoke(u, e.getValue().toString());
+		}
+		return u;
+	}
+
+	static Object accessorInsert(HashMap<String, ByteIterator> values, EntityAccessor a) {
+		for (ByteIterator v : values.values())
+			((ObjectByteIterator) v).resetOffset();
+		return a.fromValues(values);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		USERS u = sampleUser();
+		HashMap<String, ByteIterator> values = sampleValues();
+		EntityAccessor a = EntityAccessor.forClass(USERS.class);
+		int[] fields = a.idsExcept("confFriendCnt", "pendFriendCnt", "resCnt");
+
+		long sink = 0;
+		//two rounds, the first one is the warm up
+		for (int round = 0; round < 2; round++) {
+			long st = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				sink += reflectiveProfile(u);
+			long reflectProfile = System.nanoTime() - st;
+
+			st = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				sink += accessorProfile(u, a, fields);
+			long accessProfile = System.nanoTime() - st;
+
+			st = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				sink += reflectiveInsert(values).hashCode() & 1;
+			long reflectInsert = System.nanoTime() - st;
+
+			st = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				sink += accessorInsert(values, a).hashCode() & 1;
+			long accessInsert = System.nanoTime() - st;
+
+			System.out.println((round == 0 ? "warmup" : "measured") + " round, " + iterations + " iterations");
+			System.out.println("  profile to result: reflection " + (reflectProfile / iterations) + " ns/op, accessor " + (accessProfile / iterations) + " ns/op");
+			System.out.println("  values to entity:  reflection " + (reflectInsert / iterations) + " ns/op, accessor " + (accessInsert / iterations) + " ns/op");
+		}
+		System.out.println("(" + sink + ")");
+	}
+}
@@ -0,0 +1,159 @@
+package postgreHibernateClient;
+
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * The entity classes a client works with and the Java type of their keys.
+ *
+ * keytype=string (default) maps the BG entities with varchar keys, the classes of this package.
+ * keytype=int maps them with int4 keys and a smallint friendship status, the classes of the
+ * intkeys package, and the SessionFactory is built from hibernate-intkeys.cfg.xml. Both sets
+ * use the same entity and property names so HQL and criteria queries are shared, the clients
+ * only have to bind keys and status values through key() and status().
+ *
+ * countermode=inplace (default) changes the member counters with in place UPDATEs, see
+ * FriendshipUpdates. countermode=versioned also maps USERCOUNTERS, the counters of USERS with
+ * a @Version column, and the counters are changed through it with optimistic locking.
+ */
+public class EntityMapping {
+
+	public static final String KEY_TYPE_PROPERTY = "keytype";
+	public static final String KEY_TYPE_PROPERTY_DEFAULT = "string";
+	public static final String INT_KEYS_CONFIG_FILE = "hibernate-intkeys.cfg.xml";
+	public static final String COUNTER_MODE_PROPERTY = "countermode";
+	public static final String COUNTER_MODE_PROPERTY_DEFAULT = "inplace";
+
+	private static HashMap<String, EntityMapping> mappings = new HashMap<String, EntityMapping>();
+
+	public final boolean intKeyed;
+	public final boolean versioned;
+	public final Class<?> users;
+	public final Class<?> resources;
+	public final Class<?> manipulations;
+	public final Class<?> friendship;
+	//null unless versioned
+	public final Class<?> userCounters;
+	public final EntityAccessor usersAccessor;
+	public final EntityAccessor resourcesAccessor;
+	public final EntityAccessor manipulationsAccessor;
+	public final EntityAccessor friendshipAccessor;
+	public final EntityAccessor userCountersAccessor;
+	//profile attributes, the counters are returned separately
+	public final int[] profileFields;
+	public final int[] resourceFields;
+	public final int[] manipulationFields;
+	private final int confFriendCnt;
+	private final int pendFriendCnt;
+	private final int resCnt;
+	private final int inviterid;
+	private final int inviteeid;
+
+	public static synchronized EntityMapping get(Properties props) {
+		boolean intKeyed = isIntKeyed(props);
+		boolean versioned = isVersioned(props);
+		String key = (intKeyed ? "int" : "string") + (versioned ? "versioned" : "");
+		EntityMapping m = mappings.get(key);
+		if (m == null) {
+			m = new EntityMapping(intKeyed, versioned);
+			mappings.put(key, m);
+		}
+		return m;
+	}
+
+	public static boolean isIntKeyed(Properties props) {
+		return props.getProperty(KEY_TYPE_PROPERTY, KEY_TYPE_PROPERTY_DEFAULT).equalsIgnoreCase("int");
+	}
+
+	public static boolean isVersioned(Properties props) {
+		return props.getProperty(COUNTER_MODE_PROPERTY, COUNTER_MODE_PROPERTY_DEFAULT).equalsIgnoreCase("versioned");
+	}
+
+	private EntityMapping(boolean intKeyed, boolean versioned) {
+		this.intKeyed = intKeyed;
+		this.versioned = versioned;
+		Class<?> counters;
+		if (intKeyed) {
+			users = postgreHibernateClient.intkeys.USERS.class;
+			resources = postgreHibernateClient.intkeys.RESOURCES.class;
+			manipulations = postgreHibernateClient.intkeys.MANIPULATIONS.class;
+			friendship = postgreHibernateClient.intkeys.Friendship.class;
+			counters = postgreHibernateClient.intkeys.USERCOUNTERS.class;
+		} else {
+			users = USERS.class;
+			resources = RESOURCES.class;
+			manipulations = MANIPULATIONS.class;
+			friendship = Friendship.class;
+			counters = USERCOUNTERS.class;
+		}
+		userCounters = versioned ? counters : null;
+		userCountersAccessor = versioned ? EntityAccessor.forClass(counters) : null;
+		usersAccessor = EntityAccessor.forClass(users);
+		resourcesAccessor = EntityAccessor.forClass(resources);
+		manipulationsAccessor = EntityAccessor.forClass(manipulations);
+		friendshipAccessor = EntityAccessor.forClass(friendship);
+		profileFields = usersAccessor.idsExcept("confFriendCnt", "pendFriendCnt", "resCnt");
+		resourceFields = resourcesAccessor.idsExcept();
+		manipulationFields = manipulationsAccessor.idsExcept();
+		confFriendCnt = usersAccessor.id("confFriendCnt");
+		pendFriendCnt = usersAccessor.id("pendFriendCnt");
+		resCnt = usersAccessor.id("resCnt");
+		inviterid = friendshipAccessor.id("inviterid");
+		inviteeid = friendshipAccessor.id("inviteeid");
+	}
+
+	/**
+	 * Returns the accessor of a BG entity set, users or resources.
+	 */
+	public EntityAccessor accessor(String entitySet) {
+		if (entitySet.equalsIgnoreCase("users"))
+			return usersAccessor;
+		if (entitySet.equalsIgnoreCase("resources"))
+			return resourcesAccessor;
+		if (entitySet.equalsIgnoreCase("manipulations"))
+			return manipulationsAccessor;
+		throw new IllegalArgumentException("Unknown entity set " + entitySet);
+	}
+
+	/**
+	 * The key value to bind for a BG id.
+	 */
+	public Object key(int id) {
+		return intKeyed ? (Object) Integer.valueOf(id) : Integer.toString(id);
+	}
+
+	public Object key(String id) {
+		return intKeyed ? (Object) Integer.valueOf(id.trim()) : id;
+	}
+
+	/**
+	 * The friendship status value to bind, 1 pending and 2 confirmed.
+	 */
+	public Object status(int value) {
+		return intKeyed ? (Object) Short.valueOf((short) value) : Integer.toString(value);
+	}
+
+	public int toInt(Object key) {
+		return key instanceof Number ? ((Number) key).intValue() : Integer.parseInt(key.toString().trim());
+	}
+
+	public int confFriendCount(Object user) {
+		return toInt(usersAccessor.get(user, confFriendCnt));
+	}
+
+	public int pendFriendCount(Object user) {
+		return toInt(usersAccessor.get(user, pendFriendCnt));
+	}
+
+	public int resourceCount(Object user) {
+		return toInt(usersAccessor.get(user, resCnt));
+	}
+
+	public int inviter(Object friendship) {
+		return toInt(friendshipAccessor.get(friendship, inviterid));
+	}
+
+	public int invitee(Object friendship) {
+		return toInt(friendshipAccessor.get(friendship, inviteeid));
+	}
+}
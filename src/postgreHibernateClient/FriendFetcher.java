@@ -0,0 +1,193 @@
+package postgreHibernateClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.hibernate.Query;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+
+/**
+ * Loads the profiles of the friends or of the pending inviters of a member with a
+ * bounded number of statements instead of one session.get per friendship row.
+ *
+ * join:  one statement joining Friendship with USERS on the other side of the edge.
+ * batch: one statement for the friendship rows and then the profiles in IN lists
+ *        of friendfetchbatchsize ids.
+ *
+ * With a partitioned schema (see SchemaBuilder) the confirmed edges are read with one statement
+ * per side of the edge instead of an OR of both, the invitee side is pruned to one partition.
+ *
+ * With the query cache the edges are read with a native statement synchronized on the query
+ * spaces of the member in FriendshipUpdates, so a friendship change only invalidates the cached
+ * edges of its two members instead of every cached query over Friendship. The profiles are then
+ * always read in batches, a join would be synchronized on the whole Friendship table.
+ */
+public class FriendFetcher {
+
+	public static final String FRIEND_FETCH_PROPERTY = "friendfetch";
+	public static final String FRIEND_FETCH_PROPERTY_DEFAULT = "join";
+	public static final String FRIEND_FETCH_BATCH_SIZE_PROPERTY = "friendfetchbatchsize";
+	public static final String FRIEND_FETCH_BATCH_SIZE_PROPERTY_DEFAULT = "100";
+
+	//a friendship is a single row, the friend is whichever side is not the member.
+	//the status is a literal so that the partial indexes of the tuned schema can be used
+	private static final String CONFIRMED_JOIN = " from USERS u, Friendship f where f.value = '2'"
+			+ " and (f.inviterid = :id or f.inviteeid = :id)"
+			+ " and (u.userid = f.inviterid or u.userid = f.inviteeid) and u.userid <> :id";
+	private static final String PENDING_JOIN = " from USERS u, Friendship f where f.value = '1'"
+			+ " and f.inviteeid = :id and u.userid = f.inviterid";
+	private static final String CONFIRMED_EDGES = "from Friendship f where f.value = '2' and (f.inviterid = :id or f.inviteeid = :id)";
+	//the sides of the confirmed edges for the partitioned schema, each read from the table partitioned on its
+	//side, see SchemaBuilder. FRIENDSHIP_BY_INVITER is not mapped, the edges are read with SQL
+	private static final String[] CONFIRMED_EDGES_SIDES = {
+		"from Friendship f where f.value = '2' and f.inviteeid = :id",
+		"from FRIENDSHIP_BY_INVITER f where f.inviterid = :id" };
+	private static final String PENDING_EDGES = "from Friendship f where f.value = '1' and f.inviteeid = :id";
+	private static final String USERS_IN = " from USERS u where u.userid in (:ids)";
+
+	private EntityMapping mapping;
+	private boolean batch;
+	private int batchSize;
+	private boolean cacheable;
+	private boolean sqlEdges;
+	private String[] confirmedEdges;
+
+	public FriendFetcher(Properties props, EntityMapping mapping, boolean cacheable) {
+		this.mapping = mapping;
+		boolean partitioned = SchemaBuilder.isPartitioned(props);
+		//the partitioned schema reads the edges then the members, a join would need FRIENDSHIP_BY_INVITER mapped
+		batch = cacheable || partitioned || props.getProperty(FRIEND_FETCH_PROPERTY, FRIEND_FETCH_PROPERTY_DEFAULT).equalsIgnoreCase("batch");
+		batchSize = Integer.parseInt(props.getProperty(FRIEND_FETCH_BATCH_SIZE_PROPERTY, FRIEND_FETCH_BATCH_SIZE_PROPERTY_DEFAULT));
+		if (batchSize < 1)
+			batchSize = 1;
+		this.cacheable = cacheable;
+		sqlEdges = cacheable || partitioned;
+		confirmedEdges = partitioned ? CONFIRMED_EDGES_SIDES : new String[] { CONFIRMED_EDGES };
+	}
+
+	/**
+	 * Profiles of the confirmed friends of the member.
+	 */
+	public List<?> confirmedFriends(SharedSessionContract session, int memberID) {
+		return fetch(session, memberID, "u", new String[] { CONFIRMED_JOIN }, confirmedEdges);
+	}
+
+	/**
+	 * The given select list of USERS u for each confirmed friend of the member, see ProfileProjection.
+	 */
+	public List<?> confirmedFriends(SharedSessionContract session, int memberID, String select) {
+		return fetch(session, memberID, select, new String[] { CONFIRMED_JOIN }, confirmedEdges);
+	}
+
+	/**
+	 * Profiles of the members with a pending invitation to the member.
+	 */
+	public List<?> pendingInviters(SharedSessionContract session, int memberID) {
+		return fetch(session, memberID, "u", new String[] { PENDING_JOIN }, new String[] { PENDING_EDGES });
+	}
+
+	/**
+	 * The given select list of USERS u for each member with a pending invitation to the member.
+	 */
+	public List<?> pendingInviters(SharedSessionContract session, int memberID, String select) {
+		return fetch(session, memberID, select, new String[] { PENDING_JOIN }, new String[] { PENDING_EDGES });
+	}
+
+	/**
+	 * Ids of the confirmed friends of the member.
+	 */
+	public Vector<Integer> confirmedFriendIds(SharedSessionContract session, int memberID) {
+		return otherSides(edges(session, memberID, confirmedEdges), memberID);
+	}
+
+	/**
+	 * Ids of the members with a pending invitation to the member.
+	 */
+	public Vector<Integer> pendingInviterIds(SharedSessionContract session, int memberID) {
+		return otherSides(edges(session, memberID, new String[] { PENDING_EDGES }), memberID);
+	}
+
+	private List<?> fetch(SharedSessionContract session, int memberID, String select, String[] joins, String[] edges) {
+		if (!batch) {
+			ArrayList<Object> users = new ArrayList<Object>();
+			for (int i = 0; i < joins.length; i++) {
+				@SuppressWarnings("unchecked")
+				List<Object> rows = session.createQuery("select " + select + joins[i])
+						.setParameter("id", mapping.key(memberID))
+						.setCacheable(cacheable)
+						.list();
+				users.addAll(rows);
+			}
+			return users;
+		}
+
+		Vector<Integer> ids = otherSides(edges(session, memberID, edges), memberID);
+		ArrayList<Object> keys = new ArrayList<Object>(ids.size());
+		for (int i = 0; i < ids.size(); i++)
+			keys.add(mapping.key(ids.get(i)));
+
+		ArrayList<Object> users = new ArrayList<Object>(keys.size());
+		for (int i = 0; i < keys.size(); i += batchSize) {
+			Query q = session.createQuery("select " + select + USERS_IN)
+					.setParameterList("ids", keys.subList(i, Math.min(i + batchSize, keys.size())))
+					.setCacheable(cacheable);
+			@SuppressWarnings("unchecked")
+			List<Object> rows = q.list();
+			users.addAll(rows);
+		}
+		return users;
+	}
+
+	private List<?> edges(SharedSessionContract session, int memberID, String[] edges) {
+		ArrayList<Object> rows = new ArrayList<Object>();
+		if (sqlEdges)
+			return sqlEdges(session, memberID, edges, rows);
+		for (int i = 0; i < edges.length; i++) {
+			@SuppressWarnings("unchecked")
+			List<Object> found = session.createQuery(edges[i])
+					.setParameter("id", mapping.key(memberID))
+					.setCacheable(cacheable)
+					.list();
+			rows.addAll(found);
+		}
+		return rows;
+	}
+
+	//the inviter and invitee of the edges, the properties of Friendship are its columns
+	private List<?> sqlEdges(SharedSessionContract session, int memberID, String[] edges, ArrayList<Object> rows) {
+		Type key = mapping.intKeyed ? StandardBasicTypes.INTEGER : StandardBasicTypes.STRING;
+		for (int i = 0; i < edges.length; i++) {
+			@SuppressWarnings("unchecked")
+			List<Object> found = session.createSQLQuery("select f.inviterid, f.inviteeid " + edges[i])
+					.addScalar("inviterid", key)
+					.addScalar("inviteeid", key)
+					.addSynchronizedQuerySpace(FriendshipUpdates.edgeSpace(memberID))
+					.setParameter("id", mapping.key(memberID))
+					.setCacheable(cacheable)
+					.list();
+			rows.addAll(found);
+		}
+		return rows;
+	}
+
+	//a friendship is a single row, the friend is whichever side is not the member
+	private Vector<Integer> otherSides(List<?> rows, int memberID) {
+		Vector<Integer> ids = new Vector<Integer>(rows.size());
+		for (Object f : rows) {
+			int inviter, invitee;
+			if (f instanceof Object[]) {
+				inviter = mapping.toInt(((Object[]) f)[0]);
+				invitee = mapping.toInt(((Object[]) f)[1]);
+			} else {
+				inviter = mapping.inviter(f);
+				invitee = mapping.invitee(f);
+			}
+			ids.add(inviter == memberID ? invitee : inviter);
+		}
+		return ids;
+	}
+}
@@ -9,9 +9,9 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Index;
 
 @Entity
-/*@Cacheable
-@Cache(usage=CacheConcurrencyStrategy.TRANSACTIONAL)
-*/@Table(name="Friendship")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="Friendship")
+@Table(name="Friendship")
 public class Friendship implements Serializable{
 
 	
@@ -0,0 +1,269 @@
+package postgreHibernateClient;
+
+import java.io.Serializable;
+
+import javax.transaction.Synchronization;
+
+import org.hibernate.Cache;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Friendship changes and the member counters that go with them as single DML statements.
+ *
+ * The counters are changed in place with UPDATE ... SET cnt = cnt + d instead of loading the
+ * USERS entity, changing it in Java and saving the whole row back, which moved the images of
+ * both members and lost updates when two threads changed the same member. The Friendship rows
+ * are inserted, updated and deleted directly, and the counters only change when a row did.
+ *
+ * The counter updates are native statements synchronized on the USERS_COUNTERS query space
+ * instead of HQL bulk updates, which made Hibernate drop the whole USERS region of the second
+ * level cache on every counter change. The changed members are evicted one by one instead.
+ * Cached query results are not affected, no query of the clients selects on a counter.
+ *
+ * The Friendship statements are synchronized on a query space per member, see edgeSpace, instead
+ * of the Friendship entity, which dropped the whole Friendship region, the friendship collections
+ * of all members and every cached query over Friendship on each change. Only the changed rows, the
+ * collections of the two members and the cached edges of the two members (see FriendFetcher) are
+ * invalidated.
+ *
+ * With countermode=versioned the counters are changed through the USERCOUNTERS entity
+ * instead, Hibernate writes it back with a version check and a concurrent change of the
+ * same member fails with a StaleObjectStateException, see ConflictRetry.
+ *
+ * All methods run in the transaction of the session.
+ */
+public class FriendshipUpdates {
+
+	private static final String COUNTERS_SPACE = "USERS_COUNTERS";
+	private static final String EDGES_SPACE = "FRIENDSHIP_EDGES#";
+	private static final String PENDING = "pendFriendCnt";
+	private static final String CONFIRMED = "confFriendCnt";
+	private static final String RESOURCES = "resCnt";
+	private static final String ADD_PENDING = "UPDATE USERS SET pendFriendCnt = pendFriendCnt + :d WHERE userid = :id";
+	private static final String ADD_CONFIRMED = "UPDATE USERS SET confFriendCnt = confFriendCnt + :d WHERE userid = :id";
+	private static final String PENDING_TO_CONFIRMED = "UPDATE USERS SET pendFriendCnt = pendFriendCnt - 1,"
+			+ " confFriendCnt = confFriendCnt + 1 WHERE userid = :id";
+	private static final String ADD_RESOURCES = "UPDATE USERS SET resCnt = resCnt + :d WHERE userid = :id";
+
+	private static final String INSERT = "INSERT INTO Friendship (value, inviterid, inviteeid) VALUES (:v, :inviter, :invitee)";
+	private static final String CONFIRM = "UPDATE Friendship SET value = '2' WHERE inviterid = :inviter AND inviteeid = :invitee AND value = '1'";
+	private static final String DELETE_PENDING = "DELETE FROM Friendship WHERE inviterid = :inviter AND inviteeid = :invitee AND value = '1'";
+	private static final String DELETE_CONFIRMED = "DELETE FROM Friendship WHERE value = '2'"
+			+ " AND ((inviterid = :a AND inviteeid = :b) OR (inviterid = :b AND inviteeid = :a))";
+
+	/**
+	 * The query space of the friendships of a member, a cached query of its edges is synchronized on it.
+	 */
+	static String edgeSpace(int memberID) {
+		return EDGES_SPACE + memberID;
+	}
+
+	public static void invite(Session session, EntityMapping mapping, int inviterID, int inviteeID) {
+		insert(session, mapping, 1, inviterID, inviteeID);
+		addCounter(session, mapping, ADD_PENDING, PENDING, inviteeID, 1);
+	}
+
+	public static void create(Session session, EntityMapping mapping, int memberA, int memberB) {
+		insert(session, mapping, 2, memberA, memberB);
+		addCounter(session, mapping, ADD_CONFIRMED, CONFIRMED, memberA, 1);
+		addCounter(session, mapping, ADD_CONFIRMED, CONFIRMED, memberB, 1);
+	}
+
+	/**
+	 * Returns the number of pending invitations that were confirmed, 0 or 1.
+	 */
+	public static int accept(Session session, EntityMapping mapping, int inviterID, int inviteeID) {
+		int n = friendshipDML(session, mapping, CONFIRM, inviterID, inviteeID)
+				.setParameter("inviter", mapping.key(inviterID))
+				.setParameter("invitee", mapping.key(inviteeID))
+				.executeUpdate();
+		if (n > 0) {
+			evictEdge(session, mapping, inviterID, inviteeID);
+			if (mapping.versioned)
+				changeVersioned(session, mapping, mapping.key(inviteeID), new String[] { PENDING, CONFIRMED }, new int[] { -1, 1 });
+			else
+				countersDML(session, PENDING_TO_CONFIRMED).setParameter("id", mapping.key(inviteeID)).executeUpdate();
+			evictUser(session, mapping, mapping.key(inviteeID));
+			addCounter(session, mapping, ADD_CONFIRMED, CONFIRMED, inviterID, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the number of pending invitations that were removed, 0 or 1.
+	 */
+	public static int reject(Session session, EntityMapping mapping, int inviterID, int inviteeID) {
+		int n = friendshipDML(session, mapping, DELETE_PENDING, inviterID, inviteeID)
+				.setParameter("inviter", mapping.key(inviterID))
+				.setParameter("invitee", mapping.key(inviteeID))
+				.executeUpdate();
+		if (n > 0) {
+			evictEdge(session, mapping, inviterID, inviteeID);
+			addCounter(session, mapping, ADD_PENDING, PENDING, inviteeID, -n);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the number of friendships that were removed.
+	 */
+	public static int thaw(Session session, EntityMapping mapping, int friendid1, int friendid2) {
+		int n = friendshipDML(session, mapping, DELETE_CONFIRMED, friendid1, friendid2)
+				.setParameter("a", mapping.key(friendid1))
+				.setParameter("b", mapping.key(friendid2))
+				.executeUpdate();
+		if (n > 0) {
+			evictEdge(session, mapping, friendid1, friendid2);
+			evictEdge(session, mapping, friendid2, friendid1);
+			addCounter(session, mapping, ADD_CONFIRMED, CONFIRMED, friendid1, -n);
+			addCounter(session, mapping, ADD_CONFIRMED, CONFIRMED, friendid2, -n);
+		}
+		return n;
+	}
+
+	public static void addResources(Session session, EntityMapping mapping, String creatorID, int delta) {
+		addCounter(session, mapping, ADD_RESOURCES, RESOURCES, mapping.key(creatorID), delta);
+	}
+
+	private static void insert(Session session, EntityMapping mapping, int value, int inviterID, int inviteeID) {
+		friendshipDML(session, mapping, INSERT, inviterID, inviteeID)
+				.setParameter("v", mapping.status(value))
+				.setParameter("inviter", mapping.key(inviterID))
+				.setParameter("invitee", mapping.key(inviteeID))
+				.executeUpdate();
+		evictEdge(session, mapping, inviterID, inviteeID);
+	}
+
+	//only the edges of the two members are affected, no entity or collection region is dropped
+	private static SQLQuery friendshipDML(Session session, EntityMapping mapping, String sql, int memberA, int memberB) {
+		return session.createSQLQuery(sql)
+				.addSynchronizedQuerySpace(edgeSpace(memberA))
+				.addSynchronizedQuerySpace(edgeSpace(memberB));
+	}
+
+	private static SQLQuery countersDML(Session session, String sql) {
+		return session.createSQLQuery(sql).addSynchronizedQuerySpace(COUNTERS_SPACE);
+	}
+
+	private static void addCounter(Session session, EntityMapping mapping, String sql, String counter, int userid, int delta) {
+		addCounter(session, mapping, sql, counter, mapping.key(userid), delta);
+	}
+
+	private static void addCounter(Session session, EntityMapping mapping, String sql, String counter, Object key, int delta) {
+		if (mapping.versioned)
+			changeVersioned(session, mapping, key, new String[] { counter }, new int[] { delta });
+		else
+			countersDML(session, sql).setInteger("d", delta).setParameter("id", key).executeUpdate();
+		evictUser(session, mapping, key);
+	}
+
+	/**
+	 * Loads the USERCOUNTERS of the member, changes the counters and writes them back with the
+	 * version check right away. It is then dropped from the session, a long lived session must
+	 * not hand out its version to a later transaction.
+	 */
+	private static void changeVersioned(Session session, EntityMapping mapping, Object key, String[] counters, int[] deltas) {
+		Object c = session.get(mapping.userCounters, (Serializable) key);
+		if (c == null)
+			return;
+		EntityAccessor a = mapping.userCountersAccessor;
+		for (int i = 0; i < counters.length; i++) {
+			int id = a.id(counters[i]);
+			a.set(c, id, mapping.toInt(a.get(c, id)) + deltas[i]);
+		}
+		session.flush();
+		session.evict(c);
+	}
+
+	/**
+	 * Evicts the row of the friendship from inviterID to inviteeID, pending or confirmed, and the
+	 * friendship collections of the two members from the second level cache, now and once more
+	 * after the transaction completed, see evictUser.
+	 */
+	private static void evictEdge(Session session, EntityMapping mapping, int inviterID, int inviteeID) {
+		SessionImplementor si = (SessionImplementor) session;
+		if (!si.getFactory().getEntityPersister(mapping.friendship.getName()).hasCache())
+			return;
+		EdgeEviction e = new EdgeEviction(session.getSessionFactory().getCache(), mapping, inviterID, inviteeID);
+		//the int key entities have no friendship collections
+		e.collections = si.getFactory().getCollectionMetadata(e.roles[0]) != null;
+		e.evict();
+		session.getTransaction().registerSynchronization(e);
+	}
+
+	static class EdgeEviction implements Synchronization {
+		Cache cache;
+		Class<?> friendship;
+		Object[] rows;
+		String[] roles;
+		Object[] owners;
+		boolean collections;
+
+		EdgeEviction(Cache cache, EntityMapping mapping, int inviterID, int inviteeID) {
+			this.cache = cache;
+			friendship = mapping.friendship;
+			rows = new Object[] { edge(mapping, 1, inviterID, inviteeID), edge(mapping, 2, inviterID, inviteeID) };
+			roles = new String[] { mapping.users.getName() + ".friend1", mapping.users.getName() + ".friend2" };
+			owners = new Object[] { mapping.key(inviterID), mapping.key(inviteeID) };
+		}
+
+		void evict() {
+			for (int i = 0; i < rows.length; i++)
+				cache.evictEntity(friendship, (Serializable) rows[i]);
+			if (!collections)
+				return;
+			for (int i = 0; i < roles.length; i++)
+				cache.evictCollection(roles[i], (Serializable) owners[i]);
+		}
+
+		@Override
+		public void beforeCompletion() {
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			evict();
+		}
+	}
+
+	//the composite id of a Friendship row, the entity itself
+	private static Object edge(EntityMapping mapping, int value, int inviterID, int inviteeID) {
+		EntityAccessor a = mapping.friendshipAccessor;
+		Object f = a.newInstance();
+		a.set(f, "value", mapping.status(value));
+		a.set(f, "inviterid", mapping.key(inviterID));
+		a.set(f, "inviteeid", mapping.key(inviteeID));
+		return f;
+	}
+
+	/**
+	 * The updates do not touch the persistence context, a member already loaded into a
+	 * long lived session is dropped from it so that the next read sees the new counters.
+	 * The member is also evicted from the second level cache, once more after the transaction
+	 * completed in case another session put the old row back in the meantime.
+	 */
+	private static void evictUser(Session session, final EntityMapping mapping, final Object userid) {
+		SessionImplementor si = (SessionImplementor) session;
+		EntityPersister persister = si.getFactory().getEntityPersister(mapping.users.getName());
+		Object u = si.getPersistenceContext().getEntity(si.generateEntityKey((Serializable) userid, persister));
+		if (u != null)
+			session.evict(u);
+		if (!persister.hasCache())
+			return;
+		final Cache cache = session.getSessionFactory().getCache();
+		cache.evictEntity(mapping.users, (Serializable) userid);
+		session.getTransaction().registerSynchronization(new Synchronization() {
+			@Override
+			public void beforeCompletion() {
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				cache.evictEntity(mapping.users, (Serializable) userid);
+			}
+		});
+	}
+}
@@ -0,0 +1,28 @@
+package postgreHibernateClient;
+
+import java.util.Properties;
+
+/**
+ * The default ShardRouter, the shard of a member is a hash of its userid modulo the number
+ * of shards. The hash spreads the consecutive ids BG generates, so the members of a BG client
+ * that works on an id range do not all land on one shard.
+ */
+public class HashShardRouter implements ShardRouter {
+
+	private int shards;
+
+	public void init(Properties props, int shards) {
+		this.shards = shards;
+	}
+
+	public int shard(int memberID) {
+		//the finalizer of MurmurHash3
+		int h = memberID;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return (h & 0x7fffffff) % shards;
+	}
+}
@@ -0,0 +1,162 @@
+package postgreHibernateClient;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+
+/**
+ * The stats of getInitialStats without scanning USERS.
+ *
+ * The exact stats count USERS and read the counters of the member with the smallest userid,
+ * a full scan that takes minutes on a large database, and BG asks for them before every run.
+ * finalizeLoad computes them once at the end of the load and keeps them in BG_METADATA, with
+ * statsmode=catalog (the default) getInitialStats reads them from there. BG does not add or
+ * remove members after the load, so the user count stays valid; it is checked against the
+ * row estimate of USERS in pg_class.reltuples, a large difference means the table was loaded
+ * without finalizeLoad. Without BG_METADATA, e.g. on a database loaded before it existed, and
+ * with statsmode=exact the clients compute the exact stats.
+ */
+public class InitialStats {
+
+	public static final String STATS_MODE_PROPERTY = "statsmode";
+	public static final String STATS_MODE_PROPERTY_DEFAULT = "catalog";
+
+	private static final String[] NAMES = {"usercount", "avgfriendsperuser", "resourcesperuser", "avgpendingperuser"};
+
+	private static final String CREATE_METADATA = "CREATE TABLE IF NOT EXISTS BG_METADATA (name varchar(64) NOT NULL,"
+			+ " value varchar(255), PRIMARY KEY (name))";
+	private static final String DELETE_METADATA = "DELETE FROM BG_METADATA";
+	private static final String INSERT_METADATA = "INSERT INTO BG_METADATA (name, value) VALUES (?, ?)";
+	private static final String HAS_METADATA = "SELECT to_regclass('bg_metadata') IS NOT NULL";
+	private static final String METADATA = "SELECT name, value FROM BG_METADATA";
+	private static final String USERS_ESTIMATE = "SELECT reltuples::int8 FROM pg_class WHERE oid = to_regclass('users')";
+
+	private static final String USER_COUNT = "SELECT count(*) FROM USERS";
+	private static final String FIRST_MEMBER = "SELECT confFriendCnt, resCnt, pendFriendCnt FROM USERS"
+			+ " WHERE userid = (SELECT min(userid) FROM USERS)";
+
+	public static boolean isExact(Properties props) {
+		return props.getProperty(STATS_MODE_PROPERTY, STATS_MODE_PROPERTY_DEFAULT).equalsIgnoreCase("exact");
+	}
+
+	/**
+	 * The exact stats of USERS, in the transaction of the caller.
+	 */
+	public static HashMap<String, String> exact(Connection connection) throws SQLException {
+		HashMap<String, String> stats = new HashMap<String, String>();
+		Statement st = connection.createStatement();
+		try {
+			ResultSet rs = st.executeQuery(USER_COUNT);
+			rs.next();
+			stats.put("usercount", Long.toString(rs.getLong(1)));
+			rs.close();
+			rs = st.executeQuery(FIRST_MEMBER);
+			if (rs.next()) {
+				stats.put("avgfriendsperuser", Integer.toString(rs.getInt(1)));
+				stats.put("resourcesperuser", Integer.toString(rs.getInt(2)));
+				stats.put("avgpendingperuser", Integer.toString(rs.getInt(3)));
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+		return stats;
+	}
+
+	public static HashMap<String, String> exact(Session session) {
+		return session.doReturningWork(new ReturningWork<HashMap<String, String>>() {
+			@Override
+			public HashMap<String, String> execute(Connection c) throws SQLException {
+				return exact(c);
+			}
+		});
+	}
+
+	/**
+	 * Replaces the stats in BG_METADATA, creating it if needed, in the transaction of the caller.
+	 */
+	public static void record(Connection connection, HashMap<String, String> stats) throws SQLException {
+		Statement st = connection.createStatement();
+		try {
+			st.executeUpdate(CREATE_METADATA);
+			st.executeUpdate(DELETE_METADATA);
+		} finally {
+			st.close();
+		}
+		PreparedStatement ps = connection.prepareStatement(INSERT_METADATA);
+		try {
+			for (int i = 0; i < NAMES.length; i++) {
+				if (!stats.containsKey(NAMES[i]))
+					continue;
+				ps.setString(1, NAMES[i]);
+				ps.setString(2, stats.get(NAMES[i]));
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		} finally {
+			ps.close();
+		}
+		System.out.println("Recorded the initial stats " + stats);
+	}
+
+	public static void record(Session session, final HashMap<String, String> stats) {
+		session.doWork(new Work() {
+			@Override
+			public void execute(Connection c) throws SQLException {
+				record(c, stats);
+			}
+		});
+	}
+
+	/**
+	 * The stats recorded in BG_METADATA, null if there are none.
+	 */
+	public static HashMap<String, String> catalog(Connection connection) throws SQLException {
+		HashMap<String, String> stats = new HashMap<String, String>();
+		long estimate = -1;
+		Statement st = connection.createStatement();
+		try {
+			ResultSet rs = st.executeQuery(HAS_METADATA);
+			rs.next();
+			boolean present = rs.getBoolean(1);
+			rs.close();
+			if (!present)
+				return null;
+			rs = st.executeQuery(METADATA);
+			while (rs.next())
+				stats.put(rs.getString(1), rs.getString(2));
+			rs.close();
+			rs = st.executeQuery(USERS_ESTIMATE);
+			if (rs.next())
+				estimate = rs.getLong(1);
+			rs.close();
+		} finally {
+			st.close();
+		}
+		if (!stats.containsKey("usercount"))
+			return null;
+		//reltuples is -1 or 0 until the table was vacuumed or analyzed
+		long users = Long.parseLong(stats.get("usercount"));
+		if (estimate > 0 && Math.abs(estimate - users) > users / 10)
+			System.out.println("USERS has about " + estimate + " rows but " + users + " members were recorded at the end of the load, "
+					+ "run with " + STATS_MODE_PROPERTY + "=exact if it was loaded without finalizeLoad");
+		return stats;
+	}
+
+	public static HashMap<String, String> catalog(Session session) {
+		return session.doReturningWork(new ReturningWork<HashMap<String, String>>() {
+			@Override
+			public HashMap<String, String> execute(Connection c) throws SQLException {
+				return catalog(c);
+			}
+		});
+	}
+}
@@ -0,0 +1,105 @@
+package postgreHibernateClient;
+
+import java.util.Map;
+import java.util.Set;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.ObjectByteIterator;
+
+/**
+ * Column lists for reading USERS with a projection instead of loading whole entities.
+ *
+ * Loading the entity always read pic and tpic, only to drop them when the action did not
+ * ask for images. A projection reads only the requested profile columns and at most one
+ * image: pic for viewProfile and the thumbnail tpic for the friend and pending lists.
+ */
+public class ProfileProjection {
+
+	private EntityMapping mapping;
+	private EntityAccessor users;
+	//profile columns without the images
+	private int[] textFields;
+	private int userid;
+	private int pic;
+	private int tpic;
+
+	public ProfileProjection(EntityMapping mapping) {
+		this.mapping = mapping;
+		this.users = mapping.usersAccessor;
+		textFields = users.idsExcept("confFriendCnt", "pendFriendCnt", "resCnt", "pic", "tpic");
+		userid = users.id("userid");
+		pic = users.id("pic");
+		tpic = users.id("tpic");
+	}
+
+	/**
+	 * Columns of the profile of viewProfile, with pic if images are requested.
+	 */
+	public int[] profile(boolean insertImage) {
+		return insertImage ? append(textFields, pic) : textFields;
+	}
+
+	/**
+	 * Columns of a friend or pending list entry, the requested fields or the whole profile
+	 * if fields is null, with tpic if images are requested.
+	 */
+	public int[] listEntry(Set<String> fields, boolean insertImage) {
+		int[] columns = textFields;
+		if (fields != null) {
+			//the userid is always returned
+			int[] requested = users.ids(fields);
+			columns = new int[requested.length + 1];
+			columns[0] = userid;
+			int n = 1;
+			for (int i = 0; i < requested.length; i++) {
+				if (requested[i] != pic && requested[i] != tpic && requested[i] != userid)
+					columns[n++] = requested[i];
+			}
+			if (n < columns.length) {
+				int[] r = new int[n];
+				System.arraycopy(columns, 0, r, 0, n);
+				columns = r;
+			}
+		}
+		return insertImage ? append(columns, tpic) : columns;
+	}
+
+	/**
+	 * The HQL select list of the columns, prefixed with the given leading expressions.
+	 */
+	public String select(String alias, int[] columns, String... leading) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < leading.length; i++)
+			sb.append(i == 0 ? "" : ", ").append(leading[i]);
+		for (int i = 0; i < columns.length; i++)
+			sb.append(sb.length() == 0 ? "" : ", ").append(alias).append('.').append(users.name(columns[i]));
+		return sb.toString();
+	}
+
+	/**
+	 * Copies a projected row into a BG result map, starting at column offset of the row.
+	 * Hibernate returns a single selected column as the value itself.
+	 */
+	public void toResult(Object row, int offset, int[] columns, Map<String, ByteIterator> result) {
+		Object[] values = row instanceof Object[] ? (Object[]) row : new Object[] {row};
+		for (int i = 0; i < columns.length; i++) {
+			Object v = values[offset + i];
+			if (v != null)
+				result.put(users.name(columns[i]), new ObjectByteIterator(EntityAccessor.toBytes(v)));
+		}
+	}
+
+	/**
+	 * The counter at position i of a projected row as an int.
+	 */
+	public int count(Object row, int i) {
+		return mapping.toInt(((Object[]) row)[i]);
+	}
+
+	private static int[] append(int[] columns, int id) {
+		int[] r = new int[columns.length + 1];
+		System.arraycopy(columns, 0, r, 0, columns.length);
+		r[columns.length] = id;
+		return r;
+	}
+}
@@ -25,9 +25,9 @@ import edu.usc.bg.base.ByteIterator;
 
 
 @Entity
-/*@Cacheable
-@Cache(usage=CacheConcurrencyStrategy.TRANSACTIONAL)
-*/@Table(name="RESOURCES")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="RESOURCES")
+@Table(name="RESOURCES")
 public class RESOURCES {
 	@Id
 	private String rid;
@@ -0,0 +1,216 @@
+package postgreHibernateClient;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+/**
+ * DDL for the BG tables, used by createSchema (-schema) when schemastrategy=tuned.
+ *
+ * hbm2ddl:  the default, the tables and indexes are whatever hbm2ddl.auto derives from the
+ *           annotations when the SessionFactory is built, createSchema does nothing.
+ * tuned:    hbm2ddl is switched off and createSchema drops and creates the tables with
+ *           indexes for the BG actions:
+ *           - Friendship keyed on (inviterid, inviteeid) instead of leading with value
+ *           - partial indexes on the pending and the confirmed edges of both sides
+ *           - RESOURCES (walluserid, rid DESC) for the top-K resources of a wall, on
+ *             cast(rid as int4) with varchar keys
+ *           - MANIPULATIONS (rid) for the comments of a resource
+ *           - USERS with a reduced fillfactor so the counter updates find room on the
+ *             page and stay HOT updates, none of the indexed columns change
+ *           - USERS with the version column of USERCOUNTERS if countermode=versioned
+ *           - with partitions=N, Friendship hash partitioned on inviteeid and MANIPULATIONS
+ *             on rid into N partitions each (PostgreSQL 11 or later). The pending requests of
+ *             a member, a friendship and the comments of a resource are then read from one
+ *             partition, and each partition has its own small indexes to descend and vacuum.
+ *             The primary key of MANIPULATIONS becomes (mid, rid), a key has to include the
+ *             partition column. The confirmed edges are also kept, by a trigger on Friendship,
+ *             in FRIENDSHIP_BY_INVITER hash partitioned on inviterid, so both sides of the
+ *             friends of a member are read from one partition. partitionStats reports the partitions.
+ *
+ * The friendship status is compared with the literals '1' and '2' in the queries, a bound
+ * parameter does not let the planner match the predicate of a partial index.
+ */
+public class SchemaBuilder {
+
+	public static final String SCHEMA_STRATEGY_PROPERTY = "schemastrategy";
+	public static final String SCHEMA_STRATEGY_PROPERTY_DEFAULT = "hbm2ddl";
+	public static final String USERS_FILLFACTOR_PROPERTY = "usersfillfactor";
+	public static final String USERS_FILLFACTOR_PROPERTY_DEFAULT = "70";
+	public static final String PARTITIONS_PROPERTY = "partitions";
+	public static final String PARTITIONS_PROPERTY_DEFAULT = "0";
+
+	private static final String PARTITION_STATS = "SELECT c.relname, coalesce(s.n_live_tup, 0), pg_indexes_size(c.oid)"
+			+ " FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid LEFT JOIN pg_stat_user_tables s ON s.relid = c.oid"
+			+ " WHERE i.inhparent IN ('friendship'::regclass, 'manipulations'::regclass, to_regclass('friendship_by_inviter'))"
+			+ " ORDER BY c.relname";
+	//keeps FRIENDSHIP_BY_INVITER in step with the confirmed rows of Friendship, whichever client writes them
+	private static final String BY_INVITER_FUNCTION = "CREATE OR REPLACE FUNCTION friendship_by_inviter() RETURNS trigger AS $$\n"
+			+ "BEGIN\n"
+			+ "IF TG_OP <> 'INSERT' THEN\n"
+			+ "IF OLD.value = '2' THEN\n"
+			+ "DELETE FROM FRIENDSHIP_BY_INVITER WHERE inviterid = OLD.inviterid AND inviteeid = OLD.inviteeid;\n"
+			+ "END IF;\n"
+			+ "END IF;\n"
+			+ "IF TG_OP <> 'DELETE' THEN\n"
+			+ "IF NEW.value = '2' THEN\n"
+			+ "INSERT INTO FRIENDSHIP_BY_INVITER (inviterid, inviteeid) VALUES (NEW.inviterid, NEW.inviteeid);\n"
+			+ "END IF;\n"
+			+ "END IF;\n"
+			+ "RETURN NULL;\n"
+			+ "END\n$$ LANGUAGE plpgsql";
+
+	public static boolean isTuned(Properties props) {
+		return props.getProperty(SCHEMA_STRATEGY_PROPERTY, SCHEMA_STRATEGY_PROPERTY_DEFAULT).equalsIgnoreCase("tuned");
+	}
+
+	/**
+	 * True if Friendship and MANIPULATIONS are partitioned, only the tuned schema is.
+	 */
+	public static boolean isPartitioned(Properties props) {
+		return isTuned(props) && partitions(props) > 0;
+	}
+
+	private static int partitions(Properties props) {
+		return Integer.parseInt(props.getProperty(PARTITIONS_PROPERTY, PARTITIONS_PROPERTY_DEFAULT));
+	}
+
+	/**
+	 * The statements of the tuned schema, in execution order.
+	 */
+	public static Vector<String> tunedSchema(Properties props, EntityMapping mapping) {
+		String key = mapping.intKeyed ? "int4" : "varchar(255)";
+		String status = mapping.intKeyed ? "int2" : "varchar(255)";
+		int fillfactor = Integer.parseInt(props.getProperty(USERS_FILLFACTOR_PROPERTY, USERS_FILLFACTOR_PROPERTY_DEFAULT));
+		int partitions = isPartitioned(props) ? partitions(props) : 0;
+
+		Vector<String> ddl = new Vector<String>();
+		ddl.add("DROP TABLE IF EXISTS MANIPULATIONS, RESOURCES, FRIENDSHIP_BY_INVITER, Friendship, USERS CASCADE");
+		ddl.add("CREATE TABLE USERS (userid " + key + " NOT NULL, username varchar(255), pw varchar(255),"
+				+ " fname varchar(255), lname varchar(255), gender varchar(255), dob varchar(255),"
+				+ " jdate varchar(255), ldate varchar(255), address varchar(255), email varchar(255),"
+				+ " tel varchar(255), pic bytea, tpic bytea,"
+				+ " confFriendCnt int4 NOT NULL DEFAULT 0, pendFriendCnt int4 NOT NULL DEFAULT 0, resCnt int4 NOT NULL DEFAULT 0,"
+				+ (mapping.versioned ? " version int4 NOT NULL DEFAULT 0," : "")
+				+ " PRIMARY KEY (userid)) WITH (fillfactor = " + fillfactor + ")");
+		ddl.add("CREATE TABLE RESOURCES (rid " + key + " NOT NULL, creatorid " + key + " NOT NULL,"
+				+ " walluserid " + key + " NOT NULL, type varchar(255), body varchar(255), doc varchar(255),"
+				+ " PRIMARY KEY (rid))");
+		ddl.add("CREATE TABLE MANIPULATIONS (mid " + key + " NOT NULL, creatorid " + key + " NOT NULL,"
+				+ " rid " + key + " NOT NULL, modifierid " + key + " NOT NULL, timestamp varchar(255),"
+				+ " type varchar(255), content varchar(255),"
+				+ (partitions > 0 ? " PRIMARY KEY (mid, rid)) PARTITION BY HASH (rid)" : " PRIMARY KEY (mid))"));
+		ddl.add("CREATE TABLE Friendship (value " + status + " NOT NULL, inviterid " + key + " NOT NULL,"
+				+ " inviteeid " + key + " NOT NULL, PRIMARY KEY (inviterid, inviteeid))"
+				+ (partitions > 0 ? " PARTITION BY HASH (inviteeid)" : ""));
+		if (partitions > 0)
+			ddl.add("CREATE TABLE FRIENDSHIP_BY_INVITER (inviterid " + key + " NOT NULL, inviteeid " + key + " NOT NULL,"
+					+ " PRIMARY KEY (inviterid, inviteeid)) PARTITION BY HASH (inviterid)");
+		//the indexes created below on the parents are created on every partition
+		for (int i = 0; i < partitions; i++) {
+			ddl.add("CREATE TABLE MANIPULATIONS_P" + i + " PARTITION OF MANIPULATIONS FOR VALUES WITH (MODULUS " + partitions
+					+ ", REMAINDER " + i + ")");
+			ddl.add("CREATE TABLE Friendship_P" + i + " PARTITION OF Friendship FOR VALUES WITH (MODULUS " + partitions
+					+ ", REMAINDER " + i + ")");
+			ddl.add("CREATE TABLE FRIENDSHIP_BY_INVITER_P" + i + " PARTITION OF FRIENDSHIP_BY_INVITER FOR VALUES WITH (MODULUS "
+					+ partitions + ", REMAINDER " + i + ")");
+		}
+		if (partitions > 0) {
+			ddl.add(BY_INVITER_FUNCTION);
+			ddl.add("CREATE TRIGGER FRIENDSHIP_BY_INVITER AFTER INSERT OR UPDATE OR DELETE ON Friendship"
+					+ " FOR EACH ROW EXECUTE PROCEDURE friendship_by_inviter()");
+		}
+
+		ddl.add("CREATE INDEX FRIENDSHIP_PENDING_INVITEE ON Friendship (inviteeid, inviterid) WHERE value = '1'");
+		ddl.add("CREATE INDEX FRIENDSHIP_PENDING_INVITER ON Friendship (inviterid, inviteeid) WHERE value = '1'");
+		ddl.add("CREATE INDEX FRIENDSHIP_CONFIRMED_INVITEE ON Friendship (inviteeid, inviterid) WHERE value = '2'");
+		ddl.add("CREATE INDEX FRIENDSHIP_CONFIRMED_INVITER ON Friendship (inviterid, inviteeid) WHERE value = '2'");
+		//the varchar keys are ordered as numbers, see TopKResources
+		if (mapping.intKeyed)
+			ddl.add("CREATE INDEX RESOURCES_WALL_TOPK ON RESOURCES (walluserid, rid DESC)");
+		else
+			ddl.add("CREATE INDEX RESOURCES_WALL_TOPK ON RESOURCES (walluserid, (CAST(rid AS int4)) DESC)");
+		ddl.add("CREATE INDEX RESOURCES_CREATORID ON RESOURCES (creatorid)");
+		//the comments of a resource in mid order, see CommentPages
+		if (mapping.intKeyed)
+			ddl.add("CREATE INDEX MANIPULATION_RID ON MANIPULATIONS (rid, mid)");
+		else
+			ddl.add("CREATE INDEX MANIPULATION_RID ON MANIPULATIONS (rid, (CAST(mid AS int4)))");
+		return ddl;
+	}
+
+	/**
+	 * Creates the tuned schema in its own transaction, does nothing for schemastrategy=hbm2ddl.
+	 */
+	public static void createSchema(Session session, Properties props, EntityMapping mapping) {
+		if (!isTuned(props)) {
+			System.out.println("schemastrategy=" + props.getProperty(SCHEMA_STRATEGY_PROPERTY, SCHEMA_STRATEGY_PROPERTY_DEFAULT)
+					+ ", the schema is maintained by hbm2ddl");
+			return;
+		}
+		final Vector<String> ddl = tunedSchema(props, mapping);
+		session.beginTransaction();
+		try {
+			session.doWork(new Work() {
+				@Override
+				public void execute(Connection connection) throws SQLException {
+					SchemaBuilder.execute(connection, ddl);
+				}
+			});
+			session.getTransaction().commit();
+		} catch (RuntimeException e) {
+			session.getTransaction().rollback();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds the live row count and the index size of every partition of Friendship and
+	 * MANIPULATIONS to the stats, as partition.<name>.rows and partition.<name>.indexsize(KB).
+	 * The row counts are those of the statistics collector, no partition is scanned.
+	 */
+	public static void partitionStats(Connection connection, HashMap<String, String> stats) throws SQLException {
+		Statement st = connection.createStatement();
+		try {
+			ResultSet rs = st.executeQuery(PARTITION_STATS);
+			while (rs.next()) {
+				stats.put("partition." + rs.getString(1) + ".rows", Long.toString(rs.getLong(2)));
+				stats.put("partition." + rs.getString(1) + ".indexsize(KB)", Long.toString(rs.getLong(3) / 1024));
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+	}
+
+	public static void partitionStats(Session session, final HashMap<String, String> stats) {
+		session.doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				partitionStats(connection, stats);
+			}
+		});
+	}
+
+	/**
+	 * Runs the statements on the connection, the caller commits.
+	 */
+	public static void execute(Connection connection, Vector<String> ddl) throws SQLException {
+		Statement st = connection.createStatement();
+		try {
+			for (int i = 0; i < ddl.size(); i++) {
+				System.out.println(ddl.get(i));
+				st.execute(ddl.get(i));
+			}
+		} finally {
+			st.close();
+		}
+	}
+}
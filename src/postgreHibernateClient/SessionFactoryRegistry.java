@@ -0,0 +1,185 @@
+package postgreHibernateClient;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+import edu.usc.bg.measurements.MyMeasurement;
+
+/**
+ * Hands out one SessionFactory per configuration to all the DB instances of a BG client.
+ * BG creates one DB instance per thread and building a factory per instance gave every
+ * thread its own connection pool and second level cache, so the factory is now built by
+ * the first init() and closed by the last cleanup() of the measured threads. The warmup threads
+ * and the other short lived instances, e.g. of the init phase, leave it open with its pool and
+ * cache warm, the factories still open when the JVM exits are closed by a shutdown hook.
+ *
+ * Any BG property starting with "hibernate." overrides the value in hibernate.cfg.xml,
+ * e.g. -p hibernate.bgpool.max_size=50. With keytype=int the default configuration is
+ * hibernate-intkeys.cfg.xml.
+ *
+ * A factory acquired with secondLevelCache set caches the entities, the friendship collections
+ * and the query results in the Ehcache regions of ehcache-bg.xml. Its hit, miss and put counts
+ * per region are added to the L2CACHE counters when it is closed, counted from the last time the
+ * instances of the warmup left it, which is when BG resets its measurements.
+ *
+ * With countermode=versioned USERCOUNTERS is mapped as well, see EntityMapping.
+ */
+public class SessionFactoryRegistry {
+
+	public static final String CONFIG_FILE_PROPERTY = "hibernateconfig";
+	public static final String CONFIG_FILE_PROPERTY_DEFAULT = "hibernate.cfg.xml";
+	public static final String EHCACHE_CONFIG_FILE = "/ehcache-bg.xml";
+
+	static class Entry {
+		SessionFactory factory;
+		ServiceRegistry registry;
+		int refs;
+	}
+
+	private static HashMap<String, Entry> factories = new HashMap<String, Entry>();
+	private static boolean hooked = false;
+
+	/**
+	 * Returns the shared factory for these properties, building it on first use.
+	 * Every call must be matched by a call to release.
+	 */
+	public static SessionFactory acquire(Properties props) {
+		return acquire(props, false);
+	}
+
+	/**
+	 * Same as acquire(props), with the second level and query cache switched on if secondLevelCache is set.
+	 */
+	public static synchronized SessionFactory acquire(Properties props, boolean secondLevelCache) {
+		String resource = resource(props);
+		TreeMap<String, String> overrides = overrides(props);
+		boolean tuned = SchemaBuilder.isTuned(props);
+		EntityMapping mapping = EntityMapping.get(props);
+		String key = resource + (tuned ? "tuned" : "") + (secondLevelCache ? "l2" : "") + (mapping.versioned ? "versioned" : "")
+				+ overrides.toString();
+
+		Entry e = factories.get(key);
+		if (e == null) {
+			Configuration configuration = new Configuration();
+			configuration.configure(resource).setProperty("hibernate.show_sql", "false");
+			if (mapping.versioned)
+				configuration.addAnnotatedClass(mapping.userCounters);
+			//the tuned schema is created by createSchema, hbm2ddl would add its own indexes
+			if (tuned)
+				configuration.setProperty("hibernate.hbm2ddl.auto", "none");
+			if (secondLevelCache) {
+				configuration.setProperty("hibernate.cache.use_second_level_cache", "true");
+				configuration.setProperty("hibernate.cache.use_query_cache", "true");
+				configuration.setProperty("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.EhCacheRegionFactory");
+				configuration.setProperty("net.sf.ehcache.configurationResourceName", EHCACHE_CONFIG_FILE);
+				configuration.setProperty("hibernate.generate_statistics", "true");
+			}
+			for (Map.Entry<String, String> o : overrides.entrySet())
+				configuration.setProperty(o.getKey(), o.getValue());
+			e = new Entry();
+			e.registry = new ServiceRegistryBuilder().applySettings(
+					configuration.getProperties()).buildServiceRegistry();
+			e.factory = configuration.buildSessionFactory(e.registry);
+			factories.put(key, e);
+			if (!hooked) {
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					public void run() {
+						closeAll();
+					}
+				});
+				hooked = true;
+			}
+		}
+		e.refs++;
+		return e.factory;
+	}
+
+	/**
+	 * The hibernate.* settings of the configuration for these properties, with the overrides
+	 * applied, without building a factory. postgreJdbcClient takes its connection from them.
+	 */
+	public static Properties settings(Properties props) {
+		Configuration configuration = new Configuration().configure(resource(props));
+		for (Map.Entry<String, String> o : overrides(props).entrySet())
+			configuration.setProperty(o.getKey(), o.getValue());
+		return configuration.getProperties();
+	}
+
+	private static String resource(Properties props) {
+		return props.getProperty(CONFIG_FILE_PROPERTY,
+				EntityMapping.isIntKeyed(props) ? EntityMapping.INT_KEYS_CONFIG_FILE : CONFIG_FILE_PROPERTY_DEFAULT);
+	}
+
+	private static TreeMap<String, String> overrides(Properties props) {
+		TreeMap<String, String> overrides = new TreeMap<String, String>();
+		for (String name : props.stringPropertyNames()) {
+			if (name.startsWith("hibernate."))
+				overrides.put(name, props.getProperty(name));
+		}
+		return overrides;
+	}
+
+	/**
+	 * Drops one reference to the factory, the last one closes it and its connection pool unless
+	 * warmup is set, see DB.cleanup. A factory left open without references starts its cache
+	 * statistics over.
+	 */
+	public static synchronized void release(SessionFactory factory, boolean warmup) {
+		Iterator<Map.Entry<String, Entry>> it = factories.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry e = it.next().getValue();
+			if (e.factory != factory)
+				continue;
+			if (--e.refs > 0)
+				return;
+			if (warmup) {
+				e.factory.getStatistics().clear();
+				return;
+			}
+			it.remove();
+			if (e.factory.getStatistics().isStatisticsEnabled())
+				exportCacheStatistics(e.factory.getStatistics());
+			close(e);
+			return;
+		}
+	}
+
+	private static synchronized void closeAll() {
+		for (Entry e : factories.values())
+			close(e);
+		factories.clear();
+	}
+
+	private static void close(Entry e) {
+		e.factory.close();
+		ServiceRegistryBuilder.destroy(e.registry);
+	}
+
+	private static void exportCacheStatistics(Statistics stats) {
+		for (String region : stats.getSecondLevelCacheRegionNames()) {
+			//the query and timestamp regions are reported below
+			if (region.startsWith("org.hibernate.cache"))
+				continue;
+			SecondLevelCacheStatistics r = stats.getSecondLevelCacheStatistics(region);
+			MyMeasurement.incrementCounter("L2CACHE." + region + ".hits", r.getHitCount());
+			MyMeasurement.incrementCounter("L2CACHE." + region + ".misses", r.getMissCount());
+			MyMeasurement.incrementCounter("L2CACHE." + region + ".puts", r.getPutCount());
+		}
+		MyMeasurement.incrementCounter("L2CACHE.query.hits", stats.getQueryCacheHitCount());
+		MyMeasurement.incrementCounter("L2CACHE.query.misses", stats.getQueryCacheMissCount());
+		MyMeasurement.incrementCounter("L2CACHE.query.puts", stats.getQueryCachePutCount());
+		MyMeasurement.incrementCounter("L2CACHE.timestamps.hits", stats.getUpdateTimestampsCacheHitCount());
+		MyMeasurement.incrementCounter("L2CACHE.timestamps.misses", stats.getUpdateTimestampsCacheMissCount());
+		MyMeasurement.incrementCounter("L2CACHE.timestamps.puts", stats.getUpdateTimestampsCachePutCount());
+	}
+}
@@ -0,0 +1,161 @@
+package postgreHibernateClient;
+
+import java.util.Properties;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.StatelessSession;
+
+import edu.usc.bg.measurements.MyMeasurement;
+
+/**
+ * Decides how long the Hibernate Session of a DB instance lives, with sessionstrategy:
+ *
+ * action:    a session per action, closed when the action is done.
+ * bgsession: a session per BG session, the sequence of actions of one doTransaction of the
+ *            workload (see DB.startSession), per action outside of one, e.g. while loading.
+ * longlived: one session for the whole run, cleared after sessionclearactions actions or once
+ *            it holds sessionclearentities entities, whichever comes first, 0 disables either.
+ *            Without the clears the persistence context grows with every entity the thread
+ *            ever touched and hands out stale entities.
+ *
+ * With statelessreads=true the reads run on a StatelessSession of the instance instead, it
+ * has no persistence context at all. It bypasses the second level cache as well.
+ *
+ * Every sessionwindow actions the heap in use and the largest persistence context of the
+ * window are printed and exported to the SESSION counters.
+ */
+public class SessionStrategy {
+
+	public static final String SESSION_STRATEGY_PROPERTY = "sessionstrategy";
+	public static final String SESSION_CLEAR_ACTIONS_PROPERTY = "sessionclearactions";
+	public static final String SESSION_CLEAR_ACTIONS_PROPERTY_DEFAULT = "1000";
+	public static final String SESSION_CLEAR_ENTITIES_PROPERTY = "sessionclearentities";
+	public static final String SESSION_CLEAR_ENTITIES_PROPERTY_DEFAULT = "10000";
+	public static final String STATELESS_READS_PROPERTY = "statelessreads";
+	public static final String STATELESS_READS_PROPERTY_DEFAULT = "false";
+	public static final String SESSION_WINDOW_PROPERTY = "sessionwindow";
+	public static final String SESSION_WINDOW_PROPERTY_DEFAULT = "10000";
+
+	public static final String PER_ACTION = "action";
+	public static final String PER_BG_SESSION = "bgsession";
+	public static final String LONG_LIVED = "longlived";
+
+	private SessionFactory factory;
+	private String strategy;
+	private int clearActions;
+	private int clearEntities;
+	private boolean statelessReads;
+	private int window;
+
+	private Session session;
+	private StatelessSession stateless;
+	private boolean inBGSession = false;
+	private int actionsSinceClear = 0;
+	private long actions = 0;
+	//largest persistence context of the current window
+	private int maxEntities = 0;
+
+	/**
+	 * defaultStrategy is the strategy of the client when sessionstrategy is not set.
+	 */
+	public SessionStrategy(SessionFactory factory, Properties props, String defaultStrategy) {
+		this.factory = factory;
+		strategy = props.getProperty(SESSION_STRATEGY_PROPERTY, defaultStrategy).toLowerCase();
+		if (!strategy.equals(PER_ACTION) && !strategy.equals(PER_BG_SESSION) && !strategy.equals(LONG_LIVED))
+			throw new IllegalArgumentException("Unknown " + SESSION_STRATEGY_PROPERTY + ": " + strategy);
+		clearActions = Integer.parseInt(props.getProperty(SESSION_CLEAR_ACTIONS_PROPERTY, SESSION_CLEAR_ACTIONS_PROPERTY_DEFAULT));
+		clearEntities = Integer.parseInt(props.getProperty(SESSION_CLEAR_ENTITIES_PROPERTY, SESSION_CLEAR_ENTITIES_PROPERTY_DEFAULT));
+		statelessReads = Boolean.parseBoolean(props.getProperty(STATELESS_READS_PROPERTY, STATELESS_READS_PROPERTY_DEFAULT));
+		window = Integer.parseInt(props.getProperty(SESSION_WINDOW_PROPERTY, SESSION_WINDOW_PROPERTY_DEFAULT));
+	}
+
+	/**
+	 * The session of the next action, opened if there is none.
+	 */
+	public Session current() {
+		if (session == null) {
+			session = factory.openSession();
+			MyMeasurement.incrementCounter("SESSION.opened", 1);
+		}
+		return session;
+	}
+
+	/**
+	 * The session of the next read action, the StatelessSession with statelessreads=true.
+	 */
+	public SharedSessionContract reader() {
+		if (!statelessReads)
+			return current();
+		if (stateless == null)
+			stateless = factory.openStatelessSession();
+		return stateless;
+	}
+
+	/**
+	 * Called when an action is done, whether it succeeded or not.
+	 */
+	public void actionDone() {
+		actions++;
+		if (session != null) {
+			int entities = session.getStatistics().getEntityCount();
+			if (entities > maxEntities)
+				maxEntities = entities;
+			if (strategy.equals(PER_ACTION) || (strategy.equals(PER_BG_SESSION) && !inBGSession)) {
+				closeSession();
+			} else if (strategy.equals(LONG_LIVED)) {
+				actionsSinceClear++;
+				if ((clearActions > 0 && actionsSinceClear >= clearActions) || (clearEntities > 0 && entities >= clearEntities)) {
+					session.clear();
+					actionsSinceClear = 0;
+					MyMeasurement.incrementCounter("SESSION.clears", 1);
+				}
+			}
+		}
+		if (window > 0 && actions % window == 0)
+			reportWindow();
+	}
+
+	public void startSession() {
+		inBGSession = true;
+	}
+
+	public void endSession() {
+		inBGSession = false;
+		if (strategy.equals(PER_BG_SESSION))
+			closeSession();
+	}
+
+	private void closeSession() {
+		if (session == null)
+			return;
+		try {
+			session.close();
+		} finally {
+			session = null;
+		}
+	}
+
+	private void reportWindow() {
+		Runtime rt = Runtime.getRuntime();
+		long heap = (rt.totalMemory() - rt.freeMemory()) / 1024;
+		MyMeasurement.setGauge("SESSION.heapused(KB)", heap);
+		MyMeasurement.maxCounter("SESSION.maxheapused(KB)", heap);
+		MyMeasurement.maxCounter("SESSION.maxentities", maxEntities);
+		System.out.println("Session window of " + window + " actions ending at action " + actions + " (" + strategy + "): heap used "
+				+ heap + " KB, at most " + maxEntities + " entities in the persistence context");
+		maxEntities = 0;
+	}
+
+	/**
+	 * Closes the sessions of the DB instance, called from cleanup.
+	 */
+	public void close() {
+		closeSession();
+		if (stateless != null) {
+			stateless.close();
+			stateless = null;
+		}
+	}
+}
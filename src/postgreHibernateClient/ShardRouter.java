@@ -0,0 +1,23 @@
+package postgreHibernateClient;
+
+import java.util.Properties;
+
+/**
+ * Decides which shard of postgreShardedClient holds a member, its USERS row, the RESOURCES
+ * posted on its wall with their MANIPULATIONS, and its side of every friendship.
+ * An implementation is named with shardrouter and created with its no-argument constructor,
+ * one instance per DB instance. It must return the same shard for a member from every
+ * instance and every run over the same data.
+ */
+public interface ShardRouter {
+
+	/**
+	 * Called once before the first call to shard.
+	 */
+	void init(Properties props, int shards);
+
+	/**
+	 * The shard of the member, from 0 to shards-1.
+	 */
+	int shard(int memberID);
+}
@@ -0,0 +1,123 @@
+package postgreHibernateClient;
+
+import java.util.Vector;
+
+/**
+ * One PL/pgSQL function per BG action, installed by postgreProcClient.createSchema. An action
+ * is a single call of its function, the statements of the action run on the server in the
+ * transaction of that call instead of one round trip each with the row locks held in between.
+ *
+ * The functions use the statements of FriendshipUpdates and postgreJdbcClient, with the
+ * status literals '1' and '2' so the partial indexes of the tuned schema are used. The key
+ * parameters and columns are int4 or varchar per keytype. The reads return the whole profile
+ * and the image only if asked for, the client picks the requested fields.
+ */
+public class StoredProcedures {
+
+	private static final String PROFILE_COLUMNS = "userid %1$s, username varchar, pw varchar, fname varchar, lname varchar,"
+			+ " gender varchar, dob varchar, jdate varchar, ldate varchar, address varchar, email varchar, tel varchar";
+	private static final String PROFILE_SELECT = "u.userid, u.username, u.pw, u.fname, u.lname, u.gender, u.dob, u.jdate,"
+			+ " u.ldate, u.address, u.email, u.tel";
+	private static final String RESOURCE_COLUMNS = "rid %1$s, creatorid %1$s, walluserid %1$s, type varchar, body varchar, doc varchar";
+	private static final String RESOURCE_SELECT = "r.rid, r.creatorid, r.walluserid, r.type, r.body, r.doc";
+
+	/**
+	 * The CREATE OR REPLACE FUNCTION statements for the key type of the mapping.
+	 */
+	public static Vector<String> ddl(EntityMapping mapping) {
+		String k = mapping.intKeyed ? "int4" : "varchar";
+		//see TopKResources for the order of varchar rids
+		String order = mapping.intKeyed ? "r.rid" : "CAST(r.rid AS int4)";
+		Vector<String> ddl = new Vector<String>();
+
+		ddl.add(function("bg_invite(p_inviter %1$s, p_invitee %1$s)", "void", k,
+				"INSERT INTO Friendship (value, inviterid, inviteeid) VALUES ('1', p_inviter, p_invitee);",
+				"UPDATE USERS SET pendFriendCnt = pendFriendCnt + 1 WHERE userid = p_invitee;"));
+		ddl.add(function("bg_create_friendship(p_a %1$s, p_b %1$s)", "void", k,
+				"INSERT INTO Friendship (value, inviterid, inviteeid) VALUES ('2', p_a, p_b);",
+				"UPDATE USERS SET confFriendCnt = confFriendCnt + 1 WHERE userid = p_a;",
+				"UPDATE USERS SET confFriendCnt = confFriendCnt + 1 WHERE userid = p_b;"));
+		ddl.add(function("bg_accept(p_inviter %1$s, p_invitee %1$s)", "int4", k,
+				"DECLARE n int4;",
+				"BEGIN",
+				"UPDATE Friendship SET value = '2' WHERE inviterid = p_inviter AND inviteeid = p_invitee AND value = '1';",
+				"GET DIAGNOSTICS n = ROW_COUNT;",
+				"IF n > 0 THEN",
+				"UPDATE USERS SET pendFriendCnt = pendFriendCnt - 1, confFriendCnt = confFriendCnt + 1 WHERE userid = p_invitee;",
+				"UPDATE USERS SET confFriendCnt = confFriendCnt + n WHERE userid = p_inviter;",
+				"END IF;",
+				"RETURN n;"));
+		ddl.add(function("bg_reject(p_inviter %1$s, p_invitee %1$s)", "int4", k,
+				"DECLARE n int4;",
+				"BEGIN",
+				"DELETE FROM Friendship WHERE inviterid = p_inviter AND inviteeid = p_invitee AND value = '1';",
+				"GET DIAGNOSTICS n = ROW_COUNT;",
+				"IF n > 0 THEN",
+				"UPDATE USERS SET pendFriendCnt = pendFriendCnt - n WHERE userid = p_invitee;",
+				"END IF;",
+				"RETURN n;"));
+		ddl.add(function("bg_thaw(p_a %1$s, p_b %1$s)", "int4", k,
+				"DECLARE n int4;",
+				"BEGIN",
+				"DELETE FROM Friendship WHERE value = '2' AND ((inviterid = p_a AND inviteeid = p_b) OR (inviterid = p_b AND inviteeid = p_a));",
+				"GET DIAGNOSTICS n = ROW_COUNT;",
+				"IF n > 0 THEN",
+				"UPDATE USERS SET confFriendCnt = confFriendCnt - n WHERE userid = p_a;",
+				"UPDATE USERS SET confFriendCnt = confFriendCnt - n WHERE userid = p_b;",
+				"END IF;",
+				"RETURN n;"));
+		ddl.add(function("bg_insert_resource(p_rid %1$s, p_creator %1$s, p_wall %1$s, p_type varchar, p_body varchar, p_doc varchar)", "void", k,
+				"INSERT INTO RESOURCES (rid, creatorid, walluserid, type, body, doc) VALUES (p_rid, p_creator, p_wall, p_type, p_body, p_doc);",
+				"UPDATE USERS SET resCnt = resCnt + 1 WHERE userid = p_creator;"));
+		ddl.add(function("bg_post_comment(p_mid %1$s, p_creator %1$s, p_rid %1$s, p_modifier %1$s, p_timestamp varchar, p_type varchar, p_content varchar)", "void", k,
+				"INSERT INTO MANIPULATIONS (mid, creatorid, rid, modifierid, timestamp, type, content)"
+						+ " VALUES (p_mid, p_creator, p_rid, p_modifier, p_timestamp, p_type, p_content);"));
+		ddl.add(function("bg_del_comment(p_mid %1$s, p_rid %1$s)", "void", k,
+				"DELETE FROM MANIPULATIONS WHERE mid = p_mid AND rid = p_rid;"));
+
+		ddl.add(function("bg_view_profile(p_user %1$s, p_pic boolean)",
+				"TABLE (confFriendCnt int4, resCnt int4, pendFriendCnt int4, " + PROFILE_COLUMNS + ", pic bytea)", k,
+				"RETURN QUERY SELECT u.confFriendCnt, u.resCnt, u.pendFriendCnt, " + PROFILE_SELECT + ", CASE WHEN p_pic THEN u.pic END"
+						+ " FROM USERS u WHERE u.userid = p_user;"));
+		ddl.add(function("bg_list_friends(p_user %1$s, p_tpic boolean)", "TABLE (" + PROFILE_COLUMNS + ", tpic bytea)", k,
+				"RETURN QUERY SELECT " + PROFILE_SELECT + ", CASE WHEN p_tpic THEN u.tpic END"
+						+ " FROM Friendship f JOIN USERS u ON u.userid = f.inviteeid WHERE f.value = '2' AND f.inviterid = p_user;",
+				"RETURN QUERY SELECT " + PROFILE_SELECT + ", CASE WHEN p_tpic THEN u.tpic END"
+						+ " FROM Friendship f JOIN USERS u ON u.userid = f.inviterid WHERE f.value = '2' AND f.inviteeid = p_user;"));
+		ddl.add(function("bg_friend_requests(p_user %1$s, p_tpic boolean)", "TABLE (" + PROFILE_COLUMNS + ", tpic bytea)", k,
+				"RETURN QUERY SELECT " + PROFILE_SELECT + ", CASE WHEN p_tpic THEN u.tpic END"
+						+ " FROM Friendship f JOIN USERS u ON u.userid = f.inviterid WHERE f.value = '1' AND f.inviteeid = p_user;"));
+		ddl.add(function("bg_top_k(p_wall %1$s, p_k int4, p_before int4)", "TABLE (" + RESOURCE_COLUMNS + ")", k,
+				"IF p_before < 0 THEN",
+				"RETURN QUERY SELECT " + RESOURCE_SELECT + " FROM RESOURCES r WHERE r.walluserid = p_wall"
+						+ " ORDER BY " + order + " DESC LIMIT p_k;",
+				"ELSE",
+				"RETURN QUERY SELECT " + RESOURCE_SELECT + " FROM RESOURCES r WHERE r.walluserid = p_wall AND " + order + " < p_before"
+						+ " ORDER BY " + order + " DESC LIMIT p_k;",
+				"END IF;"));
+		ddl.add(function("bg_created_resources(p_creator %1$s)", "TABLE (" + RESOURCE_COLUMNS + ")", k,
+				"RETURN QUERY SELECT " + RESOURCE_SELECT + " FROM RESOURCES r WHERE r.creatorid = p_creator;"));
+		ddl.add(function("bg_comments(p_rid %1$s)",
+				"TABLE (mid %1$s, creatorid %1$s, rid %1$s, modifierid %1$s, \"timestamp\" varchar, type varchar, content varchar)", k,
+				"RETURN QUERY SELECT m.mid, m.creatorid, m.rid, m.modifierid, m.timestamp, m.type, m.content"
+						+ " FROM MANIPULATIONS m WHERE m.rid = p_rid;"));
+		ddl.add(function("bg_pending_ids(p_user %1$s)", "SETOF %1$s", k,
+				"RETURN QUERY SELECT f.inviterid FROM Friendship f WHERE f.value = '1' AND f.inviteeid = p_user;"));
+		ddl.add(function("bg_confirmed_ids(p_user %1$s)", "SETOF %1$s", k,
+				"RETURN QUERY SELECT f.inviteeid FROM Friendship f WHERE f.value = '2' AND f.inviterid = p_user;",
+				"RETURN QUERY SELECT f.inviterid FROM Friendship f WHERE f.value = '2' AND f.inviteeid = p_user;"));
+		return ddl;
+	}
+
+	//the body gets its BEGIN unless it starts with a DECLARE section. The output columns of
+	//the reads have the names of table columns, use_column resolves them to the columns
+	private static String function(String signature, String returns, String key, String... body) {
+		StringBuilder sb = new StringBuilder("CREATE OR REPLACE FUNCTION ").append(String.format(signature, key))
+				.append(" RETURNS ").append(String.format(returns, key)).append(" AS $$\n#variable_conflict use_column\n");
+		if (!body[0].startsWith("DECLARE"))
+			sb.append("BEGIN\n");
+		for (int i = 0; i < body.length; i++)
+			sb.append(body[i]).append('\n');
+		return sb.append("END\n$$ LANGUAGE plpgsql").toString();
+	}
+}
@@ -0,0 +1,94 @@
+package postgreHibernateClient;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import edu.usc.bg.base.DB;
+
+/**
+ * The bulk exports of DB: one ordered scan per table, read with a fetch size of exportfetchsize
+ * rows so only that many rows are in memory at a time, instead of the per member queries BG ran
+ * to learn the initial state of the data store. With int keys every scan reads its table in the
+ * order of an index (the primary keys, and MANIPULATION_RID for the comments).
+ *
+ * The driver only fetches in batches inside a transaction, the callers run the scans in one.
+ */
+public class TableExport {
+
+	public static final String EXPORT_FETCH_SIZE_PROPERTY = "exportfetchsize";
+	public static final String EXPORT_FETCH_SIZE_PROPERTY_DEFAULT = "10000";
+
+	public static final int FRIENDSHIP = 0;
+	public static final int RESOURCES = 1;
+	public static final int MANIPULATIONS = 2;
+
+	//inviterid, inviteeid, value
+	private static final String FRIENDSHIPS = "SELECT inviterid, inviteeid, value FROM Friendship ORDER BY inviterid, inviteeid";
+	//rid, creatorid, walluserid
+	private static final String RESOURCE_ROWS = "SELECT rid, creatorid, walluserid FROM RESOURCES ORDER BY rid";
+	//mid, rid
+	private static final String COMMENTS = "SELECT mid, rid FROM MANIPULATIONS ORDER BY rid, mid";
+
+	public static int fetchSize(Properties props) {
+		return Integer.parseInt(props.getProperty(EXPORT_FETCH_SIZE_PROPERTY, EXPORT_FETCH_SIZE_PROPERTY_DEFAULT));
+	}
+
+	/**
+	 * The query of the table.
+	 */
+	public static String query(int table) {
+		switch (table) {
+		case FRIENDSHIP:
+			return FRIENDSHIPS;
+		case RESOURCES:
+			return RESOURCE_ROWS;
+		default:
+			return COMMENTS;
+		}
+	}
+
+	/**
+	 * Streams the rows of the query of the table to the sink, in the transaction of the caller.
+	 * sql replaces the query, with the same columns, for a data model without the table.
+	 * Returns the number of rows.
+	 */
+	public static long export(Connection connection, int table, String sql, int fetchSize, DB.ExportSink sink) throws SQLException {
+		long rows = 0;
+		Statement st = connection.createStatement();
+		try {
+			st.setFetchSize(fetchSize);
+			ResultSet rs = st.executeQuery(sql);
+			while (rs.next()) {
+				//the keys are read as strings, they are varchar with keytype=string
+				int a = Integer.parseInt(rs.getString(1).trim());
+				int b = Integer.parseInt(rs.getString(2).trim());
+				if (table == FRIENDSHIP)
+					sink.friendship(a, b, rs.getString(3).trim().equals("2"));
+				else if (table == RESOURCES)
+					sink.resource(a, b, Integer.parseInt(rs.getString(3).trim()));
+				else
+					sink.comment(a, b);
+				rows++;
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+		return rows;
+	}
+
+	public static void export(Session session, final int table, final int fetchSize, final DB.ExportSink sink) {
+		session.doWork(new Work() {
+			@Override
+			public void execute(Connection c) throws SQLException {
+				export(c, table, query(table), fetchSize, sink);
+			}
+		});
+	}
+}
@@ -0,0 +1,119 @@
+package postgreHibernateClient;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.ObjectByteIterator;
+
+/**
+ * Latency of the top-K resources of a wall as the wall grows from 10 to 10,000 resources,
+ * for the string ordered criteria query the clients used before and for TopKResources,
+ * on the first page and on a page from the middle of the wall.
+ *
+ * It creates the tuned schema, which drops the BG tables, so run it against a scratch
+ * database. The connection and keytype are taken from system properties, e.g.
+ *   java -Dkeytype=int -Dhibernate.connection.url=jdbc:postgresql://host/scratch postgreHibernateClient.TopKBenchmark
+ *
+ * usage: TopKBenchmark [queries] [k]
+ */
+public class TopKBenchmark {
+
+	static final int[] WALL_SIZES = {10, 100, 1000, 10000};
+
+	public static void main(String[] args) throws Exception {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int k = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Properties props = new Properties();
+		props.putAll(System.getProperties());
+		props.setProperty(SchemaBuilder.SCHEMA_STRATEGY_PROPERTY, "tuned");
+		EntityMapping mapping = EntityMapping.get(props);
+		SessionFactory factory = SessionFactoryRegistry.acquire(props);
+		Session session = factory.openSession();
+		try {
+			SchemaBuilder.createSchema(session, props, mapping);
+			int rid = 0;
+			for (int w = 0; w < WALL_SIZES.length; w++)
+				rid = loadWall(session, w + 1, WALL_SIZES[w], rid);
+			session.beginTransaction();
+			session.createSQLQuery("ANALYZE RESOURCES").executeUpdate();
+			session.getTransaction().commit();
+
+			System.out.println("keytype=" + (mapping.intKeyed ? "int" : "string") + ", " + queries + " queries per wall, k=" + k);
+			//the first pass is the warm up
+			for (int round = 0; round < 2; round++) {
+				System.out.println(round == 0 ? "warmup round" : "measured round");
+				for (int w = 0; w < WALL_SIZES.length; w++) {
+					int wall = w + 1;
+					int middle = middleRid(session, mapping, wall);
+					long byString = time(session, mapping, wall, k, -2, queries);
+					long first = time(session, mapping, wall, k, -1, queries);
+					long deep = time(session, mapping, wall, k, middle, queries);
+					System.out.println("  " + WALL_SIZES[w] + " resources: string order " + byString + " us/op, keyset first page "
+							+ first + " us/op, keyset page below rid " + middle + " " + deep + " us/op");
+				}
+			}
+		} finally {
+			session.close();
+			SessionFactoryRegistry.release(factory, false);
+		}
+	}
+
+	//the resources of a wall get consecutive rids, returns the next free rid
+	static int loadWall(Session session, int wall, int size, int rid) {
+		Vector<String> pks = new Vector<String>(size);
+		Vector<HashMap<String, ByteIterator>> values = new Vector<HashMap<String, ByteIterator>>(size);
+		for (int i = 0; i < size; i++) {
+			HashMap<String, ByteIterator> v = new HashMap<String, ByteIterator>();
+			v.put("creatorid", new ObjectByteIterator(Integer.toString(wall).getBytes()));
+			v.put("walluserid", new ObjectByteIterator(Integer.toString(wall).getBytes()));
+			v.put("type", new ObjectByteIterator("post".getBytes()));
+			v.put("body", new ObjectByteIterator(("body of resource " + rid).getBytes()));
+			v.put("doc", new ObjectByteIterator(("doc of resource " + rid).getBytes()));
+			pks.add(Integer.toString(rid++));
+			values.add(v);
+		}
+		session.beginTransaction();
+		BulkLoader.copyEntities(session, "resources", pks, values, false);
+		session.getTransaction().commit();
+		return rid;
+	}
+
+	static int middleRid(Session session, EntityMapping mapping, int wall) {
+		session.beginTransaction();
+		Object r = TopKResources.fetch(session, mapping, wall, 1, -1, false).get(0);
+		session.getTransaction().commit();
+		int newest = mapping.toInt(mapping.resourcesAccessor.get(r, mapping.resourcesAccessor.id("rid")));
+		return newest - WALL_SIZES[wall - 1] / 2;
+	}
+
+	//average microseconds per query, beforeRid -2 runs the string ordered criteria query
+	static long time(Session session, EntityMapping mapping, int wall, int k, int beforeRid, int queries) {
+		long rows = 0;
+		long st = System.nanoTime();
+		for (int i = 0; i < queries; i++) {
+			session.beginTransaction();
+			if (beforeRid == -2)
+				rows += session.createCriteria(mapping.resources)
+						.add(Restrictions.eq("walluserid", mapping.key(wall)))
+						.addOrder(Order.desc("rid"))
+						.setMaxResults(k)
+						.list().size();
+			else
+				rows += TopKResources.fetch(session, mapping, wall, k, beforeRid, false).size();
+			session.getTransaction().commit();
+			session.clear();
+		}
+		long us = (System.nanoTime() - st) / 1000 / queries;
+		if (rows != (long) queries * Math.min(k, WALL_SIZES[wall - 1]))
+			System.out.println("  unexpected row count " + rows);
+		return us;
+	}
+}
@@ -0,0 +1,47 @@
+package postgreHibernateClient;
+
+import java.util.List;
+
+import org.hibernate.Query;
+import org.hibernate.SharedSessionContract;
+
+/**
+ * Top-K resources of a wall in (walluserid, rid DESC) order with a LIMIT of k, optionally
+ * starting below a cursor rid to page through the wall.
+ *
+ * The rid was ordered as a string before, so "10" came before "9", and no index delivered
+ * the rows in that order, every resource of the wall was read and sorted to return k.
+ * With int keys the rid is compared directly, with varchar keys it is compared as
+ * cast(rid as int4), the tuned schema has an index on that expression (see SchemaBuilder).
+ * Either way the scan reads the index from the cursor and stops after k rows.
+ */
+public class TopKResources {
+
+	private static final String INT_TOP_K = "from RESOURCES r where r.walluserid = :wall order by r.rid desc";
+	private static final String INT_TOP_K_BEFORE = "from RESOURCES r where r.walluserid = :wall"
+			+ " and r.rid < :before order by r.rid desc";
+	private static final String STRING_TOP_K = "from RESOURCES r where r.walluserid = :wall"
+			+ " order by cast(r.rid as integer) desc";
+	private static final String STRING_TOP_K_BEFORE = "from RESOURCES r where r.walluserid = :wall"
+			+ " and cast(r.rid as integer) < :before order by cast(r.rid as integer) desc";
+
+	/**
+	 * The k newest resources on the wall of wallID with a rid below beforeRid, all of them
+	 * if beforeRid is negative.
+	 */
+	public static List<?> fetch(SharedSessionContract session, EntityMapping mapping, int wallID, int k, int beforeRid, boolean cacheable) {
+		String hql;
+		if (mapping.intKeyed)
+			hql = beforeRid < 0 ? INT_TOP_K : INT_TOP_K_BEFORE;
+		else
+			hql = beforeRid < 0 ? STRING_TOP_K : STRING_TOP_K_BEFORE;
+		Query q = session.createQuery(hql)
+				.setParameter("wall", mapping.key(wallID))
+				.setMaxResults(k)
+				.setCacheable(cacheable);
+		//the cast compares numbers in both modes
+		if (beforeRid >= 0)
+			q.setInteger("before", beforeRid);
+		return q.list();
+	}
+}
@@ -0,0 +1,265 @@
+package postgreHibernateClient;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.jdbc.Work;
+
+/**
+ * How each BG action runs its session: read-only or read-write connection, isolation level,
+ * flush mode, whether loaded entities are read-only and whether it runs in autocommit mode
+ * instead of a transaction. The actions are named as in DBWrapper, plus CONFIRMEDIDS and
+ * PENDINGIDS for the friendship id queries.
+ *
+ * txpolicy=tuned (the default) puts the reads on the cheapest path: entities are loaded
+ * read-only so there is no snapshot to keep and nothing to dirty check, the flush mode is
+ * MANUAL, and a read that is a single statement runs in autocommit mode, without the commit
+ * round trip. The friend lists are a single statement unless friendfetch=batch or the schema is
+ * partitioned, then they keep their transaction so all of the statements see one snapshot. GETRESCOMMENT
+ * keeps its transaction as well unless commentfetchsize=0, see CommentPages. The writes keep the
+ * Hibernate defaults. txpolicy=default runs every action with the Hibernate defaults.
+ *
+ * The connections are read-write by default: on PostgreSQL the read-only flag is a session
+ * setting, changing it is a round trip, and a pooled connection serves reads and writes.
+ *
+ * txpolicy.<ACTION> replaces the policy of one action with a comma separated list of
+ * readonly|readwrite, autocommit|transaction, readonlyentities|writableentities,
+ * flush=auto|commit|manual|always and
+ * isolation=default|read_uncommitted|read_committed|repeatable_read|serializable,
+ * e.g. txpolicy.GETTOPRES=readonly,transaction,isolation=repeatable_read
+ * Whatever is not listed takes the Hibernate default. Without a transaction Hibernate hands
+ * the connection back after every statement, so autocommit is only for single statement actions.
+ */
+public class TransactionPolicy {
+
+	public static final String TX_POLICY_PROPERTY = "txpolicy";
+	public static final String TX_POLICY_PROPERTY_DEFAULT = "tuned";
+
+	//the reads, everything else is a write
+	private static final String[] READS = { "PROFILE", "FRIENDS", "PENDING", "GETTOPRES", "GETRESCOMMENT", "CONFIRMEDIDS", "PENDINGIDS" };
+	//the reads that are more than one statement with friendfetch=batch or a partitioned schema
+	private static final String[] FRIEND_READS = { "FRIENDS", "PENDING" };
+
+	private static final int DEFAULT_ISOLATION = -1;
+
+	/**
+	 * The settings of one action.
+	 */
+	public static class Action {
+		boolean readOnly = false;
+		boolean autocommit = false;
+		boolean readOnlyEntities = false;
+		FlushMode flushMode = FlushMode.AUTO;
+		int isolation = DEFAULT_ISOLATION;
+
+		public String toString() {
+			return (readOnly ? "readonly" : "readwrite") + "," + (autocommit ? "autocommit" : "transaction") + ","
+					+ (readOnlyEntities ? "readonlyentities" : "writableentities") + ",flush=" + flushMode.toString().toLowerCase()
+					+ ",isolation=" + isolationName(isolation);
+		}
+	}
+
+	/**
+	 * The isolation a connection had before a policy changed it and the one it has now.
+	 */
+	static class Isolation {
+		int original;
+		int current;
+	}
+
+	//the connections whose isolation was changed, the others have the isolation of the pool
+	private static final Map<Connection, Isolation> isolations = new WeakHashMap<Connection, Isolation>();
+
+	private HashMap<String, Action> actions = new HashMap<String, Action>();
+	private Action writes = new Action();
+
+	public TransactionPolicy(Properties props) {
+		boolean tuned = props.getProperty(TX_POLICY_PROPERTY, TX_POLICY_PROPERTY_DEFAULT).equalsIgnoreCase("tuned");
+		boolean multiStatementFriends = props.getProperty(FriendFetcher.FRIEND_FETCH_PROPERTY, FriendFetcher.FRIEND_FETCH_PROPERTY_DEFAULT)
+				.equalsIgnoreCase("batch") || SchemaBuilder.isPartitioned(props);
+		//the driver only fetches in batches inside a transaction
+		boolean commentCursor = CommentPages.fetchSize(props) > 0;
+		for (int i = 0; i < READS.length; i++) {
+			Action a = new Action();
+			if (tuned) {
+				a.readOnlyEntities = true;
+				a.flushMode = FlushMode.MANUAL;
+				a.autocommit = !(multiStatementFriends && isFriendRead(READS[i])) && !(commentCursor && READS[i].equals("GETRESCOMMENT"));
+			}
+			actions.put(READS[i], a);
+		}
+		for (Object k : props.keySet()) {
+			String key = k.toString();
+			if (key.startsWith(TX_POLICY_PROPERTY + "."))
+				actions.put(key.substring(TX_POLICY_PROPERTY.length() + 1).toUpperCase(), parse(props.getProperty(key)));
+		}
+		System.out.println("Transaction policy " + (tuned ? "tuned" : "default") + ": " + actions);
+	}
+
+	private static boolean isFriendRead(String action) {
+		for (int i = 0; i < FRIEND_READS.length; i++)
+			if (FRIEND_READS[i].equals(action))
+				return true;
+		return false;
+	}
+
+	static Action parse(String spec) {
+		Action a = new Action();
+		String[] tokens = spec.split(",");
+		for (int i = 0; i < tokens.length; i++) {
+			String t = tokens[i].trim().toLowerCase();
+			if (t.length() == 0)
+				continue;
+			if (t.equals("readonly"))
+				a.readOnly = true;
+			else if (t.equals("readwrite"))
+				a.readOnly = false;
+			else if (t.equals("autocommit"))
+				a.autocommit = true;
+			else if (t.equals("transaction"))
+				a.autocommit = false;
+			else if (t.equals("readonlyentities"))
+				a.readOnlyEntities = true;
+			else if (t.equals("writableentities"))
+				a.readOnlyEntities = false;
+			else if (t.startsWith("flush="))
+				a.flushMode = FlushMode.valueOf(t.substring(6).toUpperCase());
+			else if (t.startsWith("isolation="))
+				a.isolation = isolation(t.substring(10));
+			else
+				throw new IllegalArgumentException("Unknown " + TX_POLICY_PROPERTY + " setting: " + t);
+		}
+		return a;
+	}
+
+	private static int isolation(String name) {
+		if (name.equals("default"))
+			return DEFAULT_ISOLATION;
+		if (name.equals("read_uncommitted"))
+			return Connection.TRANSACTION_READ_UNCOMMITTED;
+		if (name.equals("read_committed"))
+			return Connection.TRANSACTION_READ_COMMITTED;
+		if (name.equals("repeatable_read"))
+			return Connection.TRANSACTION_REPEATABLE_READ;
+		if (name.equals("serializable"))
+			return Connection.TRANSACTION_SERIALIZABLE;
+		throw new IllegalArgumentException("Unknown isolation level: " + name);
+	}
+
+	private static String isolationName(int level) {
+		switch (level) {
+		case Connection.TRANSACTION_READ_UNCOMMITTED:
+			return "read_uncommitted";
+		case Connection.TRANSACTION_READ_COMMITTED:
+			return "read_committed";
+		case Connection.TRANSACTION_REPEATABLE_READ:
+			return "repeatable_read";
+		case Connection.TRANSACTION_SERIALIZABLE:
+			return "serializable";
+		default:
+			return "default";
+		}
+	}
+
+	public Action get(String action) {
+		Action a = actions.get(action);
+		return a == null ? writes : a;
+	}
+
+	/**
+	 * Sets up the session and its connection for the action and begins its transaction.
+	 * Returns null if the action runs in autocommit mode, the session must not begin a
+	 * transaction then. The connection is only changed where it differs from the policy,
+	 * so actions with the same policy in a row cost no extra round trips.
+	 * A StatelessSession has no persistence context, only its connection is set up.
+	 */
+	public Transaction begin(SharedSessionContract session, String action) {
+		final Action a = get(action);
+		if (session instanceof Session) {
+			Session s = (Session) session;
+			s.setDefaultReadOnly(a.readOnlyEntities);
+			s.setFlushMode(a.flushMode);
+			s.doWork(new Work() {
+				@Override
+				public void execute(Connection c) throws SQLException {
+					prepare(c, a);
+				}
+			});
+		} else {
+			try {
+				prepare(((SessionImplementor) session).connection(), a);
+			} catch (SQLException e) {
+				throw new JDBCConnectionException("Could not set up the connection for " + action, e);
+			}
+		}
+		return a.autocommit ? null : session.beginTransaction();
+	}
+
+	private static void prepare(Connection c, Action a) throws SQLException {
+		//isolation and read-only can only be changed between transactions
+		if (!c.getAutoCommit() && (c.isReadOnly() != a.readOnly || isolationChange(c, a.isolation)))
+			c.commit();
+		if (c.isReadOnly() != a.readOnly)
+			c.setReadOnly(a.readOnly);
+		setIsolation(c, a.isolation);
+		if (c.getAutoCommit() != a.autocommit)
+			c.setAutoCommit(a.autocommit);
+	}
+
+	private static boolean isolationChange(Connection c, int level) {
+		synchronized (isolations) {
+			Isolation i = isolations.get(c);
+			if (i == null)
+				return level != DEFAULT_ISOLATION;
+			return (level == DEFAULT_ISOLATION ? i.original : level) != i.current;
+		}
+	}
+
+	private static void setIsolation(Connection c, int level) throws SQLException {
+		Isolation i;
+		synchronized (isolations) {
+			i = isolations.get(c);
+		}
+		if (i == null) {
+			if (level == DEFAULT_ISOLATION)
+				return;
+			i = new Isolation();
+			i.original = i.current = c.getTransactionIsolation();
+			synchronized (isolations) {
+				isolations.put(c, i);
+			}
+		}
+		int target = level == DEFAULT_ISOLATION ? i.original : level;
+		if (target != i.current) {
+			c.setTransactionIsolation(target);
+			i.current = target;
+		}
+	}
+
+	/**
+	 * Commits the transaction begun by begin, nothing to do in autocommit mode.
+	 */
+	public void commit(Transaction tx) {
+		if (tx != null)
+			tx.commit();
+	}
+
+	/**
+	 * Rolls back the transaction begun by begin, unless it already ended. A session that
+	 * outlives the action must not keep a failed transaction open.
+	 */
+	public void rollback(Transaction tx) {
+		if (tx != null && tx.isActive())
+			tx.rollback();
+	}
+}
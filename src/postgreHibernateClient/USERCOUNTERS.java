@@ -0,0 +1,77 @@
+package postgreHibernateClient;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * The counters of a member, mapped onto the USERS table with an optimistic version column.
+ * Only mapped when countermode=versioned, the counters are then changed by loading this
+ * entity and letting Hibernate write it back with a version check, see FriendshipUpdates.
+ */
+@Entity
+@Table(name="USERS")
+public class USERCOUNTERS implements Serializable{
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String userid;
+
+	private int confFriendCnt = 0;
+
+	private int pendFriendCnt = 0;
+
+	private int resCnt = 0;
+
+	//the rows loaded before the column existed start at version 0
+	@Version
+	@Column(columnDefinition="int4 NOT NULL DEFAULT 0")
+	private int version;
+
+	public USERCOUNTERS(){
+	}
+
+	public String getUserid() {
+		return userid;
+	}
+
+	public void setUserid(String userid) {
+		this.userid = userid;
+	}
+
+	public int getConfFriendCnt() {
+		return confFriendCnt;
+	}
+
+	public void setConfFriendCnt(int confFriendCnt) {
+		this.confFriendCnt = confFriendCnt;
+	}
+
+	public int getPendFriendCnt() {
+		return pendFriendCnt;
+	}
+
+	public void setPendFriendCnt(int pendFriendCnt) {
+		this.pendFriendCnt = pendFriendCnt;
+	}
+
+	public int getResCnt() {
+		return resCnt;
+	}
+
+	public void setResCnt(int resCnt) {
+		this.resCnt = resCnt;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+}
@@ -35,9 +35,9 @@ import edu.usc.bg.base.ByteIterator;
 
 
 @Entity
-/*@Cacheable
-@Cache(usage=CacheConcurrencyStrategy.TRANSACTIONAL)
-*/@Table(name="USERS")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="USERS")
+@Table(name="USERS")
 public class USERS implements Serializable{
 	@Id
 	private String userid;
@@ -87,10 +87,12 @@ public class USERS implements Serializable{
 */ 
 	@OnDelete(action = OnDeleteAction.CASCADE)
 	@OneToMany(mappedBy="inviterid", orphanRemoval=true)
+	@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="USERS.friend1")
 	private Collection<Friendship> friend1 = new ArrayList<Friendship>();
 	
 	@OnDelete(action = OnDeleteAction.CASCADE)
 	@OneToMany(mappedBy="inviteeid", orphanRemoval=true)
+	@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="USERS.friend2")
 	private Collection<Friendship> friend2 = new ArrayList<Friendship>();
 
 	@OnDelete(action = OnDeleteAction.CASCADE)
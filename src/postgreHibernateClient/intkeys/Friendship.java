@@ -0,0 +1,77 @@
+package postgreHibernateClient.intkeys;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Index;
+
+/**
+ * Friendship with int4 member ids and a smallint status (1 pending, 2 confirmed),
+ * used when keytype=int.
+ */
+@Entity(name="Friendship")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="Friendship")
+@Table(name="Friendship")
+public class Friendship implements Serializable{
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@Index(name="FRIENDSHIP_STATUS")
+	@Column(name = "value", nullable = false)
+	private short value;
+	
+	@Id
+	@Index(name="FRIENDSHIP_INVITERID")
+	@Column(name = "inviterid", nullable = false)
+	private int inviterid;	
+	
+	@Id
+	@Index(name="FRIENDSHIP_INVITEEID")
+	@Column(name = "inviteeid", nullable = false)
+	private int inviteeid;
+
+	public int getInviterid() {
+		return inviterid;
+	}
+
+	public void setInviterid(int inviterid) {
+		this.inviterid = inviterid;
+	}
+
+	public int getInviteeid() {
+		return inviteeid;
+	}
+
+	public void setInviteeid(int inviteeid) {
+		this.inviteeid = inviteeid;
+	}
+
+	public short getValue() {
+		return value;
+	}
+
+	public void setValue(short value) {
+		this.value = value;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Friendship))
+			return false;
+		Friendship f = (Friendship) o;
+		return f.value == value && f.inviterid == inviterid && f.inviteeid == inviteeid;
+	}
+
+	@Override
+	public int hashCode() {
+		return (inviterid * 31 + inviteeid) * 31 + value;
+	}
+}
@@ -0,0 +1,99 @@
+package postgreHibernateClient.intkeys;
+
+import javax.persistence.Column;
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Index;
+
+/**
+ * MANIPULATIONS with int4 keys, used when keytype=int.
+ */
+@Entity(name="MANIPULATIONS")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="MANIPULATIONS")
+@Table(name="MANIPULATIONS")
+public class MANIPULATIONS {
+	@Id
+	private int mid;
+	
+	@Index(name="MANIPULATION_CREATORID")
+	@Column(name="creatorid", nullable=false)
+	private int creatorid;
+
+	@Index(name="MANIPULATION_RID")
+	@Column(name="rid", nullable=false)
+	private int rid;
+	
+	@Column(name="modifierid", nullable=false)
+	private int modifierid;
+	
+	private String timestamp;
+	
+	private String type;
+	
+	private String content;
+
+	public MANIPULATIONS(){
+	}
+
+	public int getMid() {
+		return mid;
+	}
+
+	public void setMid(int mid) {
+		this.mid = mid;
+	}
+
+	public int getCreatorid() {
+		return creatorid;
+	}
+
+	public void setCreatorid(int creatorid) {
+		this.creatorid = creatorid;
+	}
+
+	public int getRid() {
+		return rid;
+	}
+
+	public void setRid(int rid) {
+		this.rid = rid;
+	}
+
+	public int getModifierid() {
+		return modifierid;
+	}
+
+	public void setModifierid(int modifierid) {
+		this.modifierid = modifierid;
+	}
+
+	public String getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(String timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	public void setContent(String content) {
+		this.content = content;
+	}
+}
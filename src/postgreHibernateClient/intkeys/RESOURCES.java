@@ -0,0 +1,88 @@
+package postgreHibernateClient.intkeys;
+
+import javax.persistence.Column;
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Index;
+
+/**
+ * RESOURCES with int4 keys, used when keytype=int.
+ */
+@Entity(name="RESOURCES")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="RESOURCES")
+@Table(name="RESOURCES")
+public class RESOURCES {
+	@Id
+	private int rid;
+
+	@Index(name="RESOURCES_CREATORID")
+	@Column(name = "creatorid", nullable = false)
+	private int creatorid;
+
+	@Index(name="RESOURCES_WALLUSERID")
+	@Column(name = "walluserid", nullable = false)
+	private int walluserid;
+	
+	private String type;
+	
+	private String body;
+	
+	private String doc;
+
+	public RESOURCES(){
+	}
+
+	public int getRid() {
+		return rid;
+	}
+
+	public void setRid(int rid) {
+		this.rid = rid;
+	}
+
+	public int getCreatorid() {
+		return creatorid;
+	}
+
+	public void setCreatorid(int creatorid) {
+		this.creatorid = creatorid;
+	}
+
+	public int getWalluserid() {
+		return walluserid;
+	}
+
+	public void setWalluserid(int walluserid) {
+		this.walluserid = walluserid;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public void setBody(String body) {
+		this.body = body;
+	}
+
+	public String getDoc() {
+		return doc;
+	}
+
+	public void setDoc(String doc) {
+		this.doc = doc;
+	}
+}
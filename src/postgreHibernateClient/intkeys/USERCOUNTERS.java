@@ -0,0 +1,76 @@
+package postgreHibernateClient.intkeys;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * USERCOUNTERS with an int4 primary key, used when keytype=int.
+ * The entity and property names are the same as those of postgreHibernateClient.USERCOUNTERS.
+ */
+@Entity(name="USERCOUNTERS")
+@Table(name="USERS")
+public class USERCOUNTERS implements Serializable{
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private int userid;
+
+	private int confFriendCnt = 0;
+
+	private int pendFriendCnt = 0;
+
+	private int resCnt = 0;
+
+	//the rows loaded before the column existed start at version 0
+	@Version
+	@Column(columnDefinition="int4 NOT NULL DEFAULT 0")
+	private int version;
+
+	public USERCOUNTERS(){
+	}
+
+	public int getUserid() {
+		return userid;
+	}
+
+	public void setUserid(int userid) {
+		this.userid = userid;
+	}
+
+	public int getConfFriendCnt() {
+		return confFriendCnt;
+	}
+
+	public void setConfFriendCnt(int confFriendCnt) {
+		this.confFriendCnt = confFriendCnt;
+	}
+
+	public int getPendFriendCnt() {
+		return pendFriendCnt;
+	}
+
+	public void setPendFriendCnt(int pendFriendCnt) {
+		this.pendFriendCnt = pendFriendCnt;
+	}
+
+	public int getResCnt() {
+		return resCnt;
+	}
+
+	public void setResCnt(int resCnt) {
+		this.resCnt = resCnt;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+}
@@ -0,0 +1,197 @@
+package postgreHibernateClient.intkeys;
+
+import java.io.Serializable;
+
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+/**
+ * USERS with an int4 primary key, used when keytype=int.
+ * The entity and property names are the same as those of postgreHibernateClient.USERS.
+ */
+@Entity(name="USERS")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE, region="USERS")
+@Table(name="USERS")
+public class USERS implements Serializable{
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private int userid;
+	
+	private String username;
+	
+	private String pw;
+	
+	private String fname;
+	
+	private String lname;
+	
+	private String gender;
+	
+	private String dob;
+	
+	private String jdate;
+	
+	private String ldate;
+	
+	private String address;
+	
+	private String email;
+	
+	private String tel;
+	
+	private byte[] pic;
+	
+	private byte[] tpic;
+	
+	private int confFriendCnt = 0;
+	
+	private int pendFriendCnt = 0;
+	
+	private int resCnt = 0;
+
+	public USERS(){
+	}
+
+	public int getUserid() {
+		return userid;
+	}
+
+	public void setUserid(int userid) {
+		this.userid = userid;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getPw() {
+		return pw;
+	}
+
+	public void setPw(String pw) {
+		this.pw = pw;
+	}
+
+	public String getFname() {
+		return fname;
+	}
+
+	public void setFname(String fname) {
+		this.fname = fname;
+	}
+
+	public String getLname() {
+		return lname;
+	}
+
+	public void setLname(String lname) {
+		this.lname = lname;
+	}
+
+	public String getGender() {
+		return gender;
+	}
+
+	public void setGender(String gender) {
+		this.gender = gender;
+	}
+
+	public String getDob() {
+		return dob;
+	}
+
+	public void setDob(String dob) {
+		this.dob = dob;
+	}
+
+	public String getJdate() {
+		return jdate;
+	}
+
+	public void setJdate(String jdate) {
+		this.jdate = jdate;
+	}
+
+	public String getLdate() {
+		return ldate;
+	}
+
+	public void setLdate(String ldate) {
+		this.ldate = ldate;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public void setAddress(String address) {
+		this.address = address;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public String getTel() {
+		return tel;
+	}
+
+	public void setTel(String tel) {
+		this.tel = tel;
+	}
+
+	public byte[] getPic() {
+		return pic;
+	}
+
+	public void setPic(byte[] pic) {
+		this.pic = pic;
+	}
+
+	public byte[] getTpic() {
+		return tpic;
+	}
+
+	public void setTpic(byte[] tpic) {
+		this.tpic = tpic;
+	}
+
+	public int getConfFriendCnt() {
+		return confFriendCnt;
+	}
+
+	public void setConfFriendCnt(int confFriendCnt) {
+		this.confFriendCnt = confFriendCnt;
+	}
+
+	public int getPendFriendCnt() {
+		return pendFriendCnt;
+	}
+
+	public void setPendFriendCnt(int pendFriendCnt) {
+		this.pendFriendCnt = pendFriendCnt;
+	}
+
+	public int getResCnt() {
+		return resCnt;
+	}
+
+	public void setResCnt(int resCnt) {
+		this.resCnt = resCnt;
+	}
+}
@@ -0,0 +1,268 @@
+package postgreHibernateClient;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import edu.usc.bg.base.ByteIterator;
+
+/**
+ * postgreJdbcClient with the friendships denormalized into arrays on USERS: confFriends holds
+ * the ids of the confirmed friends of the member and pendFriends the ids of the members with
+ * a pending invitation to it, int4[] with keytype=int, varchar[] otherwise.
+ *
+ * A friend list is then one statement, the primary key lookup of the array and the profiles
+ * of the ids in it, and the friend ids are a single row. A write rewrites the arrays of the
+ * rows it changes with array_append and array_remove, together with their counters, and a
+ * friendship write touches at most the two user rows instead of a Friendship row and the
+ * counters. The cost is on the write side, an array is copied on every change and a popular
+ * member's row grows with its friends.
+ *
+ * Needs schemastrategy=tuned, createSchema adds the arrays to its USERS table. The bulk load copies the friendships
+ * into Friendship as before and finalizeLoad builds the arrays from it, this client does not
+ * read or write Friendship after that.
+ */
+public class postgreArrayClient extends postgreJdbcClient {
+
+	private static final String INVITE = "UPDATE USERS SET pendFriends = array_append(pendFriends, ?), pendFriendCnt = pendFriendCnt + 1"
+			+ " WHERE userid = ? AND NOT (? = ANY(pendFriends))";
+	//the invitee, the inviter only if the invitation was pending
+	private static final String ACCEPT = "UPDATE USERS SET pendFriends = array_remove(pendFriends, ?), pendFriendCnt = pendFriendCnt - 1,"
+			+ " confFriends = array_append(confFriends, ?), confFriendCnt = confFriendCnt + 1 WHERE userid = ? AND ? = ANY(pendFriends)";
+	private static final String REJECT = "UPDATE USERS SET pendFriends = array_remove(pendFriends, ?), pendFriendCnt = pendFriendCnt - 1"
+			+ " WHERE userid = ? AND ? = ANY(pendFriends)";
+	private static final String ADD_FRIEND = "UPDATE USERS SET confFriends = array_append(confFriends, ?), confFriendCnt = confFriendCnt + 1"
+			+ " WHERE userid = ? AND NOT (? = ANY(confFriends))";
+	private static final String REMOVE_FRIEND = "UPDATE USERS SET confFriends = array_remove(confFriends, ?), confFriendCnt = confFriendCnt - 1"
+			+ " WHERE userid = ? AND ? = ANY(confFriends)";
+
+	private static final String FRIENDS = " FROM USERS u WHERE u.userid = ANY((SELECT confFriends FROM USERS WHERE userid = ?))";
+	private static final String INVITERS = " FROM USERS u WHERE u.userid = ANY((SELECT pendFriends FROM USERS WHERE userid = ?))";
+	private static final String CONFIRMED_IDS = "SELECT unnest(confFriends) FROM USERS WHERE userid = ?";
+	private static final String PENDING_IDS = "SELECT unnest(pendFriends) FROM USERS WHERE userid = ?";
+
+	//the columns of the Friendship export, a confirmed friendship from the side of the smaller id
+	private static final String EXPORT = "SELECT p, userid, 1 FROM USERS, unnest(pendFriends) AS p"
+			+ " UNION ALL SELECT userid, f, 2 FROM USERS, unnest(confFriends) AS f WHERE CAST(userid AS int4) < CAST(f AS int4)";
+
+	private static final String BUILD_CONFIRMED = "UPDATE USERS SET confFriends = f.ids FROM (SELECT id, array_agg(other) AS ids"
+			+ " FROM (SELECT inviterid AS id, inviteeid AS other FROM Friendship WHERE value = '2'"
+			+ " UNION ALL SELECT inviteeid, inviterid FROM Friendship WHERE value = '2') e GROUP BY id) f WHERE USERS.userid = f.id";
+	private static final String BUILD_PENDING = "UPDATE USERS SET pendFriends = p.ids FROM (SELECT inviteeid AS id, array_agg(inviterid) AS ids"
+			+ " FROM Friendship WHERE value = '1' GROUP BY inviteeid) p WHERE USERS.userid = p.id";
+	//the friend and pending counts from the arrays, the resource counts as in BulkLoader
+	private static final String UPDATE_COUNTERS = "UPDATE USERS SET resCnt = c.res, confFriendCnt = c.conf, pendFriendCnt = c.pend"
+			+ " FROM (SELECT u.userid, coalesce(r.cnt, 0) AS res, cardinality(u.confFriends) AS conf, cardinality(u.pendFriends) AS pend"
+			+ " FROM USERS u LEFT JOIN (SELECT creatorid AS id, count(*) AS cnt FROM RESOURCES GROUP BY creatorid) r ON r.id = u.userid) c"
+			+ " WHERE USERS.userid = c.userid"
+			+ " AND (USERS.resCnt <> c.res OR USERS.confFriendCnt <> c.conf OR USERS.pendFriendCnt <> c.pend)";
+
+	private String arrayType() {
+		return mapping.intKeyed ? "int4[]" : "varchar(255)[]";
+	}
+
+	//the statement on the row of member with other as the first and last parameter
+	private int updateRow(String sql, int other, int member) throws SQLException {
+		PreparedStatement ps = prepare(sql);
+		setKey(ps, 1, other);
+		setKey(ps, 2, member);
+		setKey(ps, 3, other);
+		return ps.executeUpdate();
+	}
+
+	@Override
+	public void createSchema(Properties props) {
+		super.createSchema(props);
+		if (!SchemaBuilder.isTuned(props))
+			return;
+		try {
+			Vector<String> ddl = new Vector<String>();
+			ddl.add("ALTER TABLE USERS ADD COLUMN confFriends " + arrayType() + " NOT NULL DEFAULT '{}',"
+					+ " ADD COLUMN pendFriends " + arrayType() + " NOT NULL DEFAULT '{}'");
+			SchemaBuilder.execute(conn, ddl);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+	}
+
+	//a single-row load wrote the arrays and their counters, a batched one copied the friendships into Friendship
+	@Override
+	protected int updateCounters() throws SQLException {
+		Vector<String> ddl = new Vector<String>();
+		ddl.add(BUILD_CONFIRMED);
+		ddl.add(BUILD_PENDING);
+		SchemaBuilder.execute(conn, ddl);
+		Statement st = conn.createStatement();
+		try {
+			return st.executeUpdate(UPDATE_COUNTERS);
+		} finally {
+			st.close();
+		}
+	}
+
+	@Override
+	public int listFriends(int requesterID, int profileOwnerID, Set<String> fields, Vector<HashMap<String, ByteIterator>> result,
+			boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.listEntry(fields, insertImage));
+			PreparedStatement ps = prepare("SELECT " + select("u", names) + FRIENDS);
+			setKey(ps, 1, profileOwnerID);
+			readRows(ps, names, result);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("list friend: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewFriendReq(int profileOwnerID, Vector<HashMap<String, ByteIterator>> results, boolean insertImage, boolean testMode) {
+		if (profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.listEntry(null, insertImage));
+			PreparedStatement ps = prepare("SELECT " + select("u", names) + INVITERS);
+			setKey(ps, 1, profileOwnerID);
+			readRows(ps, names, results);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("view friend reqs: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int acceptFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(ACCEPT);
+			setKey(ps, 1, inviterID);
+			setKey(ps, 2, inviterID);
+			setKey(ps, 3, inviteeID);
+			setKey(ps, 4, inviterID);
+			if (ps.executeUpdate() > 0)
+				updateRow(ADD_FRIEND, inviteeID, inviterID);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int rejectFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			updateRow(REJECT, inviterID, inviteeID);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int inviteFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			updateRow(INVITE, inviterID, inviteeID);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int CreateFriendship(int memberA, int memberB) {
+		if (memberA < 0 || memberB < 0)
+			return -1;
+		try {
+			updateRow(ADD_FRIEND, memberB, memberA);
+			updateRow(ADD_FRIEND, memberA, memberB);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("exception in create friendship: " + memberA + "to" + memberB + ". Below:");
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int thawFriendship(int friendid1, int friendid2) {
+		if (friendid1 < 0 || friendid2 < 0)
+			return -1;
+		try {
+			updateRow(REMOVE_FRIEND, friendid2, friendid1);
+			updateRow(REMOVE_FRIEND, friendid1, friendid2);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("Can not Delete friendship of: " + friendid1 + " and " + friendid2 + ".");
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int exportFriendships(ExportSink sink) {
+		return export(TableExport.FRIENDSHIP, EXPORT, sink);
+	}
+
+	@Override
+	public int queryPendingFriendshipIds(int memberID, Vector<Integer> pendingIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(PENDING_IDS);
+			setKey(ps, 1, memberID);
+			readIds(ps, pendingIds);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int queryConfirmedFriendshipIds(int memberID, Vector<Integer> confirmedIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(CONFIRMED_IDS);
+			setKey(ps, 1, memberID);
+			readIds(ps, confirmedIds);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+}
@@ -21,9 +21,7 @@ package postgreHibernateClient;
 
 
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -45,14 +43,10 @@ import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.SharedSessionContract;
 import org.hibernate.criterion.Criterion;
-import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
-import org.hibernate.criterion.Restrictions;
 import org.hibernate.exception.LockAcquisitionException;
-import org.hibernate.service.ServiceRegistry;
-import org.hibernate.service.ServiceRegistryBuilder;
 
 
 
@@ -68,20 +62,33 @@ public class postgreClient extends DB {
 	Session session = null;
 	//Hibernate variables
 	private  SessionFactory sessionFactory;
-	private ServiceRegistry serviceRegistry;
 	private Transaction tx;
+	private FriendFetcher friendFetcher;
+	private TransactionPolicy policy;
+	private int commentFetchSize;
+	private int exportFetchSize;
+	private ConflictRetry retry;
+	private SessionStrategy sessions;
 	private static int load_index;
+	//entity classes and key types selected with keytype
+	private EntityMapping mapping;
+	private ProfileProjection profiles;
 	
 	public boolean init() throws DBException {
 		System.out.println("initializing.....");
 		if(initialized)
 			return true;
 		try {
-			Configuration configuration = new Configuration();
-			configuration.configure().setProperty("hibernate.show_sql", "false");
-			serviceRegistry = new ServiceRegistryBuilder().applySettings(
-					configuration.getProperties()).buildServiceRegistry();
-			sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+			//one factory and connection pool shared by all threads
+			sessionFactory = SessionFactoryRegistry.acquire(getProperties());
+			mapping = EntityMapping.get(getProperties());
+			profiles = new ProfileProjection(mapping);
+			friendFetcher = new FriendFetcher(getProperties(), mapping, false);
+			policy = new TransactionPolicy(getProperties());
+			commentFetchSize = CommentPages.fetchSize(getProperties());
+			exportFetchSize = TableExport.fetchSize(getProperties());
+			retry = new ConflictRetry(getProperties());
+			sessions = new SessionStrategy(sessionFactory, getProperties(), SessionStrategy.PER_ACTION);
 			load_index = 0;
 			}
 		catch (Throwable ex) {
@@ -98,48 +105,43 @@ public class postgreClient extends DB {
 		System.out.println("shutdown couchbase client connection");
 //		tx.commit();
 //		session.close();
+		if(initialized) {
+			sessions.close();
+			SessionFactoryRegistry.release(sessionFactory, warmup);
+		}
 		initialized = false;
 	}
 
+	@Override
+	public void startSession() {
+		sessions.startSession();
+	}
+
+	@Override
+	public void endSession() {
+		sessions.endSession();
+	}
+
 	@Override
 	public int insertEntity(String entitySet, String entityPK, HashMap<String, ByteIterator> values, boolean insertImage) {
 
-		session = sessionFactory.openSession();
+		session = sessions.current();
 
 
 		try{
 			tx = session.beginTransaction();
-			Class insertClass = Class.forName("postgreHibernateClient."+entitySet.toUpperCase());
-			Constructor constructor = insertClass.getConstructor(new Class[]{});
-
-			
-			//GET ALL SETTER METHODS FOR THE TABLE entityset
-			Map<String, Method> methods = FactoryInsert.getSetterMethods(insertClass);
-			Object insertInstance = constructor.newInstance();
+			EntityAccessor accessor = mapping.accessor(entitySet);
 			
 			if(entitySet.equalsIgnoreCase("users"))
 				values.put("userid", new ObjectByteIterator(entityPK.getBytes()));
 			else if(entitySet.equalsIgnoreCase("resources"))
 				values.put("rid", new ObjectByteIterator(entityPK.getBytes()));
 				
-			Iterator<String> i = values.keySet().iterator();
-			//System.out.print(values.size());
-			while( i.hasNext()){
-				String s= i.next();
-				Method m = methods.get(s);
-				if(insertImage && (s.equalsIgnoreCase("pic") || s.equalsIgnoreCase("tpic"))){
-						m.invoke(insertInstance, ((ObjectByteIterator)values.get(s)).toArray());
-						continue;
-				}
-				m.invoke(insertInstance, values.get(s).toString());
-			}
+			Object insertInstance = accessor.fromValues(values);
 			session.save(insertInstance);
 			
 			if(entitySet.equalsIgnoreCase("resources")){
-				USERS u = new USERS();
-				u = (USERS) session.get(USERS.class, values.get("creatorid").toString());
-				u.setResCnt(u.getResCnt()+1);
-				session.save(u);
+				FriendshipUpdates.addResources(session, mapping, values.get("creatorid").toString(), 1);
 			}
 			
 			load_index++;
@@ -156,51 +158,106 @@ public class postgreClient extends DB {
 			e.printStackTrace();
 		} 
 		finally {
-			session.close();
+			sessions.actionDone();
 		}
 		
 		return 0;
 	}
 	
+	@Override
+	public int insertEntities(String entitySet, Vector<String> entityPKs, Vector<HashMap<String, ByteIterator>> values, boolean insertImage) {
+		session = sessions.current();
+		try{
+			tx = session.beginTransaction();
+			//the creators' resource counts are computed in finalizeLoad
+			BulkLoader.copyEntities(session, entitySet, entityPKs, values, insertImage);
+			tx.commit();
+			return 0;
+		}
+		catch (Exception e) {
+			tx.rollback();
+			System.out.println("error in bulk load of "+entitySet+": "+e.getMessage());
+			e.printStackTrace(System.out);
+			return -1;
+		}
+		finally {
+			sessions.actionDone();
+		}
+	}
+
+	@Override
+	public int insertFriendships(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed) {
+		session = sessions.current();
+		try{
+			tx = session.beginTransaction();
+			BulkLoader.copyFriendships(session, inviterIDs, inviteeIDs, confirmed);
+			tx.commit();
+			return 0;
+		}
+		catch (Exception e) {
+			tx.rollback();
+			System.out.println("error in bulk load of friendships: "+e.getMessage());
+			e.printStackTrace(System.out);
+			return -1;
+		}
+		finally {
+			sessions.actionDone();
+		}
+	}
+
+	@Override
+	public void finalizeLoad(Properties props) {
+		session = sessions.current();
+		try{
+			tx = session.beginTransaction();
+			if(BulkLoader.isBatched(props)){
+				int n = BulkLoader.updateCounters(session);
+				System.out.println("Updated the counters of "+n+" members");
+			}
+			//for statsmode=catalog
+			InitialStats.record(session, InitialStats.exact(session));
+			tx.commit();
+		}
+		catch (Exception e) {
+			tx.rollback();
+			e.printStackTrace(System.out);
+		}
+		finally {
+			sessions.actionDone();
+		}
+	}
+
 	@Override
 	public int viewProfile(int requesterID, int profileOwnerID,
 			HashMap<String, ByteIterator> result, boolean insertImage, boolean testMode) {
 		
 		if (requesterID < 0 || profileOwnerID < 0)
 			return -1;
-		session= sessionFactory.openSession();
+		SharedSessionContract reader = sessions.reader();
 		try {
-			tx = session.beginTransaction();
-			USERS u = (USERS)session.get(USERS.class, Integer.toString(profileOwnerID));
-			
-			result.put("friendcount", new ObjectByteIterator(Integer.toString(u.getConfFriendCnt()).getBytes()));
-			result.put("resourcecount", new ObjectByteIterator(Integer.toString(u.getResCnt()).getBytes()));
+			tx = policy.begin(reader, "PROFILE");
+			//only the requested columns, the image only if asked for
+			int[] columns = profiles.profile(insertImage);
+			Object row = reader.createQuery("select " + profiles.select("u", columns, "u.confFriendCnt", "u.resCnt", "u.pendFriendCnt")
+					+ " from USERS u where u.userid = :id")
+					.setParameter("id", mapping.key(profileOwnerID))
+					.uniqueResult();
+			
+			result.put("friendcount", new ObjectByteIterator(Integer.toString(profiles.count(row, 0)).getBytes()));
+			result.put("resourcecount", new ObjectByteIterator(Integer.toString(profiles.count(row, 1)).getBytes()));
 			if(profileOwnerID == requesterID)
-				result.put("pendingcount", new ObjectByteIterator(Integer.toString(u.getPendFriendCnt()).getBytes()));
-
-			Map<String, Method> methods = FactoryInsert.getGetterMethods(USERS.class);
-			Set<String> keys = methods.keySet();
-			keys.remove("confFriendCnt");
-			keys.remove("pendFriendCnt");
-			keys.remove("resCnt");
-
-			Iterator<String> it = keys.iterator();
-			while(it.hasNext()){
-				String key = it.next();
-				if(!insertImage && (key.equalsIgnoreCase("pic") || key.equalsIgnoreCase("tpic")))
-					continue;
-				Method methd = methods.get(key);
-				Object r = methd.invoke(u, null);
-				result.put(key, new ObjectByteIterator(r.toString().getBytes()));											
-			}
-			tx.commit();
+				result.put("pendingcount", new ObjectByteIterator(Integer.toString(profiles.count(row, 2)).getBytes()));
+
+			profiles.toResult(row, 3, columns, result);
+			policy.commit(tx);
 			return 0;
 		} catch (Exception e) {
+			policy.rollback(tx);
 			System.out.println(e.toString());
 			return -1;
 		}
 		finally{
-			session.close();
+			sessions.actionDone();
 		}
 	}
 
@@ -210,54 +267,30 @@ public class postgreClient extends DB {
 		if(requesterID < 0 || profileOwnerID < 0)
 			return -1;
 
-		session = sessionFactory.openSession();
+		SharedSessionContract reader = sessions.reader();
 		try {
-			tx = session.beginTransaction();
-			Criterion t1 = Restrictions.eq("inviteeid", Integer.toString(profileOwnerID));
-			Criterion t2 = Restrictions.eq("inviterid", Integer.toString(profileOwnerID));
-			
-			List<Friendship> obj = session.createCriteria(Friendship.class)
-					.add(Restrictions.and(Restrictions.or(t1,t2),
-											Restrictions.eq("value", Integer.toString(2))))
-					.list();
-			Map<String, Method> methods = FactoryInsert.getGetterMethods(USERS.class);
-			Set<String> keys;
-			if (fields == null){
-				keys = methods.keySet();
-				keys.remove("confFriendCnt");
-				keys.remove("pendFriendCnt");
-				keys.remove("resCnt");
-			}
-			else
-				keys = fields;
+			tx = policy.begin(reader, "FRIENDS");
+			int[] columns = profiles.listEntry(fields, insertImage);
+			List<?> friends = friendFetcher.confirmedFriends(reader, profileOwnerID, profiles.select("u", columns));
 			
 			HashMap<String, ByteIterator> uDetails;
-			for(Friendship f : obj){
+			for(Object row : friends){
 				uDetails = new HashMap<String, ByteIterator>();
-				USERS user = (USERS) session.get(USERS.class, f.getInviterid());
-				Iterator<String> it = keys.iterator();
-				while(it.hasNext()){
-					String key = it.next();
-					if(!insertImage && (key.equalsIgnoreCase("pic") || key.equalsIgnoreCase("tpic")))
-						continue;
-					Method methd = methods.get(key);
-					Object r = methd.invoke(user, null);
-					uDetails.put(key, new ObjectByteIterator(r.toString().getBytes()));
-//					System.out.println("listing friends of: "+profileOwnerID);
-				}
+				profiles.toResult(row, 0, columns, uDetails);
 				result.add(uDetails);
 			}
 			
-			tx.commit();
+			policy.commit(tx);
 //			System.out.println("listed friends of: "+profileOwnerID);
 			return 0;
 		}catch (Exception e) {
+			policy.rollback(tx);
 			System.out.println("list friend: "+ profileOwnerID);
 			e.printStackTrace(System.out);
 			return -1;
 		}
 		finally{
-			session.close();
+			sessions.actionDone();
 		}
 	}
 
@@ -266,45 +299,29 @@ public class postgreClient extends DB {
 			Vector<HashMap<String, ByteIterator>> values, boolean insertImage, boolean testMode) {
 		if(profileOwnerID < 0)
 			return -1;
-		session = sessionFactory.openSession();
+		SharedSessionContract reader = sessions.reader();
 		try {
-			tx = session.beginTransaction();
-			List<Friendship> obj = session.createCriteria(Friendship.class)
-								.add(Restrictions.and(Restrictions.eq("inviteeid", Integer.toString(profileOwnerID)),
-										Restrictions.eq("value", Integer.toString(1))))
-								.list();
-			Map<String, Method> methods = FactoryInsert.getGetterMethods(USERS.class);
-			Set<String> keys = methods.keySet();
-			keys.remove("confFriendCnt");
-			keys.remove("pendFriendCnt");
-			keys.remove("resCnt");
-
+			tx = policy.begin(reader, "PENDING");
+			int[] columns = profiles.listEntry(null, insertImage);
+			List<?> inviters = friendFetcher.pendingInviters(reader, profileOwnerID, profiles.select("u", columns));
 			
 			HashMap<String, ByteIterator> uDetails;
-			for(Friendship f : obj){
+			for(Object row : inviters){
 				uDetails = new HashMap<String, ByteIterator>();
-				USERS user = (USERS) session.get(USERS.class, f.getInviterid());
-				Iterator<String> it = keys.iterator();
-				while(it.hasNext()){
-					String key = it.next();
-					if(!insertImage && (key.equalsIgnoreCase("pic") || key.equalsIgnoreCase("tpic")))
-						continue;
-					Method methd = methods.get(key);
-					Object r = methd.invoke(user, null);
-					uDetails.put(key, new ObjectByteIterator(r.toString().getBytes()));											
-				}
+				profiles.toResult(row, 0, columns, uDetails);
 				values.add(uDetails);
 			}
 //			System.out.println("friend requests for "+profileOwnerID+" counts: "+values.size());
-			tx.commit();
+			policy.commit(tx);
 			return 0;
 		}catch (Exception e) {
+			policy.rollback(tx);
 			System.out.println("view friend reqs: "+ profileOwnerID);
 			e.printStackTrace(System.out);
 			return -1;
 		}
 		finally{
-			session.close();
+			sessions.actionDone();
 		}
 	}
 
@@ -315,52 +332,31 @@ public class postgreClient extends DB {
 		if(invitorID < 0 || inviteeID < 0)
 			return -1;
 		
-		session = sessionFactory.openSession();
+		ConflictRetry.Attempts attempts = retry.start("ACCEPT");
 		try {
-			tx = session.beginTransaction();
-			Criterion id1 = Restrictions.eq("inviterid", Integer.toString(invitorID));
-			Criterion id2 = Restrictions.eq("inviteeid", Integer.toString(inviteeID));
-			Criterion v = Restrictions.eq("value", Integer.toString(1));
-			
-			List<Friendship> obj = (List<Friendship>) session.createCriteria(Friendship.class)
-																	.add(Restrictions.and(id1,Restrictions.and(id2,v)))
-														.list();
-			
-			
-			for(Friendship m : obj){
-				session.delete("Friendship",m);
-				
-				Friendship f = new Friendship();
-				f.setInviterid(Integer.toString(invitorID));
-				f.setInviteeid(Integer.toString(inviteeID));
-				f.setValue(Integer.toString(2));
-				session.saveOrUpdate(f);
-
-
-				
-				USERS u = new USERS();
-				u = (USERS) session.get(USERS.class, Integer.toString(inviteeID));
-				u.setPendFriendCnt(u.getPendFriendCnt()-1);
-				u.setConfFriendCnt(u.getConfFriendCnt()+1);
-				session.saveOrUpdate(u);
-				
-				u = new USERS();
-				u = (USERS) session.get(USERS.class, Integer.toString(invitorID));
-				u.setConfFriendCnt(u.getConfFriendCnt()+1);
-				session.saveOrUpdate(u);
-
-				
-				tx.commit();
+			while (true) {
+				session = sessions.current();
+				try {
+					tx = policy.begin(session, "ACCEPT");
+					FriendshipUpdates.accept(session, mapping, invitorID, inviteeID);
+					policy.commit(tx);
+					attempts.succeeded();
+					return 0;
+				}
+				catch (Exception e) {
+					policy.rollback(tx);
+					if (attempts.retry(e)) {
+						//the failed attempt may have left stale entities in the session
+						session.clear();
+						continue;
+					}
+					e.printStackTrace(System.out);
+					return -1;
+				}
 			}
-			return 0;
-		}
-		catch (Exception e) {
-			tx.rollback();
-			e.printStackTrace(System.out);
-			return -1;
 		}
-		finally{
-			session.close();
+		finally {
+			sessions.actionDone();
 		}
 
 	}
@@ -371,39 +367,31 @@ public class postgreClient extends DB {
 		if(invitorID < 0 || inviteeID < 0)
 			return -1;
 		
-		session = sessionFactory.openSession();
+		ConflictRetry.Attempts attempts = retry.start("REJECT");
 		try {
-			tx = session.beginTransaction();
-			Criterion id1 = Restrictions.eq("inviterid", Integer.toString(invitorID));
-			Criterion id2 = Restrictions.eq("inviteeid", Integer.toString(inviteeID));
-			Criterion v = Restrictions.eq("value", Integer.toString(1));
-			List<Friendship> obj = (List<Friendship>) session.createCriteria(Friendship.class)
-																	.add(Restrictions.and(id1,Restrictions.and(id2,v)))
-								.list();
-
-			
-			for(Friendship m : obj){
-				session.delete("Friendship",m);
-				
-				USERS u = new USERS();
-				u = (USERS) session.get(USERS.class, Integer.toString(inviteeID));
-				u.setPendFriendCnt(u.getPendFriendCnt()-1);
-				session.saveOrUpdate(u);
-				
-				tx.commit();
-//				tx = session.beginTransaction();
-//				System.out.println("rejected friend req from "+ invitorID+" to "+inviteeID+".");
-//				tx = session.beginTransaction();
+			while (true) {
+				session = sessions.current();
+				try {
+					tx = policy.begin(session, "REJECT");
+					FriendshipUpdates.reject(session, mapping, invitorID, inviteeID);
+					policy.commit(tx);
+					attempts.succeeded();
+					return 0;
+				}
+				 catch (Exception e) {
+					policy.rollback(tx);
+					if (attempts.retry(e)) {
+						//the failed attempt may have left stale entities in the session
+						session.clear();
+						continue;
+					}
+					e.printStackTrace(System.out);
+					return -1;
+				}
 			}
-			return 0;
 		}
-		 catch (Exception e) {
-			
-			e.printStackTrace(System.out);
-			return -1;
-		}
-		finally{
-			session.close();
+		finally {
+			sessions.actionDone();
 		}
 	}
 
@@ -413,36 +401,31 @@ public class postgreClient extends DB {
 		if(invitorID < 0 || inviteeID < 0)
 			return -1;
 		
-		session = sessionFactory.openSession();
+		ConflictRetry.Attempts attempts = retry.start("INV");
 		try {
-			tx = session.beginTransaction();
-
-			Friendship f = new Friendship();
-			f.setInviterid(Integer.toString(invitorID));
-			f.setInviteeid(Integer.toString(inviteeID));
-			f.setValue("1");
-			session.save(f);
-			
-			USERS u = new USERS();
-			u = (USERS) session.get(USERS.class, Integer.toString(inviteeID));
-			u.setPendFriendCnt(u.getPendFriendCnt()+1);
-			session.saveOrUpdate(u);
-			
-//			session.flush();
-//			session.clear();
-			tx.commit();
-//			tx = session.beginTransaction();
-//			System.out.println("invite friend from "+ invitorID+" to "+inviteeID+".");
-//			tx = session.beginTransaction();
-			
-			return 0;
-		}
-			catch (Exception e) {
-			e.printStackTrace(System.out);
-			return -1;
+			while (true) {
+				session = sessions.current();
+				try {
+					tx = policy.begin(session, "INV");
+					FriendshipUpdates.invite(session, mapping, invitorID, inviteeID);
+					policy.commit(tx);
+					attempts.succeeded();
+					return 0;
+				}
+					catch (Exception e) {
+					policy.rollback(tx);
+					if (attempts.retry(e)) {
+						//the failed attempt may have left stale entities in the session
+						session.clear();
+						continue;
+					}
+					e.printStackTrace(System.out);
+					return -1;
+					}
 			}
-		finally{
-			session.close();
+		}
+		finally {
+			sessions.actionDone();
 		}
 	}
 
@@ -453,53 +436,32 @@ public class postgreClient extends DB {
 		if(friendid1 < 0 || friendid2 < 0)
 			return -1;
 		
-		session = sessionFactory.openSession();
+		ConflictRetry.Attempts attempts = retry.start("UNFRIEND");
 		try {
-			tx = session.beginTransaction();
-
-			Criterion t1 = Restrictions.and(Restrictions.eq("inviterid", Integer.toString(friendid1)),
-											Restrictions.eq("inviteeid", Integer.toString(friendid2)));
-			Criterion t2 =Restrictions.and(Restrictions.eq("inviterid", Integer.toString(friendid2)),
-											Restrictions.eq("inviteeid", Integer.toString(friendid1)));
-
-			List<Friendship> obj = (List<Friendship>) session.createCriteria(Friendship.class)
-													.add(Restrictions.and(Restrictions.or(t1, t2),
-																			Restrictions.eq("value", Integer.toString(2)))
-														)
-													.list();
-			
-			for(Friendship f : obj){
-				session.delete("Friendship", f);
-				
-				USERS u = (USERS) session.get(USERS.class, f.getInviterid());
-				u.setConfFriendCnt(u.getConfFriendCnt()-1);
-				session.saveOrUpdate(u);
-				
-				u = (USERS) session.get(USERS.class, f.getInviteeid());
-				u.setConfFriendCnt(u.getConfFriendCnt()-1);
-				session.saveOrUpdate(u);
-
-				tx.commit();
-//				session.flush();
-//				session.clear();
-				
-//				tx = session.beginTransaction();
-//				System.out.println("Deleted friendship of: "+ friendid1+" and "+friendid2+".");
-//				tx = session.beginTransaction();
+			while (true) {
+				session = sessions.current();
+				try {
+					tx = policy.begin(session, "UNFRIEND");
+					FriendshipUpdates.thaw(session, mapping, friendid1, friendid2);
+					policy.commit(tx);
+					attempts.succeeded();
+					return 0;
+				}
+				catch (Exception e) {
+					policy.rollback(tx);
+					if (attempts.retry(e)) {
+						//the failed attempt may have left stale entities in the session
+						session.clear();
+						continue;
+					}
+					System.out.println("Can not Delete friendship of: "+ friendid1+" and "+friendid2+".");
+					e.printStackTrace(System.out);
+					return -1;
+				}
 			}
-			
-
-			return 0;
 		}
-		catch (Exception e) {
-			
-			tx.rollback();
-			System.out.println("Can not Delete friendship of: "+ friendid1+" and "+friendid2+".");
-			e.printStackTrace(System.out);
-			return -1;
-		}
-		finally{
-			session.close();
+		finally {
+			sessions.actionDone();
 		}
 	}
 
@@ -507,130 +469,112 @@ public class postgreClient extends DB {
 	@Override
 	public int viewTopKResources(int requesterID, int profileOwnerID, int k,
 			Vector<HashMap<String, ByteIterator>> result) {
-			session = sessionFactory.openSession();
+		return viewTopKResources(requesterID, profileOwnerID, k, -1, result);
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid,
+			Vector<HashMap<String, ByteIterator>> result) {
+			SharedSessionContract reader = sessions.reader();
 			try {
-				tx = session.beginTransaction();
+				tx = policy.begin(reader, "GETTOPRES");
 				//Do work for 500 msec
 				//Get the current time and compute when work is complete
 	
-				List<RESOURCES> obj = session.createCriteria(RESOURCES.class)
-								.add(Restrictions.eq("walluserid", Integer.toString(profileOwnerID)))
-								.addOrder(Order.desc("rid"))
-								.setMaxResults(k)
-								.list();
+				List<?> obj = TopKResources.fetch(reader, mapping, profileOwnerID, k, beforeRid, false);
 				if (obj.size()>0){
 					int i=0;
-					Map<String, Method> methods = FactoryInsert.getGetterMethods(RESOURCES.class);
-					Set<String> keys = methods.keySet();
 					HashMap<String, ByteIterator> values;
 					while(i<obj.size()){
 						values = new HashMap<String, ByteIterator>();
-						Iterator<String> it = keys.iterator();
-						RESOURCES res = obj.get(i);
-						while(it.hasNext()){
-							String key = it.next();
-							Method m = methods.get(key);
-							Object r = m.invoke(res, null);
-							values.put(key, new ObjectByteIterator(r.toString().getBytes()));
-						}
+						mapping.resourcesAccessor.toResult(obj.get(i), mapping.resourceFields, true, values);
 						result.add(values);
 						i++;
 					}
 				}	
 //				System.out.println("view top "+k+"res of "+profileOwnerID+" and viewed "+result.size());
-				tx.commit();
+				policy.commit(tx);
 				return 0;
 		} catch (Exception e) {
+			policy.rollback(tx);
 			System.out.println(e.toString());
 			return -1;
 		}finally{
-			session.close();
+			sessions.actionDone();
 		}
 	}
 
 	@Override
 	public int viewCommentOnResource(int requesterID, int profileOwnerID,
 			int resourceID, Vector<HashMap<String, ByteIterator>> result) {
+		return viewCommentOnResource(requesterID, profileOwnerID, resourceID, 0, -1, result);
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, int pageSize, int afterMid,
+			Vector<HashMap<String, ByteIterator>> result) {
 		if(profileOwnerID < 0 || requesterID < 0 || resourceID < 0)
 			return -1;
 
-		session = sessionFactory.openSession();
+		SharedSessionContract reader = sessions.reader();
 		try {
-			tx = session.beginTransaction();
-			
-//			System.out.print("VIEW ");
-			List<MANIPULATIONS> obj = session.createCriteria(MANIPULATIONS.class)
-					.add(Restrictions.eq("rid", "'"+resourceID+"'"))
-					.list();
-			int i=0;
-			Map<String, Method> methods = FactoryInsert.getGetterMethods(MANIPULATIONS.class);
-			Set<String> keys = methods.keySet();
-			HashMap<String, ByteIterator> values;
-			while(i<=obj.size()){
-				values = new HashMap<String, ByteIterator>();
-				Iterator<String> it = keys.iterator();
-				MANIPULATIONS m = obj.get(i);
-				while(it.hasNext()){
-					String key = it.next();
-					Method methd = methods.get(key);
-					Object r = methd.invoke(m, null);
-					values.put(key, new ObjectByteIterator(r.toString().getBytes()));						
-				}
-				result.add(values);
-				i++;
-			}
-//			System.out.println("res of "+profileOwnerID+"   ccc"+result.size());
-			tx.commit();
+			tx = policy.begin(reader, "GETRESCOMMENT");
+			CommentPages.fetch(reader, mapping, resourceID, pageSize, afterMid, commentFetchSize, false, result);
+			policy.commit(tx);
 			return 0;
 		}catch (Exception e) {
+			policy.rollback(tx);
 			System.out.println("error in viewCommentOnResource:  "+resourceID);
 			e.printStackTrace(System.out);
 			return -1;
 		}finally{
-			session.close();
+			sessions.actionDone();
 		}
-
 	}
+
 	@Override
 	public int postCommentOnResource(int commentCreatorID, int profileOwnerID,
 			int resourceID, HashMap<String,ByteIterator> commentValues) {
 		if(profileOwnerID < 0 || commentCreatorID < 0 || resourceID < 0)
 			return -1;
-		session = sessionFactory.openSession();
+		ConflictRetry.Attempts attempts = retry.start("POSTCOMMENT");
 		try {
-			tx = session.beginTransaction();
-			System.out.println("posting comment");
-			
-			MANIPULATIONS manip = new MANIPULATIONS();
-			
-			Map<String, Method> methods = FactoryInsert.getSetterMethods(MANIPULATIONS.class);
-			methods.get("mid").invoke(manip, commentValues.get("mid").toString());
-			methods.get("creatorid").invoke(manip, profileOwnerID);
-			methods.get("rid").invoke(manip, resourceID);
-			methods.get("modifierid").invoke(manip, commentCreatorID);
-			methods.get("timestamp").invoke(manip, commentValues.get("timestamp").toString());
-			methods.get("type").invoke(manip, commentValues.get("type").toString());
-			methods.get("content").invoke(manip, commentValues.get("content").toString());
-			
-			session.save(manip);
-			System.out.println("posted comment on "+profileOwnerID+" by "+commentCreatorID);
-			tx.commit();
-			return 0;
-
-		}catch (IllegalAccessException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return -1;
-		} catch (IllegalArgumentException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return -1;
-		} catch (InvocationTargetException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return -1;
-		}finally{
-			session.close();
+			while (true) {
+				session = sessions.current();
+				try {
+					tx = policy.begin(session, "POSTCOMMENT");
+					System.out.println("posting comment");
+			
+					Object manip = mapping.manipulationsAccessor.newInstance();
+			
+					mapping.manipulationsAccessor.set(manip, "mid", commentValues.get("mid"));
+					mapping.manipulationsAccessor.set(manip, "creatorid", profileOwnerID);
+					mapping.manipulationsAccessor.set(manip, "rid", resourceID);
+					mapping.manipulationsAccessor.set(manip, "modifierid", commentCreatorID);
+					mapping.manipulationsAccessor.set(manip, "timestamp", commentValues.get("timestamp"));
+					mapping.manipulationsAccessor.set(manip, "type", commentValues.get("type"));
+					mapping.manipulationsAccessor.set(manip, "content", commentValues.get("content"));
+			
+					session.save(manip);
+					System.out.println("posted comment on "+profileOwnerID+" by "+commentCreatorID);
+					policy.commit(tx);
+					attempts.succeeded();
+					return 0;
+
+				}catch (Exception e) {
+					policy.rollback(tx);
+					if (attempts.retry(e)) {
+						//the failed attempt may have left stale entities in the session
+						session.clear();
+						continue;
+					}
+					e.printStackTrace();
+					return -1;
+				}
+			}
+		}
+		finally {
+			sessions.actionDone();
 		}
 	}
 
@@ -639,27 +583,36 @@ public class postgreClient extends DB {
 			int manipulationID) {
 		if(resourceCreatorID < 0 || manipulationID < 0 || resourceID < 0)
 			return -1;
-		session = sessionFactory.openSession();
+		ConflictRetry.Attempts attempts = retry.start("DELCOMMENT");
 		try {
-			tx = session.beginTransaction();
-			
-			List<MANIPULATIONS> obj= session.createCriteria(MANIPULATIONS.class)
-					.add(Restrictions.and(Restrictions.eq("mid",Integer.toString(manipulationID)),
-							Restrictions.eq("rid", Integer.toString(resourceID))))
-					.list();
-			
-			for (MANIPULATIONS m: obj){
-				session.delete("MANIPULATIONS", m);
-			
-			System.out.println("Deleted comment with ID "+ manipulationID+" on resource "+resourceID+".");
+			while (true) {
+				session = sessions.current();
+				try {
+					tx = policy.begin(session, "DELCOMMENT");
+			
+					int n = session.createQuery("delete from MANIPULATIONS m where m.mid = :mid and m.rid = :rid")
+							.setParameter("mid", mapping.key(manipulationID))
+							.setParameter("rid", mapping.key(resourceID))
+							.executeUpdate();
+					if (n > 0)
+						System.out.println("Deleted comment with ID "+ manipulationID+" on resource "+resourceID+".");
+					policy.commit(tx);
+					attempts.succeeded();
+					return 0;
+				}catch (Exception e) {
+					policy.rollback(tx);
+					if (attempts.retry(e)) {
+						//the failed attempt may have left stale entities in the session
+						session.clear();
+						continue;
+					}
+					e.printStackTrace(System.out);
+					return -1;
+				}
 			}
-			tx.commit();
-			return 0;
-		}catch (Exception e) {
-			e.printStackTrace(System.out);
-			return -1;
-		}finally{
-			session.close();
+		}
+		finally {
+			sessions.actionDone();
 		}
 	}
 
@@ -667,38 +620,71 @@ public class postgreClient extends DB {
 
 	@Override
 	public HashMap<String, String> getInitialStats() {
+		if(!InitialStats.isExact(getProperties())){
+			HashMap<String, String> stats = catalogStats();
+			if(stats != null)
+				return stats;
+		}
+		return exactStats();
+	}
+
+	//the stats recorded at the end of the load, null if there are none
+	private HashMap<String, String> catalogStats() {
+		session = sessions.current();
+		try {
+			tx = session.beginTransaction();
+			HashMap<String, String> stats = InitialStats.catalog(session);
+			if (stats != null && SchemaBuilder.isPartitioned(getProperties()))
+				SchemaBuilder.partitionStats(session, stats);
+			tx.commit();
+			return stats;
+		}
+		catch(Exception e){
+			policy.rollback(tx);
+			e.printStackTrace(System.out);
+			return null;
+		}
+		finally{
+			sessions.actionDone();
+		}
+	}
+
+	private HashMap<String, String> exactStats() {
 		HashMap<String, String> stats = new HashMap<String, String>();
-		session = sessionFactory.openSession();
+		session = sessions.current();
 		try {
 			tx = session.beginTransaction();
 
 			
-			Criteria c= session.createCriteria(USERS.class)
+			Criteria c= session.createCriteria(mapping.users)
 							.setProjection(Projections.count("userid"));
 			
 			Long usercount = (Long) c.list().get(0);
 			usercount = usercount>0 ? usercount : 0;
 			stats.put("usercount", Long.toString(usercount));
 
-			Criteria c1 = session.createCriteria(USERS.class)
+			Criteria c1 = session.createCriteria(mapping.users)
 					.setProjection(Projections.min("userid"));
 			
-			String offset = (String) c1.list().get(0);
+			Object offset = c1.list().get(0);
 			//get resources per user
 	
-			USERS u = new USERS();
-			u = (USERS) session.get(USERS.class, offset);
-			stats.put("avgfriendsperuser",Integer.toString(u.getConfFriendCnt()));
+			Object u = session.get(mapping.users, (Serializable) offset);
+			stats.put("avgfriendsperuser",Integer.toString(mapping.confFriendCount(u)));
 	
-			stats.put("resourcesperuser",Integer.toString(u.getResCnt()));
+			stats.put("resourcesperuser",Integer.toString(mapping.resourceCount(u)));
 	
-			stats.put("avgpendingperuser",Integer.toString(u.getPendFriendCnt()));
+			stats.put("avgpendingperuser",Integer.toString(mapping.pendFriendCount(u)));
+			if (SchemaBuilder.isPartitioned(getProperties()))
+				SchemaBuilder.partitionStats(session, stats);
+			tx.commit();
 		}
 		catch(Exception e){
+			policy.rollback(tx);
 			e.printStackTrace();
 		}
 		finally{
-			session.close();
+			sessions.actionDone();
 		}
 		return stats;
 	}
@@ -708,35 +694,19 @@ public class postgreClient extends DB {
 		if(memberA < 0 || memberB < 0)
 			return -1;
 
-		session = sessionFactory.openSession();
+		session = sessions.current();
 		try {
 			tx = session.beginTransaction();
-			Friendship f = new Friendship();
-			f.setInviterid(Integer.toString(memberA));
-			f.setInviteeid(Integer.toString(memberB));
-			f.setValue("2");
-			session.save(f);
-			
-			USERS u = new USERS();
-			u = (USERS) session.get(USERS.class, Integer.toString(memberA));
-			u.setConfFriendCnt(u.getConfFriendCnt()+1);
-			session.save(u);
-			
-			u= null;
-			
-			u = (USERS) session.get(USERS.class, Integer.toString(memberB));
-			u.setConfFriendCnt(u.getConfFriendCnt()+1);
-			session.save(u);
-			
+			FriendshipUpdates.create(session, mapping, memberA, memberB);
 			tx.commit();
 		}
 		catch(Exception e){
-			//tx.rollback();
+			tx.rollback();
 			System.out.println("exception in create friendship: "+ memberA + "to"+ memberB+". Below:");
 			e.printStackTrace();
 		}
 		finally{
-			session.close();
+			sessions.actionDone();
 		}
 		return 0;
 	}
@@ -748,7 +718,13 @@ public class postgreClient extends DB {
 
 	@Override
 	public void createSchema(Properties props) {
-
+		session = sessions.current();
+		try {
+			SchemaBuilder.createSchema(session, props, mapping);
+		}
+		finally{
+			sessions.actionDone();
+		}
 	}
 
 	@Override
@@ -757,37 +733,55 @@ public class postgreClient extends DB {
 		return 0;
 	}
 
+	@Override
+	public int exportFriendships(ExportSink sink) {
+		return export(TableExport.FRIENDSHIP, sink);
+	}
+
+	@Override
+	public int exportResources(ExportSink sink) {
+		return export(TableExport.RESOURCES, sink);
+	}
+
+	@Override
+	public int exportComments(ExportSink sink) {
+		return export(TableExport.MANIPULATIONS, sink);
+	}
+
+	//one scan on the connection of the session, the entities are not loaded
+	private int export(int table, ExportSink sink) {
+		session = sessions.current();
+		try {
+			tx = session.beginTransaction();
+			TableExport.export(session, table, exportFetchSize, sink);
+			tx.commit();
+			return 0;
+		}
+		catch(Exception e){
+			policy.rollback(tx);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+		finally{
+			sessions.actionDone();
+		}
+	}
+
 	@Override
 	public int queryPendingFriendshipIds(int memberID,
 			Vector<Integer> pendingIds) {
 		
 		if(memberID < 0) return -1;
-		session = sessionFactory.openSession();
+		SharedSessionContract reader = sessions.reader();
 		try {
-			tx = session.beginTransaction();
-
-			Criterion t1 = Restrictions.eq("inviterid", Integer.toString(memberID));
-			Criterion t2 = Restrictions.eq("inviteeid", Integer.toString(memberID));
-			Criterion t3 = Restrictions.eq("inviterid", Integer.toString(1));
-			
-			List<Friendship> l= (List<Friendship>)session.createCriteria(Friendship.class)
-												.add(Restrictions.and(
-																Restrictions.or(t1,t2),t3))
-												.list();
-//			System.out.println("query pending friends:"+ memberID);
-//			System.out.println("query pending friends:"+ l.size());
-			if (l.size()>0){
-				Iterator<Friendship> it = l.iterator();
-				while(it.hasNext()){
-					Friendship f = it.next();
-					pendingIds.add(Integer.parseInt(f.getInviteeid()));
-				}
-			}
-			tx.commit();
+			tx = policy.begin(reader, "PENDINGIDS");
+			pendingIds.addAll(friendFetcher.pendingInviterIds(reader, memberID));
+			policy.commit(tx);
 		}catch(Exception e){
+			policy.rollback(tx);
 			
 		}finally{
-			session.close();
+			sessions.actionDone();
 		}
 		return 0;
 
@@ -799,30 +793,16 @@ public class postgreClient extends DB {
 		if(memberID < 0) return -1;
 
 //		System.out.println("query confirmed friends:"+ memberID);
-		session = sessionFactory.openSession();
+		SharedSessionContract reader = sessions.reader();
 		try {
-			tx = session.beginTransaction();
-
-			Criterion t1 = Restrictions.eq("inviterid", Integer.toString(memberID));
-			Criterion t2 = Restrictions.eq("inviteeid", Integer.toString(memberID));
-			Criterion t3 = Restrictions.eq("inviterid", Integer.toString(1));
-			
-			List<Friendship> l= (List<Friendship>)session.createCriteria(Friendship.class)
-												.add(Restrictions.and(
-																Restrictions.or(t1,t2),t3))
-												.list();
-//			System.out.println("query confirmed friends:"+ l.size());
-			if (l.size()>0){
-				Iterator<Friendship> it = l.iterator();
-				while(it.hasNext()){
-					Friendship f = it.next();
-					confirmedIds.add(Integer.parseInt(f.getInviteeid()));
-				}
-			}tx.commit();
+			tx = policy.begin(reader, "CONFIRMEDIDS");
+			confirmedIds.addAll(friendFetcher.confirmedFriendIds(reader, memberID));
+			policy.commit(tx);
 		}catch(Exception e){
+			policy.rollback(tx);
 			
 		}finally{
-			session.close();
+			sessions.actionDone();
 		}
 		
 		return 0;
@@ -0,0 +1,484 @@
+package postgreHibernateClient;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.DBException;
+import edu.usc.bg.base.ObjectByteIterator;
+
+/**
+ * postgreJdbcClient with every member stored as one JSONB document in MEMBERS (userid, doc),
+ * the document modeling of the BG schema next to the relational one of the other clients:
+ *
+ * {"profile": {"userid": "1", "username": ..., "pic": base64, "tpic": base64},
+ *  "friends": ["2", "7"], "pending": ["5"],
+ *  "topk": [{"rid": "12", "creatorid": "1", "walluserid": "1", "type": ..., "body": ..., "doc": ...}, ...],
+ *  "friendcount": 2, "pendingcount": 1, "resourcecount": 3}
+ *
+ * viewProfile is the fetch of one document, viewTopKResources too as long as k is at most
+ * doctopk, the number of the most recent resource headers a document keeps. Larger k and the
+ * paged variant read RESOURCES. The friend lists fetch the documents of the ids in the owner's
+ * document in one statement. Every write changes the documents in place with jsonb_set, the
+ * id arrays and their counts in one UPDATE per document.
+ *
+ * The resources and comments stay in RESOURCES and MANIPULATIONS. MEMBERS has a GIN index on
+ * the documents (jsonb_path_ops) for containment queries such as the members listing a friend,
+ * doc @> '{"friends": ["7"]}', and an expression index on the friend count, for queries over
+ * the documents outside of the BG actions.
+ *
+ * Needs schemastrategy=tuned. A single-row load writes the documents directly, the bulk load copies
+ * into USERS, Friendship and RESOURCES as before and finalizeLoad builds the documents from
+ * them, this client does not read USERS and Friendship after that.
+ */
+public class postgreDocClient extends postgreJdbcClient {
+
+	public static final String DOC_TOP_K_PROPERTY = "doctopk";
+	public static final String DOC_TOP_K_PROPERTY_DEFAULT = "5";
+
+	private static final String[] HEADER_NAMES = {"rid", "creatorid", "walluserid", "type", "body", "doc"};
+
+	private static final String INVITE = "UPDATE MEMBERS SET doc = jsonb_set(jsonb_set(doc, '{pending}', (doc->'pending') || to_jsonb(?::text)),"
+			+ " '{pendingcount}', to_jsonb((doc->>'pendingcount')::int4 + 1)) WHERE userid = ? AND NOT (doc->'pending' @> to_jsonb(?::text))";
+	//the invitee, the inviter only if the invitation was pending
+	private static final String ACCEPT = "UPDATE MEMBERS SET doc = jsonb_set(jsonb_set(jsonb_set(jsonb_set(doc,"
+			+ " '{pending}', (doc->'pending') - ?::text), '{pendingcount}', to_jsonb((doc->>'pendingcount')::int4 - 1)),"
+			+ " '{friends}', (doc->'friends') || to_jsonb(?::text)), '{friendcount}', to_jsonb((doc->>'friendcount')::int4 + 1))"
+			+ " WHERE userid = ? AND doc->'pending' @> to_jsonb(?::text)";
+	private static final String REJECT = "UPDATE MEMBERS SET doc = jsonb_set(jsonb_set(doc, '{pending}', (doc->'pending') - ?::text),"
+			+ " '{pendingcount}', to_jsonb((doc->>'pendingcount')::int4 - 1)) WHERE userid = ? AND doc->'pending' @> to_jsonb(?::text)";
+	private static final String ADD_FRIEND = "UPDATE MEMBERS SET doc = jsonb_set(jsonb_set(doc, '{friends}', (doc->'friends') || to_jsonb(?::text)),"
+			+ " '{friendcount}', to_jsonb((doc->>'friendcount')::int4 + 1)) WHERE userid = ? AND NOT (doc->'friends' @> to_jsonb(?::text))";
+	private static final String REMOVE_FRIEND = "UPDATE MEMBERS SET doc = jsonb_set(jsonb_set(doc, '{friends}', (doc->'friends') - ?::text),"
+			+ " '{friendcount}', to_jsonb((doc->>'friendcount')::int4 - 1)) WHERE userid = ? AND doc->'friends' @> to_jsonb(?::text)";
+
+	private static final String ADD_RESOURCE = "UPDATE MEMBERS SET doc = jsonb_set(doc, '{resourcecount}',"
+			+ " to_jsonb((doc->>'resourcecount')::int4 + 1)) WHERE userid = ?";
+	//the new header merged into the most recent ones
+	private static final String ADD_HEADER = "UPDATE MEMBERS SET doc = jsonb_set(doc, '{topk}',"
+			+ " (SELECT coalesce(jsonb_agg(t.r ORDER BY (t.r->>'rid')::int4 DESC), '[]') FROM (SELECT e.r FROM jsonb_array_elements((doc->'topk')"
+			+ " || jsonb_build_array(jsonb_build_object('rid', ?::text, 'creatorid', ?::text, 'walluserid', ?::text, 'type', ?::text,"
+			+ " 'body', ?::text, 'doc', ?::text))) AS e(r) ORDER BY (e.r->>'rid')::int4 DESC LIMIT ?) t)) WHERE userid = ?";
+
+	private static final String PROFILE = "SELECT doc->>'friendcount', doc->>'resourcecount', doc->>'pendingcount', %s FROM MEMBERS WHERE userid = ?";
+	private static final String TOP_K = "SELECT t.r->>'rid', t.r->>'creatorid', t.r->>'walluserid', t.r->>'type', t.r->>'body', t.r->>'doc'"
+			+ " FROM MEMBERS m, jsonb_array_elements(m.doc->'topk') WITH ORDINALITY AS t(r, n) WHERE m.userid = ? ORDER BY t.n LIMIT ?";
+	private static final String LIST = "SELECT %s FROM MEMBERS f WHERE f.userid IN"
+			+ " (SELECT jsonb_array_elements_text(doc->'%s')%s FROM MEMBERS WHERE userid = ?)";
+	private static final String CONFIRMED_IDS = "SELECT jsonb_array_elements_text(doc->'friends') FROM MEMBERS WHERE userid = ?";
+	private static final String PENDING_IDS = "SELECT jsonb_array_elements_text(doc->'pending') FROM MEMBERS WHERE userid = ?";
+
+	//the columns of the Friendship export, a confirmed friendship from the side of the smaller id
+	private static final String EXPORT = "SELECT p, userid::text, 1 FROM MEMBERS, jsonb_array_elements_text(doc->'pending') AS p"
+			+ " UNION ALL SELECT userid::text, f, 2 FROM MEMBERS, jsonb_array_elements_text(doc->'friends') AS f"
+			+ " WHERE CAST(userid AS int4) < CAST(f AS int4)";
+
+	private static final String USER_STATS = "SELECT count(*), min(userid) FROM MEMBERS";
+	private static final String COUNTERS = "SELECT doc->>'friendcount', doc->>'resourcecount', doc->>'pendingcount' FROM MEMBERS WHERE userid = ?";
+
+	private int topK;
+	//the cast of a document id to the key type of MEMBERS
+	private String keyCast;
+	//the profile properties of the documents, the USERS columns without the counters
+	private String[] profileNames;
+
+	@Override
+	public boolean init() throws DBException {
+		if (initialized)
+			return true;
+		super.init();
+		topK = Integer.parseInt(getProperties().getProperty(DOC_TOP_K_PROPERTY, DOC_TOP_K_PROPERTY_DEFAULT));
+		keyCast = mapping.intKeyed ? "::int4" : "";
+		profileNames = names(mapping.usersAccessor.idsExcept("confFriendCnt", "pendFriendCnt", "resCnt"));
+		return true;
+	}
+
+	//the select list of the profile properties of the documents of alias
+	private static String profile(String alias, String[] names) {
+		String doc = alias == null ? "doc" : alias + ".doc";
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < names.length; i++) {
+			String path = doc + "#>>'{profile," + names[i] + "}'";
+			sb.append(i == 0 ? "" : ", ").append(isImage(names[i]) ? "decode(" + path + ", 'base64')" : path);
+		}
+		return sb.toString();
+	}
+
+	//the statement on the document of member with other as the first and last parameter
+	private int updateDoc(String sql, int other, int member) throws SQLException {
+		PreparedStatement ps = prepare(sql);
+		ps.setString(1, Integer.toString(other));
+		setKey(ps, 2, member);
+		ps.setString(3, Integer.toString(other));
+		return ps.executeUpdate();
+	}
+
+	private String buildDocuments() {
+		StringBuilder profile = new StringBuilder();
+		for (int i = 0; i < profileNames.length; i++) {
+			String n = profileNames[i];
+			profile.append(i == 0 ? "" : ", ").append('\'').append(n).append("', ")
+					.append(isImage(n) ? "encode(u." + n + ", 'base64')" : "u." + n + "::text");
+		}
+		return "INSERT INTO MEMBERS (userid, doc) SELECT u.userid, jsonb_build_object('profile', jsonb_build_object(" + profile + "),"
+				+ " 'friends', coalesce((SELECT jsonb_agg(s.id) FROM (SELECT f.inviteeid::text AS id FROM Friendship f"
+				+ " WHERE f.value = '2' AND f.inviterid = u.userid UNION ALL SELECT f.inviterid::text FROM Friendship f"
+				+ " WHERE f.value = '2' AND f.inviteeid = u.userid) s), '[]'),"
+				+ " 'pending', coalesce((SELECT jsonb_agg(f.inviterid::text) FROM Friendship f WHERE f.value = '1' AND f.inviteeid = u.userid), '[]'),"
+				+ " 'topk', coalesce((SELECT jsonb_agg(jsonb_build_object('rid', r.rid::text, 'creatorid', r.creatorid::text,"
+				+ " 'walluserid', r.walluserid::text, 'type', r.type, 'body', r.body, 'doc', r.doc) ORDER BY CAST(r.rid AS int4) DESC)"
+				+ " FROM (SELECT * FROM RESOURCES WHERE walluserid = u.userid ORDER BY CAST(rid AS int4) DESC LIMIT " + topK + ") r), '[]'),"
+				+ " 'friendcount', u.confFriendCnt, 'pendingcount', u.pendFriendCnt, 'resourcecount', u.resCnt)"
+				+ " FROM USERS u ON CONFLICT (userid) DO NOTHING";
+	}
+
+	@Override
+	public void createSchema(Properties props) {
+		super.createSchema(props);
+		if (!SchemaBuilder.isTuned(props))
+			return;
+		try {
+			Vector<String> ddl = new Vector<String>();
+			ddl.add("DROP TABLE IF EXISTS MEMBERS");
+			ddl.add("CREATE TABLE MEMBERS (userid " + (mapping.intKeyed ? "int4" : "varchar(255)") + " NOT NULL, doc jsonb NOT NULL,"
+					+ " PRIMARY KEY (userid))");
+			ddl.add("CREATE INDEX members_doc ON MEMBERS USING gin (doc jsonb_path_ops)");
+			ddl.add("CREATE INDEX members_friendcount ON MEMBERS (((doc->>'friendcount')::int4))");
+			SchemaBuilder.execute(conn, ddl);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+	}
+
+	@Override
+	public void finalizeLoad(Properties props) {
+		super.finalizeLoad(props);
+		//a single-row load wrote the documents
+		if (!BulkLoader.isBatched(props))
+			return;
+		try {
+			Vector<String> ddl = new Vector<String>();
+			ddl.add(buildDocuments());
+			SchemaBuilder.execute(conn, ddl);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		//again, from the documents
+		recordStats();
+	}
+
+	@Override
+	public int insertEntity(String entitySet, String entityPK, HashMap<String, ByteIterator> values, boolean insertImage) {
+		if (!entitySet.equalsIgnoreCase("users"))
+			return super.insertEntity(entitySet, entityPK, values, insertImage);
+		try {
+			Vector<String> names = new Vector<String>();
+			StringBuilder profile = new StringBuilder();
+			for (int i = 0; i < profileNames.length; i++) {
+				String n = profileNames[i];
+				if (!insertImage && isImage(n))
+					continue;
+				profile.append(names.isEmpty() ? "" : ", ").append('\'').append(n).append("', ")
+						.append(isImage(n) ? "encode(?, 'base64')" : "?::text");
+				names.add(n);
+			}
+			PreparedStatement ps = prepare("INSERT INTO MEMBERS (userid, doc) VALUES (?, jsonb_build_object('profile', jsonb_build_object("
+					+ profile + "), 'friends', '[]'::jsonb, 'pending', '[]'::jsonb, 'topk', '[]'::jsonb,"
+					+ " 'friendcount', 0, 'pendingcount', 0, 'resourcecount', 0))");
+			setKey(ps, 1, entityPK);
+			for (int i = 0; i < names.size(); i++) {
+				String n = names.get(i);
+				if (n.equals("userid"))
+					ps.setString(i + 2, entityPK.trim());
+				else if (isImage(n))
+					ps.setBytes(i + 2, values.containsKey(n) ? values.get(n).toArray() : null);
+				else
+					ps.setString(i + 2, value(values, n));
+			}
+			ps.executeUpdate();
+			commit();
+			return 0;
+		} catch (Exception e) {
+			rollback();
+			System.out.println("error in insertEntity of " + entitySet + " " + entityPK + ": " + e.getMessage());
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	protected void resourceCreated(String creatorID, String rid, HashMap<String, ByteIterator> values) throws SQLException {
+		PreparedStatement ps = prepare(ADD_RESOURCE);
+		setKey(ps, 1, creatorID);
+		ps.executeUpdate();
+		String wall = value(values, "walluserid");
+		if (wall == null)
+			return;
+		ps = prepare(ADD_HEADER);
+		ps.setString(1, rid.trim());
+		for (int i = 1; i < HEADER_NAMES.length; i++)
+			ps.setString(i + 1, value(values, HEADER_NAMES[i]));
+		ps.setInt(HEADER_NAMES.length + 1, topK);
+		setKey(ps, HEADER_NAMES.length + 2, wall);
+		ps.executeUpdate();
+	}
+
+	@Override
+	public int viewProfile(int requesterID, int profileOwnerID, HashMap<String, ByteIterator> result, boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.profile(insertImage));
+			PreparedStatement ps = prepare(String.format(PROFILE, profile(null, names)));
+			setKey(ps, 1, profileOwnerID);
+			ResultSet rs = ps.executeQuery();
+			try {
+				if (!rs.next()) {
+					commit();
+					return -1;
+				}
+				result.put("friendcount", new ObjectByteIterator(rs.getString(1).getBytes()));
+				result.put("resourcecount", new ObjectByteIterator(rs.getString(2).getBytes()));
+				if (profileOwnerID == requesterID)
+					result.put("pendingcount", new ObjectByteIterator(rs.getString(3).getBytes()));
+				toResult(rs, 3, names, result);
+			} finally {
+				rs.close();
+			}
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println(e.toString());
+			return -1;
+		}
+	}
+
+	@Override
+	public int listFriends(int requesterID, int profileOwnerID, Set<String> fields, Vector<HashMap<String, ByteIterator>> result,
+			boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.listEntry(fields, insertImage));
+			PreparedStatement ps = prepare(String.format(LIST, profile("f", names), "friends", keyCast));
+			setKey(ps, 1, profileOwnerID);
+			readRows(ps, names, result);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("list friend: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewFriendReq(int profileOwnerID, Vector<HashMap<String, ByteIterator>> results, boolean insertImage, boolean testMode) {
+		if (profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.listEntry(null, insertImage));
+			PreparedStatement ps = prepare(String.format(LIST, profile("f", names), "pending", keyCast));
+			setKey(ps, 1, profileOwnerID);
+			readRows(ps, names, results);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("view friend reqs: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid, Vector<HashMap<String, ByteIterator>> result) {
+		//the document only has the most recent headers
+		if (k > topK || beforeRid >= 0)
+			return super.viewTopKResources(requesterID, profileOwnerID, k, beforeRid, result);
+		if (requesterID < 0 || profileOwnerID < 0 || k < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(TOP_K);
+			setKey(ps, 1, profileOwnerID);
+			ps.setInt(2, k);
+			readRows(ps, HEADER_NAMES, result);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println(e.toString());
+			return -1;
+		}
+	}
+
+	@Override
+	public int acceptFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(ACCEPT);
+			ps.setString(1, Integer.toString(inviterID));
+			ps.setString(2, Integer.toString(inviterID));
+			setKey(ps, 3, inviteeID);
+			ps.setString(4, Integer.toString(inviterID));
+			if (ps.executeUpdate() > 0)
+				updateDoc(ADD_FRIEND, inviteeID, inviterID);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int rejectFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			updateDoc(REJECT, inviterID, inviteeID);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int inviteFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			updateDoc(INVITE, inviterID, inviteeID);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int CreateFriendship(int memberA, int memberB) {
+		if (memberA < 0 || memberB < 0)
+			return -1;
+		try {
+			updateDoc(ADD_FRIEND, memberB, memberA);
+			updateDoc(ADD_FRIEND, memberA, memberB);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("exception in create friendship: " + memberA + "to" + memberB + ". Below:");
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int thawFriendship(int friendid1, int friendid2) {
+		if (friendid1 < 0 || friendid2 < 0)
+			return -1;
+		try {
+			updateDoc(REMOVE_FRIEND, friendid2, friendid1);
+			updateDoc(REMOVE_FRIEND, friendid1, friendid2);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("Can not Delete friendship of: " + friendid1 + " and " + friendid2 + ".");
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int exportFriendships(ExportSink sink) {
+		return export(TableExport.FRIENDSHIP, EXPORT, sink);
+	}
+
+	@Override
+	public int queryPendingFriendshipIds(int memberID, Vector<Integer> pendingIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(PENDING_IDS);
+			setKey(ps, 1, memberID);
+			readIds(ps, pendingIds);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int queryConfirmedFriendshipIds(int memberID, Vector<Integer> confirmedIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(CONFIRMED_IDS);
+			setKey(ps, 1, memberID);
+			readIds(ps, confirmedIds);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	protected HashMap<String, String> exactStats() {
+		HashMap<String, String> stats = new HashMap<String, String>();
+		try {
+			PreparedStatement ps = prepare(USER_STATS);
+			String offset = null;
+			ResultSet rs = ps.executeQuery();
+			try {
+				rs.next();
+				stats.put("usercount", Long.toString(rs.getLong(1)));
+				offset = rs.getString(2);
+			} finally {
+				rs.close();
+			}
+			if (offset != null) {
+				ps = prepare(COUNTERS);
+				setKey(ps, 1, offset);
+				rs = ps.executeQuery();
+				try {
+					if (rs.next()) {
+						stats.put("avgfriendsperuser", rs.getString(1));
+						stats.put("resourcesperuser", rs.getString(2));
+						stats.put("avgpendingperuser", rs.getString(3));
+					}
+				} finally {
+					rs.close();
+				}
+			}
+			if (SchemaBuilder.isPartitioned(getProperties()))
+				SchemaBuilder.partitionStats(conn, stats);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return stats;
+	}
+}
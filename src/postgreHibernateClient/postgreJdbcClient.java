@@ -0,0 +1,821 @@
+package postgreHibernateClient;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.DB;
+import edu.usc.bg.base.DBException;
+import edu.usc.bg.base.ObjectByteIterator;
+import edu.usc.bg.measurements.RoundTripCounter;
+
+/**
+ * The BG actions on plain JDBC, a baseline without an ORM for postgreHibClient. It uses
+ * the same tables, keytype and schemastrategy as the Hibernate clients and connects with
+ * the url, user and password of their configuration (see SessionFactoryRegistry.settings),
+ * so the same workload file can be run with -db postgreHibernateClient.postgreHibClient and
+ * with -db postgreHibernateClient.postgreJdbcClient.
+ *
+ * Every DB instance, i.e. every BG thread, holds one connection and keeps its prepared
+ * statements for the lifetime of the connection. With jdbcpreparethreshold=1 the driver
+ * prepares them on the server at their first execution, later executions only bind the
+ * parameters. Keys are bound as int4 or varchar per keytype, rows are copied from the
+ * ResultSet straight into the BG result maps.
+ *
+ * Each action runs in its own transaction, the friendship changes and their counter updates
+ * are the statements of FriendshipUpdates. createSchema needs schemastrategy=tuned, there
+ * is no hbm2ddl without Hibernate.
+ */
+public class postgreJdbcClient extends DB {
+
+	public static final String PREPARE_THRESHOLD_PROPERTY = "jdbcpreparethreshold";
+	public static final String PREPARE_THRESHOLD_PROPERTY_DEFAULT = "1";
+
+	static final String ADD_PENDING = "UPDATE USERS SET pendFriendCnt = pendFriendCnt + ? WHERE userid = ?";
+	static final String ADD_CONFIRMED = "UPDATE USERS SET confFriendCnt = confFriendCnt + ? WHERE userid = ?";
+	static final String PENDING_TO_CONFIRMED = "UPDATE USERS SET pendFriendCnt = pendFriendCnt - 1,"
+			+ " confFriendCnt = confFriendCnt + 1 WHERE userid = ?";
+	static final String ADD_RESOURCES = "UPDATE USERS SET resCnt = resCnt + ? WHERE userid = ?";
+
+	static final String INSERT_FRIENDSHIP = "INSERT INTO Friendship (value, inviterid, inviteeid) VALUES (?, ?, ?)";
+	static final String CONFIRM = "UPDATE Friendship SET value = '2' WHERE inviterid = ? AND inviteeid = ? AND value = '1'";
+	static final String DELETE_PENDING = "DELETE FROM Friendship WHERE inviterid = ? AND inviteeid = ? AND value = '1'";
+	static final String DELETE_CONFIRMED = "DELETE FROM Friendship WHERE value = '2'"
+			+ " AND ((inviterid = ? AND inviteeid = ?) OR (inviterid = ? AND inviteeid = ?))";
+
+	//one half per side of the edge, each can use a partial index of the tuned schema
+	private static final String CONFIRMED_JOIN = " FROM Friendship f JOIN USERS u ON u.userid = f.inviteeid"
+			+ " WHERE f.value = '2' AND f.inviterid = ?"
+			+ " UNION ALL SELECT %s FROM Friendship f JOIN USERS u ON u.userid = f.inviterid"
+			+ " WHERE f.value = '2' AND f.inviteeid = ?";
+	private static final String PENDING_JOIN = " FROM Friendship f JOIN USERS u ON u.userid = f.inviterid"
+			+ " WHERE f.value = '1' AND f.inviteeid = ?";
+	static final String CONFIRMED_IDS = "SELECT inviteeid FROM Friendship WHERE value = '2' AND inviterid = ?"
+			+ " UNION ALL SELECT inviterid FROM Friendship WHERE value = '2' AND inviteeid = ?";
+	static final String PENDING_IDS = "SELECT inviterid FROM Friendship WHERE value = '1' AND inviteeid = ?";
+
+	private static final String[] RESOURCE_NAMES = {"rid", "creatorid", "walluserid", "type", "body", "doc"};
+	private static final String RESOURCE_COLUMNS = select(null, RESOURCE_NAMES);
+	private static final String INT_TOP_K = "SELECT " + RESOURCE_COLUMNS + " FROM RESOURCES WHERE walluserid = ?"
+			+ " ORDER BY rid DESC LIMIT ?";
+	private static final String INT_TOP_K_BEFORE = "SELECT " + RESOURCE_COLUMNS + " FROM RESOURCES WHERE walluserid = ?"
+			+ " AND rid < ? ORDER BY rid DESC LIMIT ?";
+	private static final String STRING_TOP_K = "SELECT " + RESOURCE_COLUMNS + " FROM RESOURCES WHERE walluserid = ?"
+			+ " ORDER BY CAST(rid AS int4) DESC LIMIT ?";
+	private static final String STRING_TOP_K_BEFORE = "SELECT " + RESOURCE_COLUMNS + " FROM RESOURCES WHERE walluserid = ?"
+			+ " AND CAST(rid AS int4) < ? ORDER BY CAST(rid AS int4) DESC LIMIT ?";
+	private static final String CREATED_RESOURCES = "SELECT " + RESOURCE_COLUMNS + " FROM RESOURCES WHERE creatorid = ?";
+
+	private static final String[] MANIPULATION_NAMES = {"mid", "creatorid", "rid", "modifierid", "timestamp", "type", "content"};
+	private static final String MANIPULATION_COLUMNS = select(null, MANIPULATION_NAMES);
+	//see CommentPages for the order of varchar mids
+	private static final String INT_COMMENTS = "SELECT " + MANIPULATION_COLUMNS + " FROM MANIPULATIONS WHERE rid = ?"
+			+ " AND mid > ? ORDER BY mid LIMIT ?";
+	private static final String STRING_COMMENTS = "SELECT " + MANIPULATION_COLUMNS + " FROM MANIPULATIONS WHERE rid = ?"
+			+ " AND CAST(mid AS int4) > ? ORDER BY CAST(mid AS int4) LIMIT ?";
+	private static final String INSERT_COMMENT = "INSERT INTO MANIPULATIONS (" + MANIPULATION_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+	private static final String DELETE_COMMENT = "DELETE FROM MANIPULATIONS WHERE mid = ? AND rid = ?";
+
+	private static final String USER_STATS = "SELECT count(*), min(userid) FROM USERS";
+	private static final String COUNTERS = "SELECT confFriendCnt, resCnt, pendFriendCnt FROM USERS WHERE userid = ?";
+
+	//columns holding a BG id, int4 with keytype=int
+	private static final String[] KEY_COLUMNS = {"userid", "rid", "creatorid", "walluserid", "mid", "modifierid"};
+
+	boolean initialized = false;
+	protected Connection conn;
+	//prepared statements of conn by SQL text
+	private HashMap<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+	protected EntityMapping mapping;
+	protected ProfileProjection profiles;
+	private int commentFetchSize;
+	private int exportFetchSize;
+
+	public boolean init() throws DBException {
+		if (initialized)
+			return true;
+		try {
+			mapping = EntityMapping.get(getProperties());
+			profiles = new ProfileProjection(mapping);
+			commentFetchSize = CommentPages.fetchSize(getProperties());
+			exportFetchSize = TableExport.fetchSize(getProperties());
+			Properties settings = SessionFactoryRegistry.settings(getProperties());
+			Class.forName(settings.getProperty("hibernate.connection.driver_class", "org.postgresql.Driver"));
+			Properties info = new Properties();
+			info.setProperty("user", settings.getProperty("hibernate.connection.username"));
+			info.setProperty("password", settings.getProperty("hibernate.connection.password"));
+			info.setProperty("prepareThreshold", getProperties().getProperty(PREPARE_THRESHOLD_PROPERTY, PREPARE_THRESHOLD_PROPERTY_DEFAULT));
+			conn = RoundTripCounter.wrap(DriverManager.getConnection(settings.getProperty("hibernate.connection.url"), info));
+			conn.setAutoCommit(false);
+		} catch (Exception e) {
+			System.out.println("Failed to connect: " + e.getMessage());
+			throw new DBException(e);
+		}
+		initialized = true;
+		return true;
+	}
+
+	public void cleanup(boolean warmup) throws DBException {
+		if (!initialized)
+			return;
+		try {
+			for (PreparedStatement ps : statements.values())
+				ps.close();
+			statements.clear();
+			conn.close();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		initialized = false;
+	}
+
+	//the statement for the SQL, prepared on first use
+	protected PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement ps = statements.get(sql);
+		if (ps == null) {
+			ps = conn.prepareStatement(sql);
+			statements.put(sql, ps);
+		}
+		return ps;
+	}
+
+	protected void setKey(PreparedStatement ps, int index, int id) throws SQLException {
+		if (mapping.intKeyed)
+			ps.setInt(index, id);
+		else
+			ps.setString(index, Integer.toString(id));
+	}
+
+	protected void setKey(PreparedStatement ps, int index, String id) throws SQLException {
+		if (mapping.intKeyed)
+			ps.setInt(index, Integer.parseInt(id.trim()));
+		else
+			ps.setString(index, id);
+	}
+
+	private static boolean isKey(String column) {
+		for (int i = 0; i < KEY_COLUMNS.length; i++)
+			if (KEY_COLUMNS[i].equals(column))
+				return true;
+		return false;
+	}
+
+	protected static boolean isImage(String column) {
+		return column.equals("pic") || column.equals("tpic");
+	}
+
+	//a subclass may run with auto commit
+	protected void commit() throws SQLException {
+		if (!conn.getAutoCommit())
+			conn.commit();
+	}
+
+	protected void rollback() {
+		try {
+			if (!conn.getAutoCommit())
+				conn.rollback();
+		} catch (SQLException e) {
+			System.out.println("rollback failed: " + e.getMessage());
+		}
+	}
+
+	protected int update(String sql, int id, int delta) throws SQLException {
+		PreparedStatement ps = prepare(sql);
+		ps.setInt(1, delta);
+		setKey(ps, 2, id);
+		return ps.executeUpdate();
+	}
+
+	//copies the named columns of the current row, from column offset+1 on, null values are skipped
+	protected static void toResult(ResultSet rs, int offset, String[] names, HashMap<String, ByteIterator> result) throws SQLException {
+		for (int i = 0; i < names.length; i++) {
+			byte[] v = isImage(names[i]) ? rs.getBytes(offset + i + 1) : toBytes(rs.getString(offset + i + 1));
+			if (v != null)
+				result.put(names[i], new ObjectByteIterator(v));
+		}
+	}
+
+	private static byte[] toBytes(String s) {
+		return s == null ? null : s.getBytes();
+	}
+
+	protected String[] names(int[] columns) {
+		String[] names = new String[columns.length];
+		for (int i = 0; i < columns.length; i++)
+			names[i] = mapping.usersAccessor.name(columns[i]);
+		return names;
+	}
+
+	protected static String select(String alias, String[] names) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < names.length; i++)
+			sb.append(i == 0 ? "" : ", ").append(alias == null ? "" : alias + ".").append(names[i]);
+		return sb.toString();
+	}
+
+	protected static void readRows(PreparedStatement ps, String[] names, Vector<HashMap<String, ByteIterator>> result) throws SQLException {
+		ResultSet rs = ps.executeQuery();
+		try {
+			while (rs.next()) {
+				HashMap<String, ByteIterator> values = new HashMap<String, ByteIterator>();
+				toResult(rs, 0, names, values);
+				result.add(values);
+			}
+		} finally {
+			rs.close();
+		}
+	}
+
+	protected static void readIds(PreparedStatement ps, Vector<Integer> ids) throws SQLException {
+		ResultSet rs = ps.executeQuery();
+		try {
+			while (rs.next())
+				ids.add(Integer.parseInt(rs.getString(1).trim()));
+		} finally {
+			rs.close();
+		}
+	}
+
+	@Override
+	public int insertEntity(String entitySet, String entityPK, HashMap<String, ByteIterator> values, boolean insertImage) {
+		try {
+			EntityAccessor accessor = mapping.accessor(entitySet);
+			boolean users = entitySet.equalsIgnoreCase("users");
+			String pk = users ? "userid" : "rid";
+			Vector<String> columns = new Vector<String>();
+			Vector<ByteIterator> params = new Vector<ByteIterator>();
+			StringBuilder sql = new StringBuilder("INSERT INTO ").append(entitySet.toUpperCase()).append(" (").append(pk);
+			StringBuilder marks = new StringBuilder("?");
+			for (Map.Entry<String, ByteIterator> e : values.entrySet()) {
+				String c = e.getKey();
+				if (c.equals(pk) || accessor.id(c) < 0 || (!insertImage && isImage(c)))
+					continue;
+				columns.add(c);
+				params.add(e.getValue());
+				sql.append(", ").append(c);
+				marks.append(", ?");
+			}
+			//hbm2ddl does not give the counters a default
+			if (users)
+				sql.append(", confFriendCnt, pendFriendCnt, resCnt) VALUES (").append(marks).append(", 0, 0, 0)");
+			else
+				sql.append(") VALUES (").append(marks).append(')');
+
+			PreparedStatement ps = prepare(sql.toString());
+			setKey(ps, 1, entityPK);
+			String creator = null;
+			for (int i = 0; i < columns.size(); i++) {
+				String c = columns.get(i);
+				if (isImage(c))
+					ps.setBytes(i + 2, params.get(i).toArray());
+				else if (isKey(c))
+					setKey(ps, i + 2, params.get(i).toString());
+				else
+					ps.setString(i + 2, params.get(i).toString());
+				if (c.equals("creatorid"))
+					creator = params.get(i).toString();
+			}
+			ps.executeUpdate();
+			if (!users && creator != null)
+				resourceCreated(creator, entityPK, values);
+			commit();
+			return 0;
+		} catch (Exception e) {
+			rollback();
+			System.out.println("error in insertEntity of " + entitySet + " " + entityPK + ": " + e.getMessage());
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	//counts the new resource of its creator, in the transaction of the insert
+	protected void resourceCreated(String creatorID, String rid, HashMap<String, ByteIterator> values) throws SQLException {
+		PreparedStatement ps = prepare(ADD_RESOURCES);
+		ps.setInt(1, 1);
+		setKey(ps, 2, creatorID);
+		ps.executeUpdate();
+	}
+
+	@Override
+	public int insertEntities(String entitySet, Vector<String> entityPKs, Vector<HashMap<String, ByteIterator>> values, boolean insertImage) {
+		try {
+			//the creators' resource counts are computed in finalizeLoad
+			BulkLoader.copyEntities(conn, entitySet, entityPKs, values, insertImage);
+			commit();
+			return 0;
+		} catch (Exception e) {
+			rollback();
+			System.out.println("error in bulk load of " + entitySet + ": " + e.getMessage());
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int insertFriendships(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed) {
+		try {
+			BulkLoader.copyFriendships(conn, inviterIDs, inviteeIDs, confirmed);
+			commit();
+			return 0;
+		} catch (Exception e) {
+			rollback();
+			System.out.println("error in bulk load of friendships: " + e.getMessage());
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public void finalizeLoad(Properties props) {
+		if (BulkLoader.isBatched(props)) {
+			try {
+				int n = updateCounters();
+				commit();
+				System.out.println("Updated the counters of " + n + " members");
+			} catch (Exception e) {
+				rollback();
+				e.printStackTrace(System.out);
+			}
+		}
+		recordStats();
+	}
+
+	//the counters after a batched load, returns the number of members changed
+	protected int updateCounters() throws SQLException {
+		return BulkLoader.updateCounters(conn);
+	}
+
+	//keeps the exact stats in BG_METADATA for statsmode=catalog
+	protected void recordStats() {
+		HashMap<String, String> stats = exactStats();
+		try {
+			InitialStats.record(conn, stats);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+	}
+
+	@Override
+	public int viewProfile(int requesterID, int profileOwnerID, HashMap<String, ByteIterator> result, boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.profile(insertImage));
+			PreparedStatement ps = prepare("SELECT u.confFriendCnt, u.resCnt, u.pendFriendCnt, " + select("u", names)
+					+ " FROM USERS u WHERE u.userid = ?");
+			setKey(ps, 1, profileOwnerID);
+			ResultSet rs = ps.executeQuery();
+			try {
+				if (!rs.next()) {
+					commit();
+					return -1;
+				}
+				result.put("friendcount", new ObjectByteIterator(Integer.toString(rs.getInt(1)).getBytes()));
+				result.put("resourcecount", new ObjectByteIterator(Integer.toString(rs.getInt(2)).getBytes()));
+				if (profileOwnerID == requesterID)
+					result.put("pendingcount", new ObjectByteIterator(Integer.toString(rs.getInt(3)).getBytes()));
+				toResult(rs, 3, names, result);
+			} finally {
+				rs.close();
+			}
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println(e.toString());
+			return -1;
+		}
+	}
+
+	@Override
+	public int listFriends(int requesterID, int profileOwnerID, Set<String> fields, Vector<HashMap<String, ByteIterator>> result,
+			boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.listEntry(fields, insertImage));
+			String columns = select("u", names);
+			PreparedStatement ps = prepare("SELECT " + columns + String.format(CONFIRMED_JOIN, columns));
+			setKey(ps, 1, profileOwnerID);
+			setKey(ps, 2, profileOwnerID);
+			readRows(ps, names, result);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("list friend: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewFriendReq(int profileOwnerID, Vector<HashMap<String, ByteIterator>> results, boolean insertImage, boolean testMode) {
+		if (profileOwnerID < 0)
+			return -1;
+		try {
+			String[] names = names(profiles.listEntry(null, insertImage));
+			PreparedStatement ps = prepare("SELECT " + select("u", names) + PENDING_JOIN);
+			setKey(ps, 1, profileOwnerID);
+			readRows(ps, names, results);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("view friend reqs: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int acceptFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(CONFIRM);
+			setKey(ps, 1, inviterID);
+			setKey(ps, 2, inviteeID);
+			int n = ps.executeUpdate();
+			if (n > 0) {
+				ps = prepare(PENDING_TO_CONFIRMED);
+				setKey(ps, 1, inviteeID);
+				ps.executeUpdate();
+				update(ADD_CONFIRMED, inviterID, n);
+			}
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int rejectFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(DELETE_PENDING);
+			setKey(ps, 1, inviterID);
+			setKey(ps, 2, inviteeID);
+			int n = ps.executeUpdate();
+			if (n > 0)
+				update(ADD_PENDING, inviteeID, -n);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	protected void insertFriendship(int value, int inviterID, int inviteeID) throws SQLException {
+		PreparedStatement ps = prepare(INSERT_FRIENDSHIP);
+		if (mapping.intKeyed)
+			ps.setShort(1, (short) value);
+		else
+			ps.setString(1, Integer.toString(value));
+		setKey(ps, 2, inviterID);
+		setKey(ps, 3, inviteeID);
+		ps.executeUpdate();
+	}
+
+	@Override
+	public int inviteFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		try {
+			insertFriendship(1, inviterID, inviteeID);
+			update(ADD_PENDING, inviteeID, 1);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int CreateFriendship(int memberA, int memberB) {
+		if (memberA < 0 || memberB < 0)
+			return -1;
+		try {
+			insertFriendship(2, memberA, memberB);
+			update(ADD_CONFIRMED, memberA, 1);
+			update(ADD_CONFIRMED, memberB, 1);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("exception in create friendship: " + memberA + "to" + memberB + ". Below:");
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int thawFriendship(int friendid1, int friendid2) {
+		if (friendid1 < 0 || friendid2 < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(DELETE_CONFIRMED);
+			setKey(ps, 1, friendid1);
+			setKey(ps, 2, friendid2);
+			setKey(ps, 3, friendid2);
+			setKey(ps, 4, friendid1);
+			int n = ps.executeUpdate();
+			if (n > 0) {
+				update(ADD_CONFIRMED, friendid1, -n);
+				update(ADD_CONFIRMED, friendid2, -n);
+			}
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("Can not Delete friendship of: " + friendid1 + " and " + friendid2 + ".");
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, Vector<HashMap<String, ByteIterator>> result) {
+		return viewTopKResources(requesterID, profileOwnerID, k, -1, result);
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid, Vector<HashMap<String, ByteIterator>> result) {
+		if (requesterID < 0 || profileOwnerID < 0 || k < 0)
+			return -1;
+		try {
+			//see TopKResources for the order of varchar rids
+			PreparedStatement ps;
+			if (mapping.intKeyed)
+				ps = prepare(beforeRid < 0 ? INT_TOP_K : INT_TOP_K_BEFORE);
+			else
+				ps = prepare(beforeRid < 0 ? STRING_TOP_K : STRING_TOP_K_BEFORE);
+			int i = 1;
+			setKey(ps, i++, profileOwnerID);
+			if (beforeRid >= 0)
+				ps.setInt(i++, beforeRid);
+			ps.setInt(i, k);
+			readRows(ps, RESOURCE_NAMES, result);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println(e.toString());
+			return -1;
+		}
+	}
+
+	@Override
+	public int getCreatedResources(int creatorID, Vector<HashMap<String, ByteIterator>> result) {
+		if (creatorID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(CREATED_RESOURCES);
+			setKey(ps, 1, creatorID);
+			readRows(ps, RESOURCE_NAMES, result);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, Vector<HashMap<String, ByteIterator>> result) {
+		return viewCommentOnResource(requesterID, profileOwnerID, resourceID, 0, -1, result);
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, int pageSize, int afterMid,
+			Vector<HashMap<String, ByteIterator>> result) {
+		if (profileOwnerID < 0 || requesterID < 0 || resourceID < 0)
+			return -1;
+		try {
+			//the driver fetches commentfetchsize rows at a time, the whole result in auto commit mode
+			PreparedStatement ps = prepare(mapping.intKeyed ? INT_COMMENTS : STRING_COMMENTS);
+			ps.setFetchSize(commentFetchSize);
+			setKey(ps, 1, resourceID);
+			ps.setInt(2, afterMid);
+			//LIMIT NULL is no limit
+			if (pageSize > 0)
+				ps.setInt(3, pageSize);
+			else
+				ps.setNull(3, Types.INTEGER);
+			readRows(ps, MANIPULATION_NAMES, result);
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("error in viewCommentOnResource:  " + resourceID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int postCommentOnResource(int commentCreatorID, int profileOwnerID, int resourceID, HashMap<String, ByteIterator> commentValues) {
+		if (profileOwnerID < 0 || commentCreatorID < 0 || resourceID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(INSERT_COMMENT);
+			setKey(ps, 1, commentValues.get("mid").toString());
+			setKey(ps, 2, profileOwnerID);
+			setKey(ps, 3, resourceID);
+			setKey(ps, 4, commentCreatorID);
+			ps.setString(5, value(commentValues, "timestamp"));
+			ps.setString(6, value(commentValues, "type"));
+			ps.setString(7, value(commentValues, "content"));
+			ps.executeUpdate();
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	protected static String value(HashMap<String, ByteIterator> values, String name) {
+		ByteIterator v = values.get(name);
+		return v == null ? null : v.toString();
+	}
+
+	@Override
+	public int delCommentOnResource(int resourceCreatorID, int resourceID, int manipulationID) {
+		if (resourceCreatorID < 0 || manipulationID < 0 || resourceID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(DELETE_COMMENT);
+			setKey(ps, 1, manipulationID);
+			setKey(ps, 2, resourceID);
+			ps.executeUpdate();
+			commit();
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public HashMap<String, String> getInitialStats() {
+		if (!InitialStats.isExact(getProperties())) {
+			try {
+				HashMap<String, String> stats = InitialStats.catalog(conn);
+				if (stats != null && SchemaBuilder.isPartitioned(getProperties()))
+					SchemaBuilder.partitionStats(conn, stats);
+				commit();
+				if (stats != null)
+					return stats;
+			} catch (SQLException e) {
+				rollback();
+				e.printStackTrace(System.out);
+			}
+		}
+		return exactStats();
+	}
+
+	protected HashMap<String, String> exactStats() {
+		HashMap<String, String> stats = new HashMap<String, String>();
+		try {
+			PreparedStatement ps = prepare(USER_STATS);
+			String offset = null;
+			ResultSet rs = ps.executeQuery();
+			try {
+				rs.next();
+				stats.put("usercount", Long.toString(rs.getLong(1)));
+				offset = rs.getString(2);
+			} finally {
+				rs.close();
+			}
+			if (offset != null) {
+				ps = prepare(COUNTERS);
+				setKey(ps, 1, offset);
+				rs = ps.executeQuery();
+				try {
+					if (rs.next()) {
+						stats.put("avgfriendsperuser", Integer.toString(rs.getInt(1)));
+						stats.put("resourcesperuser", Integer.toString(rs.getInt(2)));
+						stats.put("avgpendingperuser", Integer.toString(rs.getInt(3)));
+					}
+				} finally {
+					rs.close();
+				}
+			}
+			if (SchemaBuilder.isPartitioned(getProperties()))
+				SchemaBuilder.partitionStats(conn, stats);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return stats;
+	}
+
+	@Override
+	public void createSchema(Properties props) {
+		if (!SchemaBuilder.isTuned(props)) {
+			System.out.println("postgreJdbcClient creates the schema with " + SchemaBuilder.SCHEMA_STRATEGY_PROPERTY
+					+ "=tuned only, use a Hibernate client for hbm2ddl");
+			return;
+		}
+		try {
+			SchemaBuilder.execute(conn, SchemaBuilder.tunedSchema(props, mapping));
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+	}
+
+	@Override
+	public int exportFriendships(ExportSink sink) {
+		return export(TableExport.FRIENDSHIP, TableExport.query(TableExport.FRIENDSHIP), sink);
+	}
+
+	@Override
+	public int exportResources(ExportSink sink) {
+		return export(TableExport.RESOURCES, TableExport.query(TableExport.RESOURCES), sink);
+	}
+
+	@Override
+	public int exportComments(ExportSink sink) {
+		return export(TableExport.MANIPULATIONS, TableExport.query(TableExport.MANIPULATIONS), sink);
+	}
+
+	protected int export(int table, String sql, ExportSink sink) {
+		try {
+			//a subclass may run with auto commit, the driver would read the whole table at once
+			boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			try {
+				long n = TableExport.export(conn, table, sql, exportFetchSize, sink);
+				conn.commit();
+				System.out.println("Exported " + n + " rows of " + sql);
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+			return 0;
+		} catch (SQLException e) {
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int queryPendingFriendshipIds(int memberID, Vector<Integer> pendingIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(PENDING_IDS);
+			setKey(ps, 1, memberID);
+			readIds(ps, pendingIds);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int queryConfirmedFriendshipIds(int memberID, Vector<Integer> confirmedIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(CONFIRMED_IDS);
+			setKey(ps, 1, memberID);
+			setKey(ps, 2, memberID);
+			readIds(ps, confirmedIds);
+			commit();
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,337 @@
+package postgreHibernateClient;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.DBException;
+import edu.usc.bg.base.ObjectByteIterator;
+
+/**
+ * postgreJdbcClient with every BG action as a single call of its PL/pgSQL function, see
+ * StoredProcedures. The connection runs in auto commit mode, the call is the transaction,
+ * so an action takes one round trip where postgreHibClient takes one per statement plus the
+ * commit. Run with roundtrips=true to see the round trips per action in the final stats.
+ *
+ * createSchema installs the functions after the tuned schema, with schemastrategy=hbm2ddl
+ * on the tables a Hibernate client created. The bulk load, the user inserts and
+ * getInitialStats are the statements of postgreJdbcClient.
+ */
+public class postgreProcClient extends postgreJdbcClient {
+
+	private static final String INVITE = "SELECT bg_invite(?, ?)";
+	private static final String CREATE_FRIENDSHIP = "SELECT bg_create_friendship(?, ?)";
+	private static final String ACCEPT = "SELECT bg_accept(?, ?)";
+	private static final String REJECT = "SELECT bg_reject(?, ?)";
+	private static final String THAW = "SELECT bg_thaw(?, ?)";
+	private static final String INSERT_RESOURCE = "SELECT bg_insert_resource(?, ?, ?, ?, ?, ?)";
+	private static final String POST_COMMENT = "SELECT bg_post_comment(?, ?, ?, ?, ?, ?, ?)";
+	private static final String DEL_COMMENT = "SELECT bg_del_comment(?, ?)";
+	private static final String VIEW_PROFILE = "SELECT * FROM bg_view_profile(?, ?)";
+	private static final String LIST_FRIENDS = "SELECT * FROM bg_list_friends(?, ?)";
+	private static final String FRIEND_REQUESTS = "SELECT * FROM bg_friend_requests(?, ?)";
+	private static final String TOP_K = "SELECT * FROM bg_top_k(?, ?, ?)";
+	private static final String CREATED_RESOURCES = "SELECT * FROM bg_created_resources(?)";
+	private static final String COMMENTS = "SELECT * FROM bg_comments(?)";
+	private static final String PENDING_IDS = "SELECT * FROM bg_pending_ids(?)";
+	private static final String CONFIRMED_IDS = "SELECT * FROM bg_confirmed_ids(?)";
+
+	private static final String[] RESOURCE_NAMES = {"rid", "creatorid", "walluserid", "type", "body", "doc"};
+	private static final String[] MANIPULATION_NAMES = {"mid", "creatorid", "rid", "modifierid", "timestamp", "type", "content"};
+
+	public boolean init() throws DBException {
+		if (initialized)
+			return true;
+		super.init();
+		try {
+			conn.setAutoCommit(true);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+		return true;
+	}
+
+	//runs a function that returns a single row
+	private void call(PreparedStatement ps) throws SQLException {
+		ps.executeQuery().close();
+	}
+
+	private int call(String sql, int a, int b) {
+		try {
+			PreparedStatement ps = prepare(sql);
+			setKey(ps, 1, a);
+			setKey(ps, 2, b);
+			call(ps);
+			return 0;
+		} catch (SQLException e) {
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	//copies the named columns of the current row, null values are skipped
+	private static void toResult(ResultSet rs, String[] names, HashMap<String, ByteIterator> result) throws SQLException {
+		for (int i = 0; i < names.length; i++) {
+			byte[] v = isImage(names[i]) ? rs.getBytes(names[i]) : bytes(rs.getString(names[i]));
+			if (v != null)
+				result.put(names[i], new ObjectByteIterator(v));
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s == null ? null : s.getBytes();
+	}
+
+	private void readProfiles(PreparedStatement ps, int[] columns, Vector<HashMap<String, ByteIterator>> result) throws SQLException {
+		String[] names = names(columns);
+		ResultSet rs = ps.executeQuery();
+		try {
+			while (rs.next()) {
+				HashMap<String, ByteIterator> values = new HashMap<String, ByteIterator>();
+				toResult(rs, names, values);
+				result.add(values);
+			}
+		} finally {
+			rs.close();
+		}
+	}
+
+	@Override
+	public int insertEntity(String entitySet, String entityPK, HashMap<String, ByteIterator> values, boolean insertImage) {
+		//a user is a single INSERT
+		if (!entitySet.equalsIgnoreCase("resources"))
+			return super.insertEntity(entitySet, entityPK, values, insertImage);
+		try {
+			PreparedStatement ps = prepare(INSERT_RESOURCE);
+			setKey(ps, 1, entityPK);
+			setKey(ps, 2, value(values, "creatorid"));
+			setKey(ps, 3, value(values, "walluserid"));
+			ps.setString(4, value(values, "type"));
+			ps.setString(5, value(values, "body"));
+			ps.setString(6, value(values, "doc"));
+			call(ps);
+			return 0;
+		} catch (SQLException e) {
+			System.out.println("error in insertEntity of " + entitySet + " " + entityPK + ": " + e.getMessage());
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewProfile(int requesterID, int profileOwnerID, HashMap<String, ByteIterator> result, boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(VIEW_PROFILE);
+			setKey(ps, 1, profileOwnerID);
+			ps.setBoolean(2, insertImage);
+			ResultSet rs = ps.executeQuery();
+			try {
+				if (!rs.next())
+					return -1;
+				result.put("friendcount", new ObjectByteIterator(Integer.toString(rs.getInt(1)).getBytes()));
+				result.put("resourcecount", new ObjectByteIterator(Integer.toString(rs.getInt(2)).getBytes()));
+				if (profileOwnerID == requesterID)
+					result.put("pendingcount", new ObjectByteIterator(Integer.toString(rs.getInt(3)).getBytes()));
+				toResult(rs, names(profiles.profile(insertImage)), result);
+			} finally {
+				rs.close();
+			}
+			return 0;
+		} catch (SQLException e) {
+			System.out.println(e.toString());
+			return -1;
+		}
+	}
+
+	@Override
+	public int listFriends(int requesterID, int profileOwnerID, Set<String> fields, Vector<HashMap<String, ByteIterator>> result,
+			boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(LIST_FRIENDS);
+			setKey(ps, 1, profileOwnerID);
+			ps.setBoolean(2, insertImage);
+			readProfiles(ps, profiles.listEntry(fields, insertImage), result);
+			return 0;
+		} catch (SQLException e) {
+			System.out.println("list friend: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewFriendReq(int profileOwnerID, Vector<HashMap<String, ByteIterator>> results, boolean insertImage, boolean testMode) {
+		if (profileOwnerID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(FRIEND_REQUESTS);
+			setKey(ps, 1, profileOwnerID);
+			ps.setBoolean(2, insertImage);
+			readProfiles(ps, profiles.listEntry(null, insertImage), results);
+			return 0;
+		} catch (SQLException e) {
+			System.out.println("view friend reqs: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int acceptFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		return call(ACCEPT, inviterID, inviteeID);
+	}
+
+	@Override
+	public int rejectFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		return call(REJECT, inviterID, inviteeID);
+	}
+
+	@Override
+	public int inviteFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		return call(INVITE, inviterID, inviteeID);
+	}
+
+	@Override
+	public int CreateFriendship(int memberA, int memberB) {
+		if (memberA < 0 || memberB < 0)
+			return -1;
+		call(CREATE_FRIENDSHIP, memberA, memberB);
+		return 0;
+	}
+
+	@Override
+	public int thawFriendship(int friendid1, int friendid2) {
+		if (friendid1 < 0 || friendid2 < 0)
+			return -1;
+		return call(THAW, friendid1, friendid2);
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid, Vector<HashMap<String, ByteIterator>> result) {
+		if (requesterID < 0 || profileOwnerID < 0 || k < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(TOP_K);
+			setKey(ps, 1, profileOwnerID);
+			ps.setInt(2, k);
+			ps.setInt(3, beforeRid);
+			readRows(ps, RESOURCE_NAMES, result);
+			return 0;
+		} catch (SQLException e) {
+			System.out.println(e.toString());
+			return -1;
+		}
+	}
+
+	@Override
+	public int getCreatedResources(int creatorID, Vector<HashMap<String, ByteIterator>> result) {
+		if (creatorID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(CREATED_RESOURCES);
+			setKey(ps, 1, creatorID);
+			readRows(ps, RESOURCE_NAMES, result);
+			return 0;
+		} catch (SQLException e) {
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, Vector<HashMap<String, ByteIterator>> result) {
+		if (profileOwnerID < 0 || requesterID < 0 || resourceID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(COMMENTS);
+			setKey(ps, 1, resourceID);
+			readRows(ps, MANIPULATION_NAMES, result);
+			return 0;
+		} catch (SQLException e) {
+			System.out.println("error in viewCommentOnResource:  " + resourceID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int postCommentOnResource(int commentCreatorID, int profileOwnerID, int resourceID, HashMap<String, ByteIterator> commentValues) {
+		if (profileOwnerID < 0 || commentCreatorID < 0 || resourceID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(POST_COMMENT);
+			setKey(ps, 1, commentValues.get("mid").toString());
+			setKey(ps, 2, profileOwnerID);
+			setKey(ps, 3, resourceID);
+			setKey(ps, 4, commentCreatorID);
+			ps.setString(5, value(commentValues, "timestamp"));
+			ps.setString(6, value(commentValues, "type"));
+			ps.setString(7, value(commentValues, "content"));
+			call(ps);
+			return 0;
+		} catch (SQLException e) {
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int delCommentOnResource(int resourceCreatorID, int resourceID, int manipulationID) {
+		if (resourceCreatorID < 0 || manipulationID < 0 || resourceID < 0)
+			return -1;
+		return call(DEL_COMMENT, manipulationID, resourceID);
+	}
+
+	@Override
+	public int queryPendingFriendshipIds(int memberID, Vector<Integer> pendingIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(PENDING_IDS);
+			setKey(ps, 1, memberID);
+			readIds(ps, pendingIds);
+		} catch (SQLException e) {
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int queryConfirmedFriendshipIds(int memberID, Vector<Integer> confirmedIds) {
+		if (memberID < 0)
+			return -1;
+		try {
+			PreparedStatement ps = prepare(CONFIRMED_IDS);
+			setKey(ps, 1, memberID);
+			readIds(ps, confirmedIds);
+		} catch (SQLException e) {
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public void createSchema(Properties props) {
+		super.createSchema(props);
+		try {
+			SchemaBuilder.execute(conn, StoredProcedures.ddl(mapping));
+		} catch (SQLException e) {
+			e.printStackTrace(System.out);
+		}
+	}
+}
@@ -0,0 +1,715 @@
+package postgreHibernateClient;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.usc.bg.base.ByteIterator;
+import edu.usc.bg.base.DB;
+import edu.usc.bg.base.DBException;
+import edu.usc.bg.base.ObjectByteIterator;
+import edu.usc.bg.measurements.MyMeasurement;
+
+/**
+ * The BG actions on N PostgreSQL databases, the shards, listed with shardurls=<url>,<url>,...
+ * in the order of their shard numbers. Every shard has the tables of the tuned schema, the user
+ * and password are those of the Hibernate configuration as for postgreJdbcClient.
+ *
+ * The ShardRouter named by shardrouter (HashShardRouter by default) places every member on a
+ * shard. The shard of a member holds its USERS row, the RESOURCES posted on its wall and their
+ * MANIPULATIONS, and every friendship of the member. A friendship of members on two shards is
+ * stored on both, so the friend ids of a member are always read from one shard, the profiles of
+ * the friends are then read with one statement per shard they are on.
+ *
+ * The comment actions name a resource by its id together with a member that need not be its wall,
+ * e.g. its creator or the commentor, so they go to the shard of the resource, found by its id on
+ * the shards in shard order the first time and remembered, resources are never moved or deleted.
+ *
+ * A write whose members are on one shard is a local transaction. A friendship write across two
+ * shards runs its statements on both in shard order and commits with two phase commit, PREPARE
+ * TRANSACTION on both shards, then COMMIT PREPARED. The shards need max_prepared_transactions > 0.
+ * Taking the shards in the same order avoids deadlocks across shards that no single server could
+ * detect. If a COMMIT PREPARED fails the transaction stays prepared on that shard, its id is
+ * printed and counted in SHARDS.indoubt. SHARDS.local and SHARDS.crossshard count the writes.
+ *
+ * Each DB instance holds one postgreJdbcClient, i.e. one connection, per shard, and delegates the
+ * actions of a single member to the client of its shard.
+ */
+public class postgreShardedClient extends DB {
+
+	public static final String SHARD_URLS_PROPERTY = "shardurls";
+	public static final String SHARD_ROUTER_PROPERTY = "shardrouter";
+	public static final String SHARD_ROUTER_PROPERTY_DEFAULT = "postgreHibernateClient.HashShardRouter";
+
+	private static final String USERS_BY_IDS = " FROM USERS u WHERE u.userid = ANY(?)";
+	private static final String RESOURCE_EXISTS = "SELECT 1 FROM RESOURCES WHERE rid = ?";
+	private static final String COUNT_RESOURCES = "SELECT creatorid, count(*) FROM RESOURCES GROUP BY creatorid";
+	private static final String SET_RESOURCES = "UPDATE USERS SET resCnt = ? WHERE userid = ?";
+
+	//the shard number of every resource seen by this client
+	private static final ConcurrentHashMap<Integer, Integer> resourceShards = new ConcurrentHashMap<Integer, Integer>();
+
+	//the ids of the prepared transactions are unique per server, the client processes tell theirs apart by RUN
+	private static final String RUN = Long.toString(System.currentTimeMillis(), 36);
+	private static final AtomicLong transactions = new AtomicLong();
+
+	boolean initialized = false;
+	private Vector<postgreJdbcClient> shards = new Vector<postgreJdbcClient>();
+	private ShardRouter router;
+	private EntityMapping mapping;
+	private ProfileProjection profiles;
+
+	public boolean init() throws DBException {
+		if (initialized)
+			return true;
+		String[] urls = getProperties().getProperty(SHARD_URLS_PROPERTY, "").split(",");
+		try {
+			mapping = EntityMapping.get(getProperties());
+			profiles = new ProfileProjection(mapping);
+			for (int i = 0; i < urls.length; i++) {
+				if (urls[i].trim().length() == 0)
+					continue;
+				Properties p = new Properties();
+				p.putAll(getProperties());
+				p.setProperty("hibernate.connection.url", urls[i].trim());
+				postgreJdbcClient shard = new postgreJdbcClient();
+				shard.setProperties(p);
+				shard.init();
+				shards.add(shard);
+			}
+			if (shards.size() == 0)
+				throw new DBException("No shards, list their urls with " + SHARD_URLS_PROPERTY);
+			router = (ShardRouter) Class.forName(getProperties().getProperty(SHARD_ROUTER_PROPERTY, SHARD_ROUTER_PROPERTY_DEFAULT))
+					.getDeclaredConstructor().newInstance();
+			router.init(getProperties(), shards.size());
+		} catch (DBException e) {
+			cleanup(false);
+			throw e;
+		} catch (Exception e) {
+			cleanup(false);
+			throw new DBException(e);
+		}
+		System.out.println("Sharded over " + shards.size() + " databases with " + router.getClass().getName());
+		initialized = true;
+		return true;
+	}
+
+	public void cleanup(boolean warmup) throws DBException {
+		for (postgreJdbcClient shard : shards)
+			shard.cleanup(warmup);
+		shards.clear();
+		initialized = false;
+	}
+
+	private postgreJdbcClient shard(int memberID) {
+		return shards.get(router.shard(memberID));
+	}
+
+	private postgreJdbcClient shard(String memberID) {
+		return shard(Integer.parseInt(memberID.trim()));
+	}
+
+	/**
+	 * The shard of the resource, which holds its comments, null if no shard has it.
+	 */
+	private postgreJdbcClient resourceShard(int resourceID) throws SQLException {
+		Integer s = resourceShards.get(resourceID);
+		for (int i = 0; s == null && i < shards.size(); i++) {
+			postgreJdbcClient shard = shards.get(i);
+			PreparedStatement ps = shard.prepare(RESOURCE_EXISTS);
+			shard.setKey(ps, 1, resourceID);
+			ResultSet rs = ps.executeQuery();
+			if (rs.next())
+				s = i;
+			rs.close();
+			shard.commit();
+		}
+		if (s == null)
+			return null;
+		resourceShards.put(resourceID, s);
+		return shards.get(s);
+	}
+
+	//the shards of two members in shard order, the order a write takes their locks in
+	private postgreJdbcClient[] shards(int memberA, int memberB) {
+		int a = router.shard(memberA), b = router.shard(memberB);
+		if (a == b)
+			return new postgreJdbcClient[] { shards.get(a) };
+		return new postgreJdbcClient[] { shards.get(Math.min(a, b)), shards.get(Math.max(a, b)) };
+	}
+
+	/**
+	 * Commits the transaction on the shards, with two phase commit if there are two.
+	 */
+	private void commit(postgreJdbcClient[] involved) throws SQLException {
+		if (involved.length == 1) {
+			involved[0].commit();
+			MyMeasurement.incrementCounter("SHARDS.local", 1);
+			return;
+		}
+		MyMeasurement.incrementCounter("SHARDS.crossshard", 1);
+		String gid = "bg_" + RUN + "_" + transactions.incrementAndGet();
+		int prepared = 0;
+		try {
+			for (; prepared < involved.length; prepared++)
+				execute(involved[prepared].conn, "PREPARE TRANSACTION '" + gid(gid, involved[prepared]) + "'");
+		} catch (SQLException e) {
+			for (int i = 0; i < involved.length; i++) {
+				if (i < prepared)
+					finishPrepared(involved[i], "ROLLBACK PREPARED", gid);
+				else
+					involved[i].rollback();
+			}
+			throw e;
+		}
+		//every shard voted to commit, from here on the transaction is committed
+		for (int i = 0; i < involved.length; i++)
+			finishPrepared(involved[i], "COMMIT PREPARED", gid);
+	}
+
+	private String gid(String gid, postgreJdbcClient shard) {
+		//the shards may be databases of one server
+		return gid + "_" + shards.indexOf(shard);
+	}
+
+	private void finishPrepared(postgreJdbcClient shard, String command, String gid) {
+		try {
+			//COMMIT PREPARED and ROLLBACK PREPARED cannot run inside a transaction
+			shard.conn.setAutoCommit(true);
+			try {
+				execute(shard.conn, command + " '" + gid(gid, shard) + "'");
+			} finally {
+				shard.conn.setAutoCommit(false);
+			}
+		} catch (SQLException e) {
+			MyMeasurement.incrementCounter("SHARDS.indoubt", 1);
+			System.out.println(command + " of prepared transaction " + gid(gid, shard) + " failed, it is left in doubt: " + e.getMessage());
+		}
+	}
+
+	private static void execute(Connection conn, String sql) throws SQLException {
+		Statement st = conn.createStatement();
+		try {
+			st.execute(sql);
+		} finally {
+			st.close();
+		}
+	}
+
+	private void rollback() {
+		for (postgreJdbcClient shard : shards)
+			shard.rollback();
+	}
+
+	//reads a value without consuming it for the insert
+	private static String peek(HashMap<String, ByteIterator> values, String name) {
+		ByteIterator v = values.get(name);
+		if (v == null)
+			return null;
+		String s = v.toString();
+		if (v instanceof ObjectByteIterator)
+			((ObjectByteIterator) v).resetOffset();
+		else
+			values.put(name, new ObjectByteIterator(s.getBytes()));
+		return s;
+	}
+
+	//the member whose shard holds the entity, resources are placed by their wall
+	private String owner(String entitySet, String entityPK, HashMap<String, ByteIterator> values) {
+		return entitySet.equalsIgnoreCase("users") ? entityPK : peek(values, "walluserid");
+	}
+
+	@Override
+	public int insertEntity(String entitySet, String entityPK, HashMap<String, ByteIterator> values, boolean insertImage) {
+		String creator = entitySet.equalsIgnoreCase("resources") ? peek(values, "creatorid") : null;
+		postgreJdbcClient home = shard(owner(entitySet, entityPK, values));
+		int res = home.insertEntity(entitySet, entityPK, values, insertImage);
+		if (res == 0 && creator != null)
+			resourceShards.put(Integer.parseInt(entityPK.trim()), shards.indexOf(home));
+		if (res != 0 || creator == null || shard(creator) == home)
+			return res;
+		//the resource count is on the shard of the creator, the load does not need it atomic
+		postgreJdbcClient s = shard(creator);
+		try {
+			PreparedStatement ps = s.prepare(postgreJdbcClient.ADD_RESOURCES);
+			ps.setInt(1, 1);
+			s.setKey(ps, 2, creator);
+			ps.executeUpdate();
+			s.commit();
+			return 0;
+		} catch (SQLException e) {
+			s.rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int insertEntities(String entitySet, Vector<String> entityPKs, Vector<HashMap<String, ByteIterator>> values, boolean insertImage) {
+		HashMap<Integer, Vector<String>> pks = new HashMap<Integer, Vector<String>>();
+		HashMap<Integer, Vector<HashMap<String, ByteIterator>>> rows = new HashMap<Integer, Vector<HashMap<String, ByteIterator>>>();
+		for (int i = 0; i < entityPKs.size(); i++) {
+			int s = router.shard(Integer.parseInt(owner(entitySet, entityPKs.get(i), values.get(i)).trim()));
+			if (!pks.containsKey(s)) {
+				pks.put(s, new Vector<String>());
+				rows.put(s, new Vector<HashMap<String, ByteIterator>>());
+			}
+			pks.get(s).add(entityPKs.get(i));
+			rows.get(s).add(values.get(i));
+			if (entitySet.equalsIgnoreCase("resources"))
+				resourceShards.put(Integer.parseInt(entityPKs.get(i).trim()), s);
+		}
+		int res = 0;
+		for (Integer s : pks.keySet()) {
+			if (shards.get(s).insertEntities(entitySet, pks.get(s), rows.get(s), insertImage) != 0)
+				res = -1;
+		}
+		return res;
+	}
+
+	@Override
+	public int insertFriendships(Vector<Integer> inviterIDs, Vector<Integer> inviteeIDs, Vector<Boolean> confirmed) {
+		HashMap<Integer, Vector<Integer>> inviters = new HashMap<Integer, Vector<Integer>>();
+		HashMap<Integer, Vector<Integer>> invitees = new HashMap<Integer, Vector<Integer>>();
+		HashMap<Integer, Vector<Boolean>> values = new HashMap<Integer, Vector<Boolean>>();
+		for (int i = 0; i < inviterIDs.size(); i++) {
+			int a = router.shard(inviterIDs.get(i)), b = router.shard(inviteeIDs.get(i));
+			for (int s : (a == b ? new int[] { a } : new int[] { a, b })) {
+				if (!inviters.containsKey(s)) {
+					inviters.put(s, new Vector<Integer>());
+					invitees.put(s, new Vector<Integer>());
+					values.put(s, new Vector<Boolean>());
+				}
+				inviters.get(s).add(inviterIDs.get(i));
+				invitees.get(s).add(inviteeIDs.get(i));
+				values.get(s).add(confirmed.get(i));
+			}
+		}
+		int res = 0;
+		for (Integer s : inviters.keySet()) {
+			if (shards.get(s).insertFriendships(inviters.get(s), invitees.get(s), values.get(s)) != 0)
+				res = -1;
+		}
+		return res;
+	}
+
+	//every shard holds all friendships of its members but a resource is on the shard of its wall owner,
+	//so after a batched load resCnt is recounted from the RESOURCES of all shards
+	@Override
+	public void finalizeLoad(Properties props) {
+		if (!BulkLoader.isBatched(props)) {
+			for (postgreJdbcClient shard : shards)
+				shard.finalizeLoad(props);
+			return;
+		}
+		try {
+			int n = 0;
+			for (postgreJdbcClient shard : shards) {
+				n += shard.updateCounters();
+				shard.commit();
+			}
+			System.out.println("Updated the counters of " + n + " members, " + updateResourceCounts() + " resource counts");
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+		}
+		for (postgreJdbcClient shard : shards)
+			shard.recordStats();
+	}
+
+	//sets resCnt on the home shard of every creator to its resources on all shards, returns the number of members set
+	private int updateResourceCounts() throws SQLException {
+		HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		for (postgreJdbcClient shard : shards) {
+			ResultSet rs = shard.prepare(COUNT_RESOURCES).executeQuery();
+			try {
+				while (rs.next()) {
+					int creator = Integer.parseInt(rs.getString(1).trim());
+					Integer c = counts.get(creator);
+					counts.put(creator, (c == null ? 0 : c) + rs.getInt(2));
+				}
+			} finally {
+				rs.close();
+			}
+			shard.commit();
+		}
+		int n = 0;
+		for (postgreJdbcClient shard : shards) {
+			PreparedStatement ps = shard.prepare(SET_RESOURCES);
+			for (Integer creator : counts.keySet()) {
+				if (shard(creator) != shard)
+					continue;
+				ps.setInt(1, counts.get(creator));
+				shard.setKey(ps, 2, creator);
+				ps.addBatch();
+				n++;
+			}
+			ps.executeBatch();
+			shard.commit();
+		}
+		return n;
+	}
+
+	@Override
+	public int viewProfile(int requesterID, int profileOwnerID, HashMap<String, ByteIterator> result, boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		return shard(profileOwnerID).viewProfile(requesterID, profileOwnerID, result, insertImage, testMode);
+	}
+
+	//the rows of the members, one statement per shard they are on
+	private void readUsers(Vector<Integer> ids, String[] names, Vector<HashMap<String, ByteIterator>> result) throws SQLException {
+		HashMap<Integer, Vector<Object>> byShard = new HashMap<Integer, Vector<Object>>();
+		for (Integer id : ids) {
+			int s = router.shard(id);
+			if (!byShard.containsKey(s))
+				byShard.put(s, new Vector<Object>());
+			byShard.get(s).add(mapping.key(id));
+		}
+		for (Map.Entry<Integer, Vector<Object>> e : byShard.entrySet()) {
+			postgreJdbcClient s = shards.get(e.getKey());
+			PreparedStatement ps = s.prepare("SELECT " + postgreJdbcClient.select("u", names) + USERS_BY_IDS);
+			ps.setArray(1, s.conn.createArrayOf(mapping.intKeyed ? "int4" : "varchar", e.getValue().toArray()));
+			postgreJdbcClient.readRows(ps, names, result);
+			s.commit();
+		}
+	}
+
+	//the friend ids of the member from its shard, then their rows
+	private void readFriends(String idQuery, int keys, int memberID, String[] names, Vector<HashMap<String, ByteIterator>> result) throws SQLException {
+		postgreJdbcClient home = shard(memberID);
+		PreparedStatement ps = home.prepare(idQuery);
+		for (int i = 1; i <= keys; i++)
+			home.setKey(ps, i, memberID);
+		Vector<Integer> ids = new Vector<Integer>();
+		postgreJdbcClient.readIds(ps, ids);
+		home.commit();
+		if (ids.size() > 0)
+			readUsers(ids, names, result);
+	}
+
+	@Override
+	public int listFriends(int requesterID, int profileOwnerID, Set<String> fields, Vector<HashMap<String, ByteIterator>> result,
+			boolean insertImage, boolean testMode) {
+		if (requesterID < 0 || profileOwnerID < 0)
+			return -1;
+		try {
+			readFriends(postgreJdbcClient.CONFIRMED_IDS, 2, profileOwnerID, shard(profileOwnerID).names(profiles.listEntry(fields, insertImage)), result);
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("list friend: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewFriendReq(int profileOwnerID, Vector<HashMap<String, ByteIterator>> results, boolean insertImage, boolean testMode) {
+		if (profileOwnerID < 0)
+			return -1;
+		try {
+			readFriends(postgreJdbcClient.PENDING_IDS, 1, profileOwnerID, shard(profileOwnerID).names(profiles.listEntry(null, insertImage)), results);
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("view friend reqs: " + profileOwnerID);
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int acceptFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		postgreJdbcClient[] involved = shards(inviterID, inviteeID);
+		try {
+			for (postgreJdbcClient s : involved) {
+				PreparedStatement ps = s.prepare(postgreJdbcClient.CONFIRM);
+				s.setKey(ps, 1, inviterID);
+				s.setKey(ps, 2, inviteeID);
+				int n = ps.executeUpdate();
+				if (n == 0)
+					continue;
+				if (s == shard(inviteeID)) {
+					ps = s.prepare(postgreJdbcClient.PENDING_TO_CONFIRMED);
+					s.setKey(ps, 1, inviteeID);
+					ps.executeUpdate();
+				}
+				if (s == shard(inviterID))
+					s.update(postgreJdbcClient.ADD_CONFIRMED, inviterID, n);
+			}
+			commit(involved);
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int rejectFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		postgreJdbcClient[] involved = shards(inviterID, inviteeID);
+		try {
+			for (postgreJdbcClient s : involved) {
+				PreparedStatement ps = s.prepare(postgreJdbcClient.DELETE_PENDING);
+				s.setKey(ps, 1, inviterID);
+				s.setKey(ps, 2, inviteeID);
+				int n = ps.executeUpdate();
+				if (n > 0 && s == shard(inviteeID))
+					s.update(postgreJdbcClient.ADD_PENDING, inviteeID, -n);
+			}
+			commit(involved);
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int inviteFriend(int inviterID, int inviteeID) {
+		if (inviterID < 0 || inviteeID < 0)
+			return -1;
+		postgreJdbcClient[] involved = shards(inviterID, inviteeID);
+		try {
+			for (postgreJdbcClient s : involved) {
+				s.insertFriendship(1, inviterID, inviteeID);
+				if (s == shard(inviteeID))
+					s.update(postgreJdbcClient.ADD_PENDING, inviteeID, 1);
+			}
+			commit(involved);
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int CreateFriendship(int memberA, int memberB) {
+		if (memberA < 0 || memberB < 0)
+			return -1;
+		postgreJdbcClient[] involved = shards(memberA, memberB);
+		try {
+			for (postgreJdbcClient s : involved) {
+				s.insertFriendship(2, memberA, memberB);
+				if (s == shard(memberA))
+					s.update(postgreJdbcClient.ADD_CONFIRMED, memberA, 1);
+				if (s == shard(memberB))
+					s.update(postgreJdbcClient.ADD_CONFIRMED, memberB, 1);
+			}
+			commit(involved);
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("exception in create friendship: " + memberA + "to" + memberB + ". Below:");
+			e.printStackTrace(System.out);
+		}
+		return 0;
+	}
+
+	@Override
+	public int thawFriendship(int friendid1, int friendid2) {
+		if (friendid1 < 0 || friendid2 < 0)
+			return -1;
+		postgreJdbcClient[] involved = shards(friendid1, friendid2);
+		try {
+			for (postgreJdbcClient s : involved) {
+				PreparedStatement ps = s.prepare(postgreJdbcClient.DELETE_CONFIRMED);
+				s.setKey(ps, 1, friendid1);
+				s.setKey(ps, 2, friendid2);
+				s.setKey(ps, 3, friendid2);
+				s.setKey(ps, 4, friendid1);
+				int n = ps.executeUpdate();
+				if (n == 0)
+					continue;
+				if (s == shard(friendid1))
+					s.update(postgreJdbcClient.ADD_CONFIRMED, friendid1, -n);
+				if (s == shard(friendid2))
+					s.update(postgreJdbcClient.ADD_CONFIRMED, friendid2, -n);
+			}
+			commit(involved);
+			return 0;
+		} catch (SQLException e) {
+			rollback();
+			System.out.println("Can not Delete friendship of: " + friendid1 + " and " + friendid2 + ".");
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, Vector<HashMap<String, ByteIterator>> result) {
+		return viewTopKResources(requesterID, profileOwnerID, k, -1, result);
+	}
+
+	@Override
+	public int viewTopKResources(int requesterID, int profileOwnerID, int k, int beforeRid, Vector<HashMap<String, ByteIterator>> result) {
+		if (requesterID < 0 || profileOwnerID < 0 || k < 0)
+			return -1;
+		return shard(profileOwnerID).viewTopKResources(requesterID, profileOwnerID, k, beforeRid, result);
+	}
+
+	//the resources are placed by wall, a creator's may be on any shard
+	@Override
+	public int getCreatedResources(int creatorID, Vector<HashMap<String, ByteIterator>> result) {
+		if (creatorID < 0)
+			return -1;
+		for (postgreJdbcClient shard : shards) {
+			if (shard.getCreatedResources(creatorID, result) != 0)
+				return -1;
+		}
+		return 0;
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, Vector<HashMap<String, ByteIterator>> result) {
+		return viewCommentOnResource(requesterID, profileOwnerID, resourceID, 0, -1, result);
+	}
+
+	@Override
+	public int viewCommentOnResource(int requesterID, int profileOwnerID, int resourceID, int pageSize, int afterMid,
+			Vector<HashMap<String, ByteIterator>> result) {
+		if (profileOwnerID < 0 || requesterID < 0 || resourceID < 0)
+			return -1;
+		try {
+			postgreJdbcClient s = resourceShard(resourceID);
+			//a resource without a shard has no comments
+			if (s == null)
+				return 0;
+			if (pageSize <= 0 && afterMid < 0)
+				return s.viewCommentOnResource(requesterID, profileOwnerID, resourceID, result);
+			return s.viewCommentOnResource(requesterID, profileOwnerID, resourceID, pageSize, afterMid, result);
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int postCommentOnResource(int commentCreatorID, int profileOwnerID, int resourceID, HashMap<String, ByteIterator> commentValues) {
+		if (profileOwnerID < 0 || commentCreatorID < 0 || resourceID < 0)
+			return -1;
+		try {
+			postgreJdbcClient s = resourceShard(resourceID);
+			if (s == null)
+				return -1;
+			return s.postCommentOnResource(commentCreatorID, profileOwnerID, resourceID, commentValues);
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	@Override
+	public int delCommentOnResource(int resourceCreatorID, int resourceID, int manipulationID) {
+		if (resourceCreatorID < 0 || manipulationID < 0 || resourceID < 0)
+			return -1;
+		try {
+			postgreJdbcClient s = resourceShard(resourceID);
+			if (s == null)
+				return 0;
+			return s.delCommentOnResource(resourceCreatorID, resourceID, manipulationID);
+		} catch (SQLException e) {
+			rollback();
+			e.printStackTrace(System.out);
+			return -1;
+		}
+	}
+
+	//a friendship across two shards is stored on both, it is exported from the shard of the invitee
+	@Override
+	public int exportFriendships(final ExportSink sink) {
+		for (int i = 0; i < shards.size(); i++) {
+			final int s = i;
+			int res = shards.get(i).exportFriendships(new ExportSink() {
+				public void friendship(int inviterID, int inviteeID, boolean confirmed) {
+					if (router.shard(inviteeID) == s)
+						sink.friendship(inviterID, inviteeID, confirmed);
+				}
+
+				public void resource(int rid, int creatorID, int wallUserID) {
+				}
+
+				public void comment(int mid, int rid) {
+				}
+			});
+			if (res != 0)
+				return res;
+		}
+		return 0;
+	}
+
+	@Override
+	public int exportResources(ExportSink sink) {
+		for (postgreJdbcClient shard : shards) {
+			if (shard.exportResources(sink) != 0)
+				return -1;
+		}
+		return 0;
+	}
+
+	@Override
+	public int exportComments(ExportSink sink) {
+		for (postgreJdbcClient shard : shards) {
+			if (shard.exportComments(sink) != 0)
+				return -1;
+		}
+		return 0;
+	}
+
+	/**
+	 * The member count of all shards, the other statistics are those of a member of the first shard with members.
+	 */
+	@Override
+	public HashMap<String, String> getInitialStats() {
+		HashMap<String, String> stats = new HashMap<String, String>();
+		long users = 0;
+		for (postgreJdbcClient shard : shards) {
+			HashMap<String, String> s = shard.getInitialStats();
+			if (s.containsKey("usercount"))
+				users += Long.parseLong(s.get("usercount"));
+			if (!stats.containsKey("avgfriendsperuser") && s.containsKey("avgfriendsperuser"))
+				stats.putAll(s);
+		}
+		stats.put("usercount", Long.toString(users));
+		return stats;
+	}
+
+	@Override
+	public void createSchema(Properties props) {
+		for (postgreJdbcClient shard : shards)
+			shard.createSchema(props);
+	}
+
+	@Override
+	public int queryPendingFriendshipIds(int memberID, Vector<Integer> pendingIds) {
+		if (memberID < 0)
+			return -1;
+		return shard(memberID).queryPendingFriendshipIds(memberID, pendingIds);
+	}
+
+	@Override
+	public int queryConfirmedFriendshipIds(int memberID, Vector<Integer> confirmedIds) {
+		if (memberID < 0)
+			return -1;
+		return shard(memberID).queryConfirmedFriendshipIds(memberID, confirmedIds);
+	}
+}